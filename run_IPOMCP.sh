@@ -33,6 +33,14 @@ IS_SUPP_RANDOM="true"
 IS_AVGQ_ANODE="false"
 IS_OPEN_SUPP="false"
 IS_SINGLE_CONFIG_NODE="true"
+THREAD_COUNT="1"
+IS_TREE_PARALLEL="false"
+AGENT_THREAD_COUNT="1"
+IS_TREE_REUSE="false"
+IS_STOCHASTIC_POLICY="false"
+PARTICLE_RESERVOIR_SIZE="-1"
+MAX_SIMULATIONS="0"
+EARLY_STOP_CONFIDENCE="0"
 
 #export MAVEN_OPTS=-Xmx8192m
 #export MAVEN_OPTS=-Xmx16384m
@@ -51,7 +59,7 @@ mvn exec:java -Dexec.mainClass="simulators.IPOMCPSimulator" -Dexec.args="$CONF $
 
 IPOMCP_SCRIPT="echo \"RUN IPOMCP:\""
 for ((t=1;t<=$SETSOFTRIAL;t++)); do
-     IPOMCP_SCRIPT="$IPOMCP_SCRIPT & mvn exec:java -Dexec.mainClass=\"simulators.IPOMCPSimulator\" -Dexec.args=\"$CONF $GAMMA $EPSILON $MAXHORIZONS $MAXSTAGES $ITERATIVE_TRIALS $TIME_BOUND $EXPT $SAMPLING_ERROR_BOUND $ALPHA $PARTICLE_COUNT $BANDIT_CONSTANT $IS_FIRE_RANDOM $IS_SUPP_RANDOM $t $IS_AVGQ_ANODE $IS_OPEN_SUPP $IS_SINGLE_CONFIG_NODE\""
+     IPOMCP_SCRIPT="$IPOMCP_SCRIPT & mvn exec:java -Dexec.mainClass=\"simulators.IPOMCPSimulator\" -Dexec.args=\"$CONF $GAMMA $EPSILON $MAXHORIZONS $MAXSTAGES $ITERATIVE_TRIALS $TIME_BOUND $EXPT $SAMPLING_ERROR_BOUND $ALPHA $PARTICLE_COUNT $BANDIT_CONSTANT $IS_FIRE_RANDOM $IS_SUPP_RANDOM $t $IS_AVGQ_ANODE $IS_OPEN_SUPP $IS_SINGLE_CONFIG_NODE $THREAD_COUNT $IS_TREE_PARALLEL $AGENT_THREAD_COUNT $IS_TREE_REUSE $IS_STOCHASTIC_POLICY $PARTICLE_RESERVOIR_SIZE $MAX_SIMULATIONS $EARLY_STOP_CONFIDENCE\""
 done
 echo $IPOMCP_SCRIPT
 eval $IPOMCP_SCRIPT
@@ -42,6 +42,9 @@ IS_SUPP_RANDOM="true"
 IS_AVGQ_ANODE="false"
 QVALUE_ERROR_MARGIN="0.01"
 IS_OPEN_SUPP="false"
+VI_THREAD_COUNT="1"
+SOLVE_THREAD_COUNT="1"
+IS_PRIORITIZED_SWEEP="false"
 
 #export MAVEN_OPTS=-Xmx8192m
 #export MAVEN_OPTS=-Xmx16384m
@@ -59,7 +62,7 @@ NESTEDVI_SCRIPT="echo \"RUN:\""
   CUR_GROUP=${CUR_GROUP_ARRAY[j]}
   NEIGHBOUR_GROUP=${NEIGHBOUR_GROUP_ARRAY[j]}
 
-     NESTEDVI_SCRIPT="$NESTEDVI_SCRIPT & mvn exec:java -Dexec.mainClass=\"nestedMDPSolver.NestedVI\" -Dexec.args=\"$CONF $GAMMA $MAXLEVEL $MAXDELTA $MAXHORIZONS $EPSILON $EXPT $CUR_GROUP $NEIGHBOUR_GROUP $QVALUE_ERROR_MARGIN\""
+     NESTEDVI_SCRIPT="$NESTEDVI_SCRIPT & mvn exec:java -Dexec.mainClass=\"nestedMDPSolver.NestedVI\" -Dexec.args=\"$CONF $GAMMA $MAXLEVEL $MAXDELTA $MAXHORIZONS $EPSILON $EXPT $CUR_GROUP $NEIGHBOUR_GROUP $QVALUE_ERROR_MARGIN $VI_THREAD_COUNT $SOLVE_THREAD_COUNT $IS_PRIORITIZED_SWEEP\""
 
   done
 echo $NESTEDVI_SCRIPT
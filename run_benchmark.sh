@@ -0,0 +1,78 @@
+#/bin/bash
+
+#Benchmark of the tree-parallel IPOMCP search against the sequential search on the configurations 0-4.
+#Each configuration is run twice in each mode:
+#  1. With the same TIME_BOUND, to compare the simulations per decision.
+#  2. With the same MAX_SIMULATIONS and no time bound, to compare the wall-clock time per decision.
+#The numbers are averaged over all the decisions of all the agents from the "Total Visits to the tree:" and the
+#"Total time taken for creating tree TIME:" lines of the simulator logs.
+#The NestedVI policies of the configurations must be solved first with run_NestedVI.sh.
+
+declare -a CONF_ARRAY
+CONF_ARRAY=("0" "1" "2" "3" "4")
+NUMCONFS=${#CONF_ARRAY[@]}
+
+declare -a MODE_ARRAY
+MODE_ARRAY=("sequential" "tree-parallel")
+
+EXPT="1"
+GAMMA="0.9"
+MAXHORIZONS="10"
+EPSILON="0.001"
+MAXSTAGES="3"
+ITERATIVE_TRIALS="1"
+TRIAL_SERIES="1"
+SAMPLING_ERROR_BOUND="0.00001"
+ALPHA="0.05"
+PARTICLE_COUNT="1000"
+BANDIT_CONSTANT="40"
+TIME_BOUND="5000"
+MAX_SIMULATIONS="20000"
+IS_FIRE_RANDOM="false"
+IS_SUPP_RANDOM="true"
+IS_AVGQ_ANODE="false"
+IS_OPEN_SUPP="false"
+IS_SINGLE_CONFIG_NODE="true"
+PARALLEL_THREAD_COUNT="4"
+AGENT_THREAD_COUNT="1"
+IS_TREE_REUSE="false"
+IS_STOCHASTIC_POLICY="false"
+PARTICLE_RESERVOIR_SIZE="-1"
+EARLY_STOP_CONFIDENCE="0"
+
+export MAVEN_OPTS=-Xmx24576m
+
+SUMMARY="BENCHMARK_EXP${EXPT}.txt"
+echo "Config,Mode,Threads,Decisions,Simulations per decision (TIME_BOUND=${TIME_BOUND}ms),Wall-clock ms per decision (MAX_SIMULATIONS=${MAX_SIMULATIONS})" > $SUMMARY
+
+for ((i=0;i<$NUMCONFS;i++)); do
+CONF=${CONF_ARRAY[i]}
+
+  for MODE in "${MODE_ARRAY[@]}"; do
+  if [ "$MODE" == "sequential" ]; then
+    THREAD_COUNT="1"
+    IS_TREE_PARALLEL="false"
+  else
+    THREAD_COUNT=$PARALLEL_THREAD_COUNT
+    IS_TREE_PARALLEL="true"
+  fi
+
+  echo "Running Config $CONF, $MODE search with $THREAD_COUNT threads"
+
+  #Same time bound, count the simulations.
+  TIME_LOG="BENCHMARK_TIME_${MODE}_CONFIG${CONF}.log"
+  mvn exec:java -Dexec.mainClass="simulators.IPOMCPSimulator" -Dexec.args="$CONF $GAMMA $EPSILON $MAXHORIZONS $MAXSTAGES $ITERATIVE_TRIALS $TIME_BOUND $EXPT $SAMPLING_ERROR_BOUND $ALPHA $PARTICLE_COUNT $BANDIT_CONSTANT $IS_FIRE_RANDOM $IS_SUPP_RANDOM $TRIAL_SERIES $IS_AVGQ_ANODE $IS_OPEN_SUPP $IS_SINGLE_CONFIG_NODE $THREAD_COUNT $IS_TREE_PARALLEL $AGENT_THREAD_COUNT $IS_TREE_REUSE $IS_STOCHASTIC_POLICY $PARTICLE_RESERVOIR_SIZE 0 $EARLY_STOP_CONFIDENCE" > $TIME_LOG
+
+  #Same simulations, measure the time.
+  COUNT_LOG="BENCHMARK_COUNT_${MODE}_CONFIG${CONF}.log"
+  mvn exec:java -Dexec.mainClass="simulators.IPOMCPSimulator" -Dexec.args="$CONF $GAMMA $EPSILON $MAXHORIZONS $MAXSTAGES $ITERATIVE_TRIALS 0 $EXPT $SAMPLING_ERROR_BOUND $ALPHA $PARTICLE_COUNT $BANDIT_CONSTANT $IS_FIRE_RANDOM $IS_SUPP_RANDOM $TRIAL_SERIES $IS_AVGQ_ANODE $IS_OPEN_SUPP $IS_SINGLE_CONFIG_NODE $THREAD_COUNT $IS_TREE_PARALLEL $AGENT_THREAD_COUNT $IS_TREE_REUSE $IS_STOCHASTIC_POLICY $PARTICLE_RESERVOIR_SIZE $MAX_SIMULATIONS $EARLY_STOP_CONFIDENCE" > $COUNT_LOG
+
+  DECISIONS=$(grep -c "Total Visits to the tree:" $TIME_LOG)
+  SIMULATIONS=$(awk -F"Total Visits to the tree:" 'NF>1{sum+=$2;n++} END{if(n>0) printf "%.0f", sum/n}' $TIME_LOG)
+  WALL_CLOCK=$(awk -F"Total time taken for creating tree TIME:" 'NF>1{sum+=$2;n++} END{if(n>0) printf "%.0f", sum/n}' $COUNT_LOG)
+  echo "$CONF,$MODE,$THREAD_COUNT,$DECISIONS,$SIMULATIONS,$WALL_CLOCK" | tee -a $SUMMARY
+  done
+
+done
+
+cat $SUMMARY
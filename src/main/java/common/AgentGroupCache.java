@@ -0,0 +1,138 @@
+package common;
+
+import burlap.behavior.policy.Policy;
+import scalability.FrameActionConfiguration;
+
+import java.util.*;
+
+
+/**
+ * This class is the process-wide cache of the artefacts of the agent groups, which are expensive to build and never
+ * change after they are built: the state enumerator, the maximum FAC and the NMDP policy of each group, and the rollout
+ * distribution of each state enumerator. Each artefact is built once, and shared read-only by all the agents, trials
+ * and threads afterwards. The maximum FAC must be copied before it is iterated, as done by the simulators.
+ * If two threads build the same artefact at the same time, the first one stored is kept and returned to both.
+ */
+public class AgentGroupCache {
+
+    /**
+     * This class keeps the artefacts of an agent group.
+     */
+    public static class GroupArtefacts {
+        private final StateEnumerator senum;
+        private final FrameActionConfiguration maxConfiguration;
+        private final Policy policy;
+
+        public GroupArtefacts(StateEnumerator senum, FrameActionConfiguration maxConfiguration, Policy policy) {
+            this.senum = senum;
+            this.maxConfiguration = maxConfiguration;
+            this.policy = policy;
+        }
+
+        //Getter methods.
+        public StateEnumerator getSenum() {
+            return senum;
+        }
+
+        public FrameActionConfiguration getMaxConfiguration() {
+            return maxConfiguration;
+        }
+
+        public Policy getPolicy() {
+            return policy;
+        }
+    }//end class.
+
+    /**
+     * Artefacts of the agent groups by the key given by {@link #groupKey(int, int, String, int, boolean)}.
+     */
+    private static final Map<String,GroupArtefacts> GROUP_ARTEFACTS = new HashMap<>();
+
+    /**
+     * Rollout distribution of each state enumerator. The state enumerator belongs to one agent group, so all the agents
+     * using it have the same actions and share the distribution.
+     */
+    private static final Map<StateEnumerator,Map<Integer,AliasSampler>> ROLLOUT_DISTRIBUTIONS = new IdentityHashMap<>();
+
+
+    /**
+     * This method creates the key of the artefacts of an agent group from all the values they depend on.
+     * @param configuration is the configuration of the domain.
+     * @param experimentNumber is the experiment number of the policy files.
+     * @param agentGroup is the agent group.
+     * @param maxHorizons is the horizon of the state enumeration, non-positive for the infinite horizon.
+     * @param isStochasticPolicy is true if the stochastic policy is loaded.
+     * @return is the key.
+     */
+    public static String groupKey(int configuration, int experimentNumber, String agentGroup, int maxHorizons,
+                                  boolean isStochasticPolicy){
+        return configuration + ":" + experimentNumber + ":" + agentGroup + ":" + Math.max(maxHorizons, -1)
+                + ":" + isStochasticPolicy;
+    }
+
+
+    /**
+     * This method finds the cached artefacts of an agent group.
+     * @param key is the key of the agent group.
+     * @return is the artefacts, null if they have not been built yet.
+     */
+    public static synchronized GroupArtefacts getGroupArtefacts(String key){
+        return GROUP_ARTEFACTS.get(key);
+    }
+
+
+    /**
+     * This method caches the artefacts of an agent group, unless they have already been cached.
+     * @param key is the key of the agent group.
+     * @param senum is the state enumerator of the group.
+     * @param maxConfiguration is the maximum FAC of the group.
+     * @param policy is the NMDP policy of the group.
+     * @return is the cached artefacts.
+     */
+    public static synchronized GroupArtefacts putGroupArtefacts(String key, StateEnumerator senum,
+                                                                FrameActionConfiguration maxConfiguration, Policy policy){
+        GroupArtefacts artefacts = GROUP_ARTEFACTS.get(key);
+        if(artefacts == null){
+            artefacts = new GroupArtefacts(senum, maxConfiguration, policy);
+            GROUP_ARTEFACTS.put(key, artefacts);
+        }//end if.
+        return artefacts;
+    }
+
+
+    /**
+     * This method finds the cached rollout distribution of a state enumerator.
+     * @param senum is the state enumerator.
+     * @return is the alias sampler of each enumerated state, null if it has not been built yet.
+     */
+    public static synchronized Map<Integer,AliasSampler> getRolloutDistribution(StateEnumerator senum){
+        return ROLLOUT_DISTRIBUTIONS.get(senum);
+    }
+
+
+    /**
+     * This method caches the rollout distribution of a state enumerator as an unmodifiable map, unless it has already
+     * been cached.
+     * @param senum is the state enumerator.
+     * @param rolloutDistribution is the alias sampler of each enumerated state.
+     * @return is the cached rollout distribution.
+     */
+    public static synchronized Map<Integer,AliasSampler> putRolloutDistribution(StateEnumerator senum,
+                                                                                Map<Integer,AliasSampler> rolloutDistribution){
+        Map<Integer,AliasSampler> cached = ROLLOUT_DISTRIBUTIONS.get(senum);
+        if(cached == null){
+            cached = Collections.unmodifiableMap(rolloutDistribution);
+            ROLLOUT_DISTRIBUTIONS.put(senum, cached);
+        }//end if.
+        return cached;
+    }
+
+
+    /**
+     * This method clears the cache, e.g. before the policy files are solved again.
+     */
+    public static synchronized void clear(){
+        GROUP_ARTEFACTS.clear();
+        ROLLOUT_DISTRIBUTIONS.clear();
+    }
+}
@@ -0,0 +1,123 @@
+package common;
+
+import java.util.List;
+
+
+/**
+ * This class samples from a categorical distribution in constant time using the alias method (Vose's version of
+ * Walker's method). The table is built once for a distribution and is only read afterwards, so one sampler can be
+ * cached per distribution and shared by the threads.
+ */
+public class AliasSampler {
+
+    /**
+     * Probability of choosing the column itself instead of its alias, for each column.
+     */
+    private final double[] probs;
+
+    /**
+     * Alias of each column.
+     */
+    private final int[] aliases;
+
+
+    /**
+     * This constructor builds the alias table from the probabilities of the outcomes. The probabilities are normalized,
+     * so they do not need to sum to 1 exactly.
+     * @param distribution is the probability of each outcome.
+     */
+    public AliasSampler(double[] distribution) {
+        int size = distribution.length;
+        this.probs = new double[size];
+        this.aliases = new int[size];
+
+        double sum = 0;
+        for(double prob : distribution){
+            sum += prob;
+        }//end for.
+
+        //Scale the probabilities to the average of 1 and divide them into small and large columns.
+        double[] scaled = new double[size];
+        int[] small = new int[size];
+        int[] large = new int[size];
+        int smallCount = 0, largeCount = 0;
+        for(int outcome = 0; outcome < size; outcome++){
+            scaled[outcome] = (sum > 0) ? distribution[outcome] * size / sum : 1.0;
+            if(scaled[outcome] < 1.0){
+                small[smallCount++] = outcome;
+            }else{
+                large[largeCount++] = outcome;
+            }//end if-else.
+        }//end for.
+
+        //Fill each small column with its alias from a large column.
+        while(smallCount > 0 && largeCount > 0){
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+            this.probs[less] = scaled[less];
+            this.aliases[less] = more;
+            scaled[more] = (scaled[more] + scaled[less]) - 1.0;
+            if(scaled[more] < 1.0){
+                small[smallCount++] = more;
+            }else{
+                large[largeCount++] = more;
+            }//end if-else.
+        }//end while.
+
+        //The rest of the columns are full, only differing by the floating point errors.
+        while(largeCount > 0){
+            int more = large[--largeCount];
+            this.probs[more] = 1.0;
+            this.aliases[more] = more;
+        }//end while.
+        while(smallCount > 0){
+            int less = small[--smallCount];
+            this.probs[less] = 1.0;
+            this.aliases[less] = less;
+        }//end while.
+    }
+
+
+    /**
+     * This constructor builds the alias table from a list of probabilities.
+     * @param distribution is the probability of each outcome.
+     */
+    public AliasSampler(List<Double> distribution) {
+        this(toArray(distribution));
+    }
+
+
+    /**
+     * This method converts the list of probabilities into an array.
+     * @param distribution is the list of probabilities.
+     * @return is the array of probabilities.
+     */
+    private static double[] toArray(List<Double> distribution){
+        double[] probs = new double[distribution.size()];
+        for(int outcome = 0; outcome < probs.length; outcome++){
+            probs[outcome] = distribution.get(outcome);
+        }//end for.
+        return probs;
+    }
+
+
+    /**
+     * This method samples an outcome using one random number. The integer part of the scaled random number chooses
+     * the column, and the fractional part chooses between the column and its alias.
+     * @param randomNumber is a random number between 0 and 1.
+     * @return is the index of the sampled outcome.
+     */
+    public int sample(double randomNumber){
+        double scaled = randomNumber * this.probs.length;
+        int column = Math.min((int)scaled, this.probs.length - 1);
+        return ((scaled - column) < this.probs[column]) ? column : this.aliases[column];
+    }
+
+
+    /**
+     * @return is the number of outcomes.
+     */
+    public int size(){
+        return this.probs.length;
+    }
+}
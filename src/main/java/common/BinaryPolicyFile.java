@@ -0,0 +1,95 @@
+package common;
+
+import java.io.*;
+
+
+/**
+ * This class writes the NMDP policies in a compact binary format, which can be memory-mapped by the
+ * {@link OtherAgentsNMDPPolicy} instead of parsing the text policy file.
+ * The file contains a header and the fixed-size sections indexed by the dense state index (the hashcode of the
+ * anonymous states), so any state can be looked up directly from the mapped file:
+ *  1. Header: magic number, version, policy type ordinal, number of actions, action names (modified UTF-8, in the
+ *     order of the bits of the masks), number of states and the flag if the Q-values are included.
+ *  2. Best actions: one long bitmask per state, where the bit i is set if the action i has more than 0 probability.
+ *     States not in the policy have the mask 0.
+ *  3. Q-values (optional): one double per state and action, NaN for the states not in the policy.
+ * All the values are big-endian, as written by the {@link DataOutputStream}.
+ */
+public class BinaryPolicyFile {
+
+    /**
+     * Magic number ("NMDP") and version of the format.
+     */
+    public static final int MAGIC = 0x4E4D4450;
+    public static final int VERSION = 1;
+
+    /**
+     * Maximum number of actions, limited by the size of the bitmask.
+     */
+    public static final int MAX_ACTIONS = Long.SIZE;
+
+
+    /**
+     * This method finds the name of the binary policy file next to the text policy file.
+     * @param textFileName is the name of the text policy file.
+     * @return is the name of the binary policy file.
+     */
+    public static String binaryFileName(String textFileName){
+        if(textFileName.endsWith(".txt")){
+            return textFileName.substring(0, textFileName.length() - ".txt".length()) + ".bin";
+        }//end if.
+        return textFileName + ".bin";
+    }
+
+
+    /**
+     * This method writes the policy into the binary file. The sections are streamed in the order of the state indexes.
+     * @param fileName is the name of the binary file.
+     * @param policyType is the type of the policy.
+     * @param actionNames is the names of the actions in the order of the bits of the masks.
+     * @param bestActionMasks is the bitmask of the best actions of each state by the dense state index.
+     * @param qValues is the Q-value of each action by the dense state index, null to leave out the Q-values. The rows
+     *                of the states not in the policy can be null.
+     * @throws IOException if the file can not be written.
+     */
+    public static void write(String fileName, OtherAgentsNMDPPolicy.PolicyType policyType, String[] actionNames,
+                             long[] bestActionMasks, double[][] qValues) throws IOException{
+        if(actionNames.length > MAX_ACTIONS){
+            throw new IOException("Binary policy supports at most " + MAX_ACTIONS + " actions.");
+        }//end if.
+
+        File outputFile = new File(fileName);
+        if(outputFile.getParentFile() != null){
+            outputFile.getParentFile().mkdirs();
+        }//end if.
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outputFile)));
+        try{
+            //Header.
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(policyType.ordinal());
+            out.writeInt(actionNames.length);
+            for(String actionName : actionNames){
+                out.writeUTF(actionName);
+            }//end for.
+            out.writeInt(bestActionMasks.length);
+            out.writeBoolean(qValues != null);
+
+            //Best actions.
+            for(long mask : bestActionMasks){
+                out.writeLong(mask);
+            }//end for.
+
+            //Q-values.
+            if(qValues != null){
+                for(int stateIndex = 0; stateIndex < bestActionMasks.length; stateIndex++){
+                    for(int actionIndex = 0; actionIndex < actionNames.length; actionIndex++){
+                        out.writeDouble((qValues[stateIndex] != null) ? qValues[stateIndex][actionIndex] : Double.NaN);
+                    }//end for.
+                }//end for.
+            }//end if.
+        }finally{
+            out.close();
+        }//end try-finally.
+    }
+}
@@ -5,11 +5,16 @@ import burlap.behavior.policy.Policy;
 import burlap.mdp.core.action.Action;
 import burlap.mdp.core.action.ActionType;
 import burlap.mdp.core.state.State;
+import domains.wildfire.WildfireAnonymousState;
 import domains.wildfire.WildfireDomain;
 import posg.POOOSGDomain;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 /**
@@ -38,10 +43,13 @@ public class OtherAgentsNMDPPolicy implements Policy {
     private Action[] agentActions;
     /**
      * Note: Use when using the stochastic policy.
-     * The mapping of the state to action probabilities. Here, the probability index refers the
-     * index of the action in the agentActions object.
+     * The action probabilities of all the states in one flat array, where the probability of the action of the state is
+     * at (state index * number of actions + action index). Here, the action index refers the index of the action in the
+     * agentActions object. The alias table of each state samples its action in constant time, null for the states not
+     * in the policy.
      */
-     private double[][] stateActionProbMap;
+    private float[] stateActionProbs;
+    private AliasSampler[] stateActionSamplers;
 
     /**
      * Note: Use when using the deterministic policy.
@@ -50,6 +58,17 @@ public class OtherAgentsNMDPPolicy implements Policy {
      */
     private Action[][] stateBestActionMaps;
 
+    /**
+     * Note: Use when the policy is read from the binary file.
+     * The memory-mapped {@link BinaryPolicyFile}, the number of states in it and the offsets of the best action masks
+     * and the Q-values (-1 if the file does not include the Q-values). The buffer is only read with the absolute
+     * methods, so it can be shared by the copies of the policy.
+     */
+    private ByteBuffer policyBuffer;
+    private int numberOfStates;
+    private int maskOffset;
+    private int qValueOffset = -1;
+
 
 
     /**
@@ -69,9 +88,160 @@ public class OtherAgentsNMDPPolicy implements Policy {
         this.domain = otherAgentsNMDPPolicy.getDomain();
         this.agentName = otherAgentsNMDPPolicy.getAgentName();
         this.agentActions =  otherAgentsNMDPPolicy.getAgentActions();
-        this.stateActionProbMap = otherAgentsNMDPPolicy.getStateActionProbMap();
+        this.stateActionProbs = otherAgentsNMDPPolicy.getStateActionProbs();
+        this.stateActionSamplers = otherAgentsNMDPPolicy.getStateActionSamplers();
         this.stateBestActionMaps = otherAgentsNMDPPolicy.getStateBestActionMaps();
         this.policyType = otherAgentsNMDPPolicy.getPolicyType();
+        this.policyBuffer = otherAgentsNMDPPolicy.policyBuffer;
+        this.numberOfStates = otherAgentsNMDPPolicy.numberOfStates;
+        this.maskOffset = otherAgentsNMDPPolicy.maskOffset;
+        this.qValueOffset = otherAgentsNMDPPolicy.qValueOffset;
+    }
+
+
+    /**
+     * This method initializes the policy object from the binary policy file next to the text policy file if it exists,
+     * from the text policy file otherwise.
+     * @param policyFileName is the name of the text policy file.
+     * @param numberOfStates is the number of states in the domain, only used for the text policy file.
+     */
+    public void loadPolicy(String policyFileName, int numberOfStates){
+        String binaryFileName = BinaryPolicyFile.binaryFileName(policyFileName);
+        if(new File(binaryFileName).exists()){
+            readBinaryPolicy(binaryFileName);
+        }else{
+            readPolicy(policyFileName, numberOfStates);
+        }//end if-else.
+    }//end method.
+
+
+    /**
+     * This method initializes the policy object from the binary policy file by memory-mapping it, so the best actions
+     * are read directly from the file for each state instead of being parsed up front.
+     * @param binaryFileName is the name of the binary policy file.
+     */
+    public void readBinaryPolicy(String binaryFileName){
+        try{
+            RandomAccessFile policyFile = new RandomAccessFile(binaryFileName, "r");
+            FileChannel channel = policyFile.getChannel();
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            //The mapping stays valid after closing the file.
+            policyFile.close();
+
+            //Header.
+            if(buffer.getInt() != BinaryPolicyFile.MAGIC || buffer.getInt() != BinaryPolicyFile.VERSION){
+                throw new Exception("Not a binary policy file of version " + BinaryPolicyFile.VERSION + ".");
+            }//end if.
+            //The masks are the support of the policy distribution, so the file can be read as either type.
+            buffer.getInt();
+            String[] actionStrings = new String[buffer.getInt()];
+            for(int action = 0; action < actionStrings.length; action++){
+                byte[] nameBytes = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(nameBytes);
+                actionStrings[action] = new String(nameBytes, StandardCharsets.UTF_8);
+            }//end for.
+            matchActions(actionStrings);
+            this.numberOfStates = buffer.getInt();
+            boolean hasQValues = buffer.get() != 0;
+
+            //Offsets of the sections.
+            this.maskOffset = buffer.position();
+            this.qValueOffset = hasQValues ? this.maskOffset + this.numberOfStates * (Long.SIZE / Byte.SIZE) : -1;
+            this.policyBuffer = buffer;
+
+            //The distribution of the NestedVI policy is uniform over the best actions of each state.
+            if(this.getPolicyType() == PolicyType.Stochastic){
+                initializeStochasticPolicy(this.numberOfStates);
+                double[] probs = new double[this.agentActions.length];
+                for(int stateIndex = 0; stateIndex < this.numberOfStates; stateIndex++){
+                    long mask = buffer.getLong(this.maskOffset + stateIndex * (Long.SIZE / Byte.SIZE));
+                    if(mask != 0){
+                        for(int action = 0; action < probs.length; action++){
+                            probs[action] = ((mask & (1L << action)) != 0) ? 1.0 / Long.bitCount(mask) : 0.0;
+                        }//end for.
+                        setStateActionProbs(stateIndex, probs);
+                    }//end if.
+                }//end for.
+            }//end if.
+        }catch (FileNotFoundException f){
+            f.printStackTrace();
+            System.err.println("Policy Loading Error:" + f.getMessage());
+            System.exit(0);
+        }catch (Exception e){
+            e.printStackTrace();
+            System.err.println("Policy Loading Error:" + e.getMessage());
+            System.exit(0);
+        }
+    }//end method.
+
+
+    /**
+     * This method creates the empty probability table and alias tables of the stochastic policy.
+     * @param numberOfStates is the number of states in the domain.
+     */
+    private void initializeStochasticPolicy(int numberOfStates){
+        this.stateActionProbs = new float[numberOfStates * this.agentActions.length];
+        this.stateActionSamplers = new AliasSampler[numberOfStates];
+    }
+
+
+    /**
+     * This method sets the action probabilities of a state in the stochastic policy and builds its alias table.
+     * @param stateIndex is the dense index of the state.
+     * @param probs is the probability of each action.
+     */
+    private void setStateActionProbs(int stateIndex, double[] probs){
+        for(int action = 0; action < probs.length; action++){
+            this.stateActionProbs[stateIndex * this.agentActions.length + action] = (float) probs[action];
+        }//end for.
+        this.stateActionSamplers[stateIndex] = new AliasSampler(probs);
+    }
+
+
+    /**
+     * This method matches the action names of the policy file with the actions of the agent group in the domain, and
+     * sets the agent actions in the order of the file.
+     * @param actionStrings is the action names in the policy file.
+     * @throws Exception if any action of the policy does not exist in the domain.
+     */
+    private void matchActions(String[] actionStrings) throws Exception{
+        //Get the list of the agent actions in the domain and try to match it with that of the policy.
+        List<ActionType> domainActions = ((WildfireDomain)this.domain).actionsPerGroup.get(this.agentName);
+        this.agentActions = new Action[domainActions.size()];
+        int actionCounter = 0;
+        for(String actionString : actionStrings){
+            //Flag to find difference between the domain actions and the policy.
+            boolean actionExist = false;
+            //Verify if the action type in the policy file exist in the domain actions or not.
+            for(ActionType domainAction: domainActions){
+                if(domainAction.typeName().equals(actionString)){
+                    //Add the action to the file.
+                    this.agentActions[actionCounter++] = domainAction.associatedAction("Useless argument");
+                    actionExist = true;
+                    break;
+                }
+            }//end for.
+            //Exit the process, if the policy and the actions does not matches.
+            if(!actionExist){
+                throw new Exception("Policy Actions and Domain Actions mismatch.");
+            }
+        }//end for - actionString.
+    }//end method.
+
+
+    /**
+     * This method gives the Q-value of the action in the state from the binary policy file.
+     * @param stateIndex is the dense index of the state.
+     * @param actionIndex is the index of the action in the agent actions.
+     * @return is the Q-value, NaN if the policy does not have the Q-values or the state.
+     */
+    public double getQValue(int stateIndex, int actionIndex){
+        if(this.policyBuffer == null || this.qValueOffset == -1 || stateIndex >= this.numberOfStates){
+            return Double.NaN;
+        }//end if.
+        int doubleBytes = Double.SIZE / Byte.SIZE;
+        return this.policyBuffer.getDouble(this.qValueOffset
+                + (stateIndex * this.agentActions.length + actionIndex) * doubleBytes);
     }
 
 
@@ -82,10 +252,6 @@ public class OtherAgentsNMDPPolicy implements Policy {
      * @return is the object of the current class with all the state-action pair setup.
      */
     public void readPolicy(String policyFileName, int numberOfStates){
-        //Convert the object into the WildfireDomain object.
-        WildfireDomain wildfireDomain = (WildfireDomain)this.domain;
-
-
         //Read the file.
         try{
             //Scan the policy file. Match the actions with those in the domain and add it to the action objects,
@@ -96,33 +262,16 @@ public class OtherAgentsNMDPPolicy implements Policy {
             if(policyScan.hasNext()){
                 String actionStringLine = policyScan.nextLine();
                 String[] actionStrings = actionStringLine.split(",");
-
-                //Get the list of the agent actions in the domain and try to match it with that of the policy.
-                List<ActionType> domainActions = wildfireDomain.actionsPerGroup.get(this.agentName);
-                this.agentActions = new Action[domainActions.size()];
-                int actionCounter = 0;
-                for(String actionString : actionStrings){
-                    //Flag to find difference between the domain actions and the policy.
-                    boolean actionExist = false;
-                    //Verify if the action type in the policy file exist in the domain actions or not.
-                    for(ActionType domainAction: domainActions){
-                        if(domainAction.typeName().equals(actionString)){
-                            //Add the action to the file.
-                            this.agentActions[actionCounter++] = domainAction.associatedAction("Useless argument");
-                            actionExist = true;
-                            break;
-                        }
-                    }//end for.
-                    //Exit the process, if the policy and the actions does not matches.
-                    if(!actionExist){
-                        throw new Exception("Policy Actions and Domain Actions mismatch.");
-                    }
-                }//end for - actionString.
+                matchActions(actionStrings);
             }//end if -reading actions.
 
 
             //Initialize the policy array with number of states.
-            this.stateBestActionMaps = new Action[numberOfStates][];
+            if(this.getPolicyType() == PolicyType.Deterministic){
+                this.stateBestActionMaps = new Action[numberOfStates][];
+            }else{
+                initializeStochasticPolicy(numberOfStates);
+            }//end if-else.
             //Now read action probability for each state.
             while (policyScan.hasNext()){
                 String actionProbString = policyScan.nextLine();
@@ -155,7 +304,17 @@ public class OtherAgentsNMDPPolicy implements Policy {
 
                     this.stateBestActionMaps[policyStateIndex] = bestActionArray;
                 }else {
-                    //TODO: Implementation for the Stochastic policy. LATER.
+                    //Get the state and the probabilities of all the actions.
+                    int policyStateIndex = Integer.parseInt(actionProbArray[0].trim());
+                    double[] probs = new double[this.getAgentActions().length];
+                    String[] actionProbs = actionProbArray[2].split(",");
+                    for(int action = 0 ; action < actionProbs.length && action < probs.length;action++){
+                        //The last element in this string array might contain just "".
+                        if( (actionProbs[action] != null) && (!actionProbs[action].trim().equals(""))){
+                            probs[action] = Double.parseDouble(actionProbs[action].trim());
+                        }
+                    }//end for.
+                    setStateActionProbs(policyStateIndex, probs);
                 }//end if-else.
             }//end while.
         }catch (FileNotFoundException f){
@@ -213,12 +372,12 @@ public class OtherAgentsNMDPPolicy implements Policy {
     }//end method.
 
 
-    public double[][] getStateActionProbMap() {
-        return stateActionProbMap;
+    public float[] getStateActionProbs() {
+        return stateActionProbs;
     }
 
-    public void setStateActionProbMap(double[][] stateActionProbMap) {
-        this.stateActionProbMap = stateActionProbMap;
+    public AliasSampler[] getStateActionSamplers() {
+        return stateActionSamplers;
     }
 
     public Action[][] getStateBestActionMaps() {
@@ -239,34 +398,107 @@ public class OtherAgentsNMDPPolicy implements Policy {
 
     /**
      * This implementation of the action-policy gives best action for the current state. If there are more
-     * than one action for any deterministic policy, the actions would be chosen at random.
+     * than one action for any deterministic policy, the actions would be chosen at random. The stochastic policy samples
+     * the action from its distribution.
      * @param s is the state value.
      * @return is the best action.
      */
     @Override
     public Action action(State s) {
+        return sampleAction(s, Math.random());
+    }
+
+
+    /**
+     * This method finds the index of the state in the policy, which is the state id given by
+     * {@link WildfireAnonymousState#encode()}, as written by the NestedVI.
+     * @param s is the state.
+     * @return is the index of the state.
+     */
+    private int stateIndex(State s) {
+        return ((WildfireAnonymousState) s).encode();
+    }
+
+
+    /**
+     * This method gives the action for the current state using the given random number, so the callers with their own
+     * random number generators do not share the one of {@link Math#random()}.
+     * @param s is the state value.
+     * @param randomNumber is a random number between 0 and 1.
+     * @return is the action.
+     */
+    public Action sampleAction(State s, double randomNumber) {
         Action bestAction = null;
-        if(this.getPolicyType() == PolicyType.Deterministic){
-            Action[] bestActionList = this.getStateBestActionMaps()[s.hashCode()];
+        if(this.getPolicyType() == PolicyType.Deterministic && this.policyBuffer != null){
+            //Read the mask of the best actions from the mapped file and choose one of its bits at random.
+            long mask = this.policyBuffer.getLong(this.maskOffset + stateIndex(s) * (Long.SIZE / Byte.SIZE));
+            int choice = (int) (randomNumber * Long.bitCount(mask));
+            for(int action = 0; action < this.agentActions.length; action++){
+                if((mask & (1L << action)) != 0 && choice-- == 0){
+                    bestAction = this.agentActions[action];
+                    break;
+                }//end if.
+            }//end for.
+        }else if(this.getPolicyType() == PolicyType.Deterministic){
+            Action[] bestActionList = this.getStateBestActionMaps()[stateIndex(s)];
             if(bestActionList.length > 1){
                 //Randomly choose action in case of more than one actions available.
-                bestAction = (Action)bestActionList[(int) (Math.random() * bestActionList.length)];
+                bestAction = (Action)bestActionList[(int) (randomNumber * bestActionList.length)];
             }else{
                 bestAction = (Action)bestActionList[0];
             }
         }else {
-            //TODO: Sampling for stochastic policy.
+            //Sample the action from the alias table of the state.
+            AliasSampler sampler = this.stateActionSamplers[stateIndex(s)];
+            if(sampler != null){
+                bestAction = this.agentActions[sampler.sample(randomNumber)];
+            }//end if.
         }
         return bestAction;
     }
 
 
-    //Not Used
+    /**
+     * This method gives the probability of the action in the current state. The deterministic policy chooses uniformly
+     * from the best actions.
+     * @param s is the state value.
+     * @param a is the action.
+     * @return is the probability of the action, 0 if the action or the state is not in the policy.
+     */
     @Override
     public double actionProb(State s, Action a) {
-        return 0;
+        int actionIndex = -1;
+        for(int action = 0; action < this.agentActions.length; action++){
+            if(this.agentActions[action] != null && this.agentActions[action].actionName().equals(a.actionName())){
+                actionIndex = action;
+                break;
+            }//end if.
+        }//end for.
+        if(actionIndex == -1){
+            return 0;
+        }//end if.
+
+        int stateIndex = stateIndex(s);
+        if(this.getPolicyType() == PolicyType.Stochastic){
+            return this.stateActionProbs[stateIndex * this.agentActions.length + actionIndex];
+        }else if(this.policyBuffer != null){
+            long mask = this.policyBuffer.getLong(this.maskOffset + stateIndex * (Long.SIZE / Byte.SIZE));
+            return ((mask & (1L << actionIndex)) != 0) ? 1.0 / Long.bitCount(mask) : 0;
+        }else{
+            Action[] bestActionList = this.getStateBestActionMaps()[stateIndex];
+            if(bestActionList == null){
+                return 0;
+            }//end if.
+            for(Action bestAction : bestActionList){
+                if(bestAction.actionName().equals(a.actionName())){
+                    return 1.0 / bestActionList.length;
+                }//end if.
+            }//end for.
+            return 0;
+        }//end if-else.
     }
 
+
     //Not used.
     @Override
     public boolean definedFor(State s) {
@@ -28,6 +28,10 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 /**
@@ -68,6 +72,10 @@ public class POWorld extends World {
     protected Map<String, TabularBeliefState> beliefStateMap; // Belief State Map for the agents, where the key is agent group or an agent.
     protected List<Map<String, SGAgent>> 	allAgentDefinitions;
     protected FACRewardFunction rewardFunction;
+    /**
+     * Number of threads to find the actions of the agents in each stage of the IPOMCP experiment. 1 for one agent after another.
+     */
+    protected int agentThreadCount = 1;
 
 
     /**
@@ -153,6 +161,14 @@ public class POWorld extends World {
         this.beliefStateMap = beliefStateMap;
     }
 
+    public int getAgentThreadCount() {
+        return agentThreadCount;
+    }
+
+    public void setAgentThreadCount(int agentThreadCount) {
+        this.agentThreadCount = Math.max(1,agentThreadCount);
+    }
+
     /**
      * Manually attempts to execute a joint action in the current world state, if a game is currently not running.
      * If a game is running, then no action will be taken. Additionally, if the world is currently in a terminal
@@ -445,21 +461,27 @@ public class POWorld extends World {
 
         //Iterate through all the agents, from the anonymous state they are having, find the best action from either IPOMCP
         //or according to their policy and create a joint action in the end.
-        for(int agentIndex = 0 ; agentIndex < this.agents.size(); agentIndex++){
-            State anmState = agentGroupStates.get(((WildfireDomain)this.pooosgDomain).agentsList.get(agentIndex).getAgentGroup());
-            //Set the availability and agentIndex of the current agent.
-            //This would save a bit overhead in creating, a new object.
-            int availability = ((WildfireState)this.currentState).getAgentList().get(agentIndex).getAvailability();
-            ((WildfireAnonymousState)anmState).getSelfAgent().setAvailability(availability);
-            ((WildfireAnonymousState)anmState).getSelfAgent().setAgentNumber(agentIndex);
-
-            try{
-                ja.addAction(this.agents.get(agentIndex).action(anmState));
-            }catch (Exception e){
-                System.out.println("Problem in IPOMCP:" + e.getMessage());
-                System.exit(0);//Exit.
-            }//end try catch.
-        }//end for.
+        if(this.agentThreadCount > 1){
+            for(Action action : runAgentsInParallel(agentGroupStates)){
+                ja.addAction(action);
+            }//end for.
+        }else{
+            for(int agentIndex = 0 ; agentIndex < this.agents.size(); agentIndex++){
+                State anmState = agentGroupStates.get(((WildfireDomain)this.pooosgDomain).agentsList.get(agentIndex).getAgentGroup());
+                //Set the availability and agentIndex of the current agent.
+                //This would save a bit overhead in creating, a new object.
+                int availability = ((WildfireState)this.currentState).getAgentList().get(agentIndex).getAvailability();
+                ((WildfireAnonymousState)anmState).getSelfAgent().setAvailability(availability);
+                ((WildfireAnonymousState)anmState).getSelfAgent().setAgentNumber(agentIndex);
+
+                try{
+                    ja.addAction(this.agents.get(agentIndex).action(anmState));
+                }catch (Exception e){
+                    System.out.println("Problem in IPOMCP:" + e.getMessage());
+                    System.exit(0);//Exit.
+                }//end try catch.
+            }//end for.
+        }//end if-else.
         this.lastJointAction = ja;
 
 
@@ -613,6 +635,49 @@ public class POWorld extends World {
 
     }
 
+
+    /**
+     * This method finds the actions of all the agents at the same time using agentThreadCount threads. Each agent gets
+     * its own copy of the anonymous state of its group, as the availability and the agent number differ for each agent.
+     * @param agentGroupStates is the anonymous state for each agent group.
+     * @return is the list of the actions in the order of the agents.
+     */
+    protected List<Action> runAgentsInParallel(HashMap<String,State> agentGroupStates){
+        List<Callable<Action>> agentSearches = new ArrayList<>(this.agents.size());
+        for(int agentIndex = 0 ; agentIndex < this.agents.size(); agentIndex++){
+            //Copy the group's anonymous state and set the availability and agentIndex of the current agent.
+            final WildfireAnonymousState anmState = new WildfireAnonymousState((WildfireAnonymousState)
+                    agentGroupStates.get(((WildfireDomain)this.pooosgDomain).agentsList.get(agentIndex).getAgentGroup()));
+            int availability = ((WildfireState)this.currentState).getAgentList().get(agentIndex).getAvailability();
+            anmState.getSelfAgent().setAvailability(availability);
+            anmState.getSelfAgent().setAgentNumber(agentIndex);
+
+            final SGAgent agent = this.agents.get(agentIndex);
+            agentSearches.add(new Callable<Action>() {
+                @Override
+                public Action call() throws Exception {
+                    return agent.action(anmState);
+                }
+            });
+        }//end for.
+
+        List<Action> actions = new ArrayList<>(this.agents.size());
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.agentThreadCount,this.agents.size()));
+        try{
+            //The futures are in the order of the agents.
+            for(Future<Action> agentSearch : executor.invokeAll(agentSearches)){
+                actions.add(agentSearch.get());
+            }//end for.
+        }catch (Exception e){
+            System.out.println("Problem in IPOMCP:" + e.getMessage());
+            System.exit(0);//Exit.
+        }finally {
+            executor.shutdown();
+        }//end try-catch-finally.
+
+        return actions;
+    }//end method.
+
     /**
      * @return the agent definitions for the agents registered in this world.
      */
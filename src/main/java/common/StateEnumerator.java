@@ -1,9 +1,9 @@
 package common;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 import burlap.mdp.core.Domain;
@@ -30,14 +30,15 @@ public class StateEnumerator {
     protected HashableStateFactory hashingFactory;
 
     /**
-     * The forward state enumeration map
+     * The forward state enumeration map. Concurrent, as the enumerator is read by the planner threads of all the agents
+     * in the group.
      */
-    public Map<HashableState, Integer>  enumeration = new HashMap<HashableState, Integer>();
+    public Map<HashableState, Integer>  enumeration = new ConcurrentHashMap<HashableState, Integer>();
 
     /**
      * The reverse enumeration id to state map
      */
-    public Map<Integer, State> reverseEnumerate = new HashMap<Integer, State>();
+    public Map<Integer, State> reverseEnumerate = new ConcurrentHashMap<Integer, State>();
 
     protected Map<String, SGAgent> agentDefinitions;
 
@@ -188,11 +189,17 @@ public class StateEnumerator {
     protected int getEnumeratedID(HashableState sh){
         Integer storedID = this.enumeration.get(sh);
 
+        //Only a new state needs the lock, lookups of the enumerated states are lock free.
         if(storedID == null){
-            this.enumeration.put(sh, this.nextEnumeratedID);
-            this.reverseEnumerate.put(this.nextEnumeratedID, sh.s());
-            storedID = this.nextEnumeratedID;
-            this.nextEnumeratedID++;
+            synchronized (this){
+                storedID = this.enumeration.get(sh);
+                if(storedID == null){
+                    this.reverseEnumerate.put(this.nextEnumeratedID, sh.s());
+                    this.enumeration.put(sh, this.nextEnumeratedID);
+                    storedID = this.nextEnumeratedID;
+                    this.nextEnumeratedID++;
+                }//end if.
+            }//end synchronized.
         }
 //		System.out.println("Stored: "+storedID);
         return storedID;
@@ -11,6 +11,7 @@ package domains.wildfire;
 import burlap.mdp.core.action.*;
 import burlap.mdp.core.state.*;
 import burlap.mdp.singleagent.pomdp.observations.*;
+import common.AliasSampler;
 import domains.wildfire.beans.Fire;
 import posg.model.PartialObservationFunction;
 
@@ -27,9 +28,20 @@ public class FireDiscreteObservation implements PartialObservationFunction{
     List<State> fireObservations;
 
     /**
-     * Random Number Generator.
+     * Random Number Generator. One generator per thread, as the observation function is shared by all the planners.
      */
-    PRNG.Smart generator;
+    ThreadLocal<PRNG.Smart> generator;
+
+    /**
+     * Alias samplers over the fire observations, one for each index of the true fire difference in the observation
+     * list. They are created on the first sample.
+     */
+    private volatile AliasSampler[] observationSamplers;
+
+    /**
+     * Fire difference returned when the states are not of the correct type.
+     */
+    private static final int INVALID_FIRE_DIFFERENCE = Integer.MIN_VALUE;
 
 
     /**
@@ -46,7 +58,12 @@ public class FireDiscreteObservation implements PartialObservationFunction{
         }
 
         //Initialize generator with the XorShift ones.
-        generator =  new XorshiftPlus.Smart(new XorshiftPlus());
+        generator = new ThreadLocal<PRNG.Smart>(){
+            @Override
+            protected PRNG.Smart initialValue() {
+                return new XorshiftPlus.Smart(new XorshiftPlus());
+            }
+        };
     }
 
     /**
@@ -105,10 +122,6 @@ public class FireDiscreteObservation implements PartialObservationFunction{
     public double probability(State observation, State previousState, State nextState, Action action) {
         double obsProbability = 0;
 
-        int fireNumber = -1; //Fire Number fought by @param action.
-        int fireDifference = 100; // Fire Difference.
-
-
         //Get the information about the next state and the fires.
 
         FireObservation fireObservation = (FireObservation) observation;
@@ -124,6 +137,33 @@ public class FireDiscreteObservation implements PartialObservationFunction{
             return  WildfireParameters.NO_OBS == fireObservation.getFireDifference() ? 1.0 : 0.0;
         }
 
+        int fireDifference = fireDifference(previousState, nextState, action);
+        if(fireDifference == INVALID_FIRE_DIFFERENCE){
+            return -1;
+        }//end if.
+
+        //If the observation matches the actual difference.
+        if(fireDifference == fireObservation.getFireDifference()){
+            obsProbability = 1 - WildfireParameters.OBSERVATION_NOISE;
+        }else{
+            //Observation probability excluding the correct observation and NO_OBS.
+            obsProbability = WildfireParameters.OBSERVATION_NOISE / (this.fireObservations.size()-2);
+        }
+
+        return  obsProbability;
+    }//end method.
+
+    /**
+     * This method finds the difference in the intensity of the fire fought by the action, between the previous and
+     * the next states.
+     * @param previousState is the previous state of the environment.
+     * @param nextState is the next state after action.
+     * @param action is the action performed by the current agent.
+     * @return is the fire difference, {@link #INVALID_FIRE_DIFFERENCE} if the states are not of the correct type.
+     */
+    private int fireDifference(State previousState, State nextState, Action action){
+        int fireNumber = -1; //Fire Number fought by @param action.
+        int fireDifference; // Fire Difference.
 
         //Check the type of the State is being received in the argument.
         //Find the fire number and fire difference accordingly.
@@ -154,20 +194,10 @@ public class FireDiscreteObservation implements PartialObservationFunction{
                               - wfPreviousState.getFireList()[fireNumber].getIntensity();
         }else {
             System.err.println("FireDiscreteObservation: State objects are not of correct type.");
-            return -1;
+            return INVALID_FIRE_DIFFERENCE;
         }//end if-else ladder.
 
-
-
-        //If the fire exist in the premise(It must!!) and the observation matches the actual difference.
-        if(fireNumber != -1 && fireDifference == fireObservation.getFireDifference()){
-            obsProbability = 1 - WildfireParameters.OBSERVATION_NOISE;
-        }else{
-            //Observation probability excluding the correct observation and NO_OBS.
-            obsProbability = WildfireParameters.OBSERVATION_NOISE / (this.fireObservations.size()-2);
-        }
-
-        return  obsProbability;
+        return fireDifference;
     }//end method.
 
     /**
@@ -179,11 +209,24 @@ public class FireDiscreteObservation implements PartialObservationFunction{
      */
     @Override
     public State sample(State previousState, State nextState, Action action) {
+        //NOOP action always gets the NO_OBS observation.
+        if(!WildfireParameters.NOOP_ACTION.equals(action.actionName())){
+            //Sample from the alias table of the true fire difference, if it is one of the observations.
+            int fireDifference = fireDifference(previousState, nextState, action);
+            AliasSampler[] samplers = getObservationSamplers();
+            for(int obsIndex = 0; obsIndex < samplers.length; obsIndex++){
+                if(samplers[obsIndex] != null
+                        && ((FireObservation)this.fireObservations.get(obsIndex)).getFireDifference() == fireDifference){
+                    return this.fireObservations.get(samplers[obsIndex].sample(this.generator.get().nextDouble()));
+                }//end if.
+            }//end for.
+        }//end if.
+
         //Get the list of observation probabilities for each and every observation.
         List<ObservationProbability> obProbs = this.probabilities(previousState,nextState, action);
 
 
-        double r = this.generator.nextDouble();
+        double r = this.generator.get().nextDouble();
         double sumProb = 0.;
 
         //Iterate through all possible observations.
@@ -197,6 +240,42 @@ public class FireDiscreteObservation implements PartialObservationFunction{
         throw new RuntimeException("Could not sample observation because observation probabilities did not sum to 1; they summed to " + sumProb);
     }
 
+    /**
+     * This method returns the alias samplers of the observations, and builds them on the first call. The sampler of
+     * the true fire difference gives it 1 - noise probability, and shares the noise among the other fire differences.
+     * There is no sampler for the NO_OBS observation, as it is only observed with the NOOP action.
+     * @return is the samplers for each index of the true fire difference.
+     */
+    private AliasSampler[] getObservationSamplers(){
+        AliasSampler[] samplers = this.observationSamplers;
+        if(samplers == null){
+            synchronized (this){
+                samplers = this.observationSamplers;
+                if(samplers == null){
+                    int obsCount = this.fireObservations.size();
+                    samplers = new AliasSampler[obsCount];
+                    for(int trueIndex = 0; trueIndex < obsCount; trueIndex++){
+                        if(((FireObservation)this.fireObservations.get(trueIndex)).getFireDifference() == WildfireParameters.NO_OBS){
+                            continue;
+                        }//end if.
+
+                        double[] obsProbs = new double[obsCount];
+                        for(int obsIndex = 0; obsIndex < obsCount; obsIndex++){
+                            if(obsIndex == trueIndex){
+                                obsProbs[obsIndex] = 1 - WildfireParameters.OBSERVATION_NOISE;
+                            }else if(((FireObservation)this.fireObservations.get(obsIndex)).getFireDifference() != WildfireParameters.NO_OBS){
+                                obsProbs[obsIndex] = WildfireParameters.OBSERVATION_NOISE / (obsCount-2);
+                            }//end if-else.
+                        }//end for.
+                        samplers[trueIndex] = new AliasSampler(obsProbs);
+                    }//end for.
+                    this.observationSamplers = samplers;
+                }//end if.
+            }//end synchronized.
+        }//end if.
+        return samplers;
+    }//end method.
+
     /**
      * This method calculates the probability of each fire-difference observation.
      * @param previousState is the previous state of the environment.
@@ -307,4 +307,46 @@ public class WildfireAnonymousState implements ObjectInstance,MutableState {
         }//end for.
         return result;
     }
+
+    /**
+     * This method finds the number of the states with the same fires as the current state, which is the number of the
+     * distinct state ids given by {@link #encode()}. So the state id can be used as a dense index into the arrays of
+     * this size. The {@link #hashCode()} is not dense if the visible fires are not numbered from 0.
+     * @return is the number of the states.
+     */
+    public int numberOfStates() {
+        return WildfireParameters.MAX_SUPPRESSANT_STATES *
+                (int)Math.round(Math.pow(WildfireParameters.MAX_FIRE_STATES,this.getFireList().length));
+    }
+
+    /**
+     * This method encodes the suppressant level and the fire intensities into one state id, the same way as the
+     * {@link #hashCode()} but with the position of each fire in the fire list instead of its fire number, so the id is
+     * unique among the states with the same self agent, groups and fires even if the visible fires are not numbered
+     * from 0. The id is less than {@link #numberOfStates()}.
+     * @return is the state id.
+     */
+    public int encode() {
+        int stateId = this.getSelfAgent().getAvailability();
+        for(int fire = this.getFireList().length - 1; fire >= 0; fire--){
+            stateId = stateId * WildfireParameters.MAX_FIRE_STATES + this.getFireList()[fire].getIntensity();
+        }//end for.
+        return stateId;
+    }
+
+    /**
+     * This method creates a copy of the current state with the suppressant level and the fire intensities decoded from
+     * the state id given by {@link #encode()}.
+     * @param stateId is the encoded state id.
+     * @return is the decoded state.
+     */
+    public WildfireAnonymousState decode(int stateId) {
+        WildfireAnonymousState state = new WildfireAnonymousState(this);
+        for(Fire fire : state.getFireList()){
+            fire.setIntensity(stateId % WildfireParameters.MAX_FIRE_STATES);
+            stateId /= WildfireParameters.MAX_FIRE_STATES;
+        }//end for.
+        state.getSelfAgent().setAvailability(stateId);
+        return state;
+    }
 }//end class.
@@ -10,6 +10,7 @@ import burlap.mdp.stochasticgames.JointAction;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.util.*;
+import common.AliasSampler;
 import datastructures.Triple;
 import domains.wildfire.beans.Agent;
 import domains.wildfire.beans.Fire;
@@ -38,9 +39,22 @@ public class WildfireMechanics implements FullJointIPOMCPModel {
     public Map<Integer, Map<Integer, Map<Triple<Integer, SimpleAction, Integer>, Double>>> parsedAgentTransitionFunction;
 
     /**
-     * Random Number Generator.
+     * Random Number Generator. One generator per thread, as the mechanics are shared by all the planners and their
+     * worker threads, and the XorShift generators are not thread-safe.
      */
-    PRNG.Smart generator;
+    ThreadLocal<PRNG.Smart> generator;
+
+    /**
+     * Transition function compiled into arrays for sampling the anonymous next states. It is created on the first
+     * sample, when all the agents have been added to the domain.
+     */
+    private volatile WildfireTransitionTable transitionTable;
+
+    /**
+     * Alias samplers of the internal transition, for the NOOP (index 1) or the other actions (index 0), and for each
+     * current availability. They are created on the first sample of the internal transition.
+     */
+    private volatile AliasSampler[][] internalTransitionSamplers;
 
     int totalCounter;
     int highCount;
@@ -57,7 +71,12 @@ public class WildfireMechanics implements FullJointIPOMCPModel {
         wildfireSpreadModel = new WildfireSpreadModel(WildfireParameters.CELL_SIZE,WildfireParameters.WIND_DIRECTION);
 
         //Initialize generator with the XorShift ones.
-        generator =  new XorshiftPlus.Smart(new XorshiftPlus());
+        generator = new ThreadLocal<PRNG.Smart>(){
+            @Override
+            protected PRNG.Smart initialValue() {
+                return new XorshiftPlus.Smart(new XorshiftPlus());
+            }
+        };
         //Use the presumed Transition function.
         boolean usePresumedTF = false;
         //Transition Function Parsed.
@@ -281,31 +300,92 @@ public class WildfireMechanics implements FullJointIPOMCPModel {
      * Replacement of the actionHelper method in the previous version.
      * Sample the next output state by generating the transition probability randomly and use the FrameActionConfiguration
      * instead of the Joint Action.
+     * The fires and the self-agent transition independently, so each of them is sampled from the compiled transition
+     * function, instead of generating all the next states of the {@link #stateTransitions(State, FrameActionConfiguration)}.
      * @param s is the current state.
      * @param fac is the FrameActionConfiguration.
      * @return next sampled state.
      */
     @Override
     public State sample(State s, FrameActionConfiguration fac) {
-        List<StateTransitionProb> transProbs = this.stateTransitions(s,fac);
+        WildfireTransitionTable table = getTransitionTable();
+        WildfireAnonymousState anonymousState = (WildfireAnonymousState)s;
+        int agentNum = anonymousState.getSelfAgent().getAgentNumber();
+        int numberOfFires = anonymousState.getFireList().length;
 
-        //Generate random probabilities and sum.
-        double r = randomNumberGenerator();
-        double sumProb = 0.0;
-        for(StateTransitionProb trans : transProbs){
-            sumProb += trans.p;
-            if(r < sumProb){
-                return trans.s;
-            }
+        // Start the state.
+        WildfireAnonymousState nextState = agentNum > WildfireParameters.MASTER_STATE_AGENT_NUM
+                ? Wildfire.getCleanAnmState(this.domain, agentNum,numberOfFires)
+                : Wildfire.getCleanAnmMasterState(this.domain,numberOfFires);
+
+        //Sample each fire independently.
+        for(int fireIndex = 0 ; fireIndex < numberOfFires ; fireIndex++){
+            Fire fire = anonymousState.getFireList()[fireIndex];
+            //Ignition probability is only needed for the fires without intensity.
+            double spread = (fire.getIntensity() == 0) ? probabilityAnmSpread(anonymousState, fire.getFireNumber()) : 0.0;
+
+            Fire nextFire = new Fire(fire);
+            nextFire.setIntensity(table.sampleNextIntensity(fire.getFireType(), fire.getIntensity(),
+                    firePower(fac, fire), spread, randomNumberGenerator()));
+            Wildfire.setAnmFire(nextState,nextFire,fireIndex);
         }//end for.
 
-        if(sumProb > 1.01 || sumProb < 0.99){
-            System.out.println("Problem in the Transition: PROBSUM:" + sumProb);
-        }
+        //The anonymous list is same for all the agents.
+        nextState.setanonymousAgents(anonymousState.getanonymousAgents());
 
-        System.out.println("Could not sample next state because transition probabilities did not sum to 1; they summed to " + sumProb);
-        //If not generated properly throw exception.
-        throw new RuntimeException("Could not sample next state because transition probabilities did not sum to 1; they summed to " + sumProb);
+        //Sample the agent's suppressant level.
+        Agent selfAgent = new Agent(anonymousState.getSelfAgent());
+        selfAgent.setAvailability(table.sampleNextAvailability(selfAgent.getAvailability(), randomNumberGenerator()));
+        nextState.setSelfAgent(selfAgent);
+
+        return nextState;
+    }//end method.
+
+
+    /**
+     * This method returns the compiled transition function, and compiles it on the first call.
+     * @return is the compiled transition function.
+     */
+    private WildfireTransitionTable getTransitionTable(){
+        WildfireTransitionTable table = this.transitionTable;
+        if(table == null){
+            synchronized (this){
+                table = this.transitionTable;
+                if(table == null){
+                    table = new WildfireTransitionTable(this.domain, this.wildfireSpreadModel.burnoutProb);
+                    this.transitionTable = table;
+                }//end if.
+            }//end synchronized.
+        }//end if.
+        return table;
+    }//end method.
+
+
+    /**
+     * This method finds the power fighting a fire, by summing up the power of the agents in the configuration
+     * for the fire.
+     * @param fac is the FrameActionConfiguration.
+     * @param fire is the fire.
+     * @return is the power fighting the fire.
+     */
+    private double firePower(FrameActionConfiguration fac, Fire fire){
+        double power = 0;
+        for(int agentPowerType=1 ; agentPowerType <= this.domain.agentPowerTypes.size();agentPowerType++){
+            int configIndex = fac.search(agentPowerType,fire.fireActionName());
+            //If any agent-fire configuration exist then sum up the powers by adding (power*agent) value.
+            if(configIndex != -1 && !(fac.getCurrentConfiguration()[configIndex] == null)){
+                power += (fac.getCurrentConfiguration()[configIndex].getNumberOfAgents() * domain.agentPower.get(agentPowerType-1));
+            }//end if.
+        }//end for.
+
+        //NOTE: Due to discrepancies in the floating point sums.
+        int powerInt = (int)power;
+        double powerFract = power - (double)powerInt;
+        if(powerFract > 0.99){
+            power += 0.01;
+        }//end if.
+
+        return power;
     }//end method.
 
 
@@ -370,31 +450,46 @@ public class WildfireMechanics implements FullJointIPOMCPModel {
      */
 
     public int sampleInternalTransition(int currentState, Action action) {
+        boolean isNoop = WildfireParameters.NOOP_ACTION.equals(action.actionName());
+        return getInternalTransitionSamplers()[isNoop ? 1 : 0][currentState].sample(randomNumberGenerator());
+    }//end method.
 
-        //Transition Probs for the internal transition.
-        ArrayList<Double> sampledTransition = new ArrayList<>();
-        //Get probability for next internal transition.
-        for(int availability = 0 ; availability < WildfireParameters.MAX_SUPPRESSANT_STATES ; availability++){
-            sampledTransition.add(internalTransitionProbs(currentState,action,availability));
-        }
-
-
-        //Generate random probabilities and sum.
-        double r = randomNumberGenerator();
-        double sumProb = 0.0;
-        for(int availability = 0 ; availability < WildfireParameters.MAX_SUPPRESSANT_STATES ; availability++){
-            sumProb += sampledTransition.get(availability);
-            if(r < sumProb){
-                return availability;
-            }
-        }//end for.
-
-        if(sumProb > 1.01 || sumProb < 0.99){
-            System.out.println("Problem in the Transition: PROBSUM:" + sumProb);
-        }
 
-        //If not generated properly throw exception.
-        throw new RuntimeException("Could not sample next state because transition probabilities did not sum to 1; they summed to " + sumProb);
+    /**
+     * This method returns the alias samplers of the internal transition, and builds them on the first call.
+     * @return is the samplers for each NOOP flag and current availability.
+     */
+    private AliasSampler[][] getInternalTransitionSamplers(){
+        AliasSampler[][] samplers = this.internalTransitionSamplers;
+        if(samplers == null){
+            synchronized (this){
+                samplers = this.internalTransitionSamplers;
+                if(samplers == null){
+                    samplers = new AliasSampler[2][WildfireParameters.MAX_SUPPRESSANT_STATES];
+                    for(int noop = 0; noop < 2; noop++){
+                        for(int current = 0; current < WildfireParameters.MAX_SUPPRESSANT_STATES; current++){
+                            //Get probability for next internal transition.
+                            double[] transitionProbs = new double[WildfireParameters.MAX_SUPPRESSANT_STATES];
+                            double sumProb = 0.0;
+                            for(int availability = 0 ; availability < WildfireParameters.MAX_SUPPRESSANT_STATES ; availability++){
+                                transitionProbs[availability] = internalTransitionProbs(current, noop == 1, availability);
+                                sumProb += transitionProbs[availability];
+                            }//end for.
+
+                            if(sumProb > 1.01 || sumProb < 0.99){
+                                System.out.println("Problem in the Transition: PROBSUM:" + sumProb);
+                                //If not generated properly throw exception.
+                                throw new RuntimeException("Could not sample next state because transition probabilities did not sum to 1; they summed to " + sumProb);
+                            }//end if.
+
+                            samplers[noop][current] = new AliasSampler(transitionProbs);
+                        }//end for.
+                    }//end for.
+                    this.internalTransitionSamplers = samplers;
+                }//end if.
+            }//end synchronized.
+        }//end if.
+        return samplers;
     }//end method.
 
     /**
@@ -1871,10 +1966,22 @@ public class WildfireMechanics implements FullJointIPOMCPModel {
      * @return is the probability of the transition given the action.
      */
     private double internalTransitionProbs(int currentAvailability, Action action, int nextAvailability) {
+        return internalTransitionProbs(currentAvailability,
+                WildfireParameters.NOOP_ACTION.equals(action.actionName()), nextAvailability);
+    }//end method.
+
+    /**
+     * This method calculates the internal state transition probability given the type of the action.
+     * @param currentAvailability is the current Availability of an agent.
+     * @param isNoop is true if the agent performs the NOOP action.
+     * @param nextAvailability is the next Availability of an agent.
+     * @return is the probability of the transition given the action.
+     */
+    private double internalTransitionProbs(int currentAvailability, boolean isNoop, int nextAvailability) {
         double prob = 1.0;
 
         //Find the probabilities based on the suppressant transition assumptions.
-        if (WildfireParameters.NOOP_ACTION.equals(action.actionName())) {
+        if (isNoop) {
             if (currentAvailability > 0 && currentAvailability == nextAvailability) {
                 // the state doesn't change, as required
                 prob *= 1.0;
@@ -2214,7 +2321,7 @@ public class WildfireMechanics implements FullJointIPOMCPModel {
      * @return a new random number between 0 and 1.
      */
     public double randomNumberGenerator(){
-        double randomNumber = this.generator.nextDouble();
+        double randomNumber = this.generator.get().nextDouble();
 //        this.totalCounter++;
 //        if(randomNumber > 0.95){
 //            this.highCount++;
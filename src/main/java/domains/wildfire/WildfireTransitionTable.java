@@ -0,0 +1,178 @@
+package domains.wildfire;
+
+import domains.wildfire.beans.Agent;
+
+
+/**
+ * This class keeps the anonymous transition function of the Wildfire domain compiled into primitive arrays, so that
+ * the next state can be sampled fire by fire without generating all the possible next states.
+ * The transition of each fire only depends on the fire type, the intensity and the power fighting the fire, except the
+ * ignition of a fire without any intensity, which depends on the neighbouring fires and is passed by the caller.
+ * The agent power is bucketed with the {@link #POWER_RESOLUTION}.
+ */
+public class WildfireTransitionTable {
+
+    /**
+     * Number of the power buckets per unit of agent power.
+     */
+    public static final int POWER_RESOLUTION = 1000;
+
+    /**
+     * Probability of a fought fire reducing its intensity by 1, for each fire type and power bucket. The fire keeps its
+     * intensity otherwise. -1 if the power is below the threshold of the fire type, where the fire is not fought.
+     */
+    private double[][] reductionProbs;
+
+    /**
+     * The intensity after the move of a fire not fought, and the probability of that move, for each intensity.
+     * The fire keeps its intensity otherwise. The move of the intensity 0 is the ignition, which has the spread
+     * probability of the state instead.
+     */
+    private int[] unfoughtNextIntensity;
+    private double[] unfoughtMoveProbs;
+
+    /**
+     * The availability after the move of an agent, and the probability of that move, for each availability.
+     * The agent keeps its availability otherwise.
+     */
+    private int[] availabilityNext;
+    private double[] availabilityMoveProbs;
+
+
+    /**
+     * This constructor compiles the transition function of the domain.
+     * @param domain is the domain object with all the agents and their powers.
+     * @param burnoutProb is the probability of burning out a fire with the maximum intensity.
+     */
+    public WildfireTransitionTable(WildfireDomain domain, double burnoutProb) {
+        //Maximum power is the power of all the agents on the same fire.
+        double maxPower = 0;
+        for(Agent agent : domain.agentsList){
+            maxPower += domain.agentPower.get(agent.getPowerType()-1);
+        }//end for.
+        int powerBuckets = (int)Math.ceil(maxPower * POWER_RESOLUTION) + 1;
+
+        //Fought fires.
+        int[] fireTypes = {WildfireParameters.BIG_FIRE, WildfireParameters.SMALL_FIRE, WildfireParameters.VERY_BIG_FIRE};
+        this.reductionProbs = new double[WildfireParameters.VERY_BIG_FIRE + 1][];
+        for(int fireType : fireTypes){
+            this.reductionProbs[fireType] = new double[powerBuckets];
+            for(int bucket = 0; bucket < powerBuckets; bucket++){
+                this.reductionProbs[fireType][bucket] = computeReductionProb(fireType, (double)bucket / POWER_RESOLUTION);
+            }//end for.
+        }//end for.
+
+        //Fires not fought.
+        this.unfoughtNextIntensity = new int[WildfireParameters.MAX_FIRE_STATES];
+        this.unfoughtMoveProbs = new double[WildfireParameters.MAX_FIRE_STATES];
+        for(int intensity = 0; intensity < WildfireParameters.MAX_FIRE_STATES; intensity++){
+            if(intensity == 0){
+                //Ignition.
+                this.unfoughtNextIntensity[intensity] = Math.min(2, WildfireParameters.MAX_FIRE_STATES - 2);
+                this.unfoughtMoveProbs[intensity] = 0.0;
+            }else if(intensity == WildfireParameters.MAX_FIRE_STATES - 1){
+                //Burned out fire is an absorbing state.
+                this.unfoughtNextIntensity[intensity] = intensity;
+                this.unfoughtMoveProbs[intensity] = 0.0;
+            }else if(intensity == WildfireParameters.MAX_FIRE_STATES - 2){
+                //Burn out.
+                this.unfoughtNextIntensity[intensity] = intensity + 1;
+                this.unfoughtMoveProbs[intensity] = burnoutProb;
+            }else{
+                //The fire intensity increases by 1.
+                this.unfoughtNextIntensity[intensity] = intensity + 1;
+                this.unfoughtMoveProbs[intensity] = 1.0;
+            }//end if-else.
+        }//end for.
+
+        //Agent availabilities. The anonymous transition does not consider the NOOP of the self-agent.
+        this.availabilityNext = new int[WildfireParameters.MAX_SUPPRESSANT_STATES];
+        this.availabilityMoveProbs = new double[WildfireParameters.MAX_SUPPRESSANT_STATES];
+        for(int availability = 0; availability < WildfireParameters.MAX_SUPPRESSANT_STATES; availability++){
+            if(availability == 0){
+                //Recharge.
+                this.availabilityNext[availability] = WildfireParameters.MAX_SUPPRESSANT_STATES - 1;
+                this.availabilityMoveProbs[availability] = 1.0 / WildfireParameters.TRUE_CHARGING_TIME;
+            }else{
+                //Discharge.
+                this.availabilityNext[availability] = availability - 1;
+                this.availabilityMoveProbs[availability] = WildfireParameters.TRUE_DISCHARGE_PROB;
+            }//end if-else.
+        }//end for.
+    }
+
+
+    /**
+     * This method computes the probability of reducing the intensity of a fought fire by 1, the same way as the
+     * anonymous fire transition of the {@link WildfireMechanics}.
+     * @param fireType is the type of the fire.
+     * @param power is the power fighting the fire.
+     * @return is the probability of reduction, -1 if the power is below the threshold of the fire type.
+     */
+    private static double computeReductionProb(int fireType, double power){
+        double effectiveProb;
+        if(fireType == WildfireParameters.BIG_FIRE){
+            if(power < WildfireParameters.BIG_FIRE_THRESHOLD){
+                return -1;
+            }//end if.
+            //For each extra agent than minimum probability would increase the probability of fire reduction.
+            double extraAgentProbs = 0;
+            if (power > WildfireParameters.BIG_FIRE_THRESHOLD) {
+                double extraPower = power - WildfireParameters.BIG_FIRE_THRESHOLD;
+                extraAgentProbs = WildfireParameters.EXTRA_AGENT_FIRE_REDUCTION_PROB
+                        * (extraPower/ WildfireParameters.EXTRA_AGENT_FIRE_POWER);
+            }//end if.
+            effectiveProb = WildfireParameters.FIRE_REDUCTION_PROB + extraAgentProbs;
+        }else if(fireType == WildfireParameters.SMALL_FIRE){
+            if(power < WildfireParameters.SMALL_FIRE_THRESHOLD){
+                return -1;
+            }//end if.
+            effectiveProb = (power/WildfireParameters.SMALL_AGENT_FIRE_POWER) * WildfireParameters.SMALL_FIRE_TRANS_PROB;
+        }else{
+            if(power < WildfireParameters.VERY_BIG_FIRE_THRESHOLD){
+                return -1;
+            }//end if.
+            effectiveProb = (power/WildfireParameters.VB_AGENT_FIRE_POWER) * WildfireParameters.VB_FIRE_TRANS_PROB;
+        }//end if-else.
+
+        return Math.min(1.0, effectiveProb);
+    }
+
+
+    /**
+     * This method samples the next intensity of a fire.
+     * @param fireType is the type of the fire.
+     * @param intensity is the current intensity of the fire.
+     * @param power is the power fighting the fire.
+     * @param spreadProb is the probability of ignition, only used for the intensity 0.
+     * @param randomNumber is a random number between 0 and 1.
+     * @return is the next intensity of the fire.
+     */
+    public int sampleNextIntensity(int fireType, int intensity, double power, double spreadProb, double randomNumber){
+        //Burned out fire and the fire without intensity can not be fought.
+        if(intensity > 0 && intensity < WildfireParameters.MAX_FIRE_STATES - 1
+                && fireType > 0 && fireType < this.reductionProbs.length && this.reductionProbs[fireType] != null){
+            int bucket = (int)Math.round(power * POWER_RESOLUTION);
+            double reductionProb = (bucket < this.reductionProbs[fireType].length)
+                                        ? this.reductionProbs[fireType][bucket]
+                                        : computeReductionProb(fireType, (double)bucket / POWER_RESOLUTION);
+            if(reductionProb >= 0){
+                return (randomNumber < reductionProb) ? intensity - 1 : intensity;
+            }//end if.
+        }//end if.
+
+        double moveProb = (intensity == 0) ? spreadProb : this.unfoughtMoveProbs[intensity];
+        return (randomNumber < moveProb) ? this.unfoughtNextIntensity[intensity] : intensity;
+    }
+
+
+    /**
+     * This method samples the next availability of the self-agent.
+     * @param availability is the current availability.
+     * @param randomNumber is a random number between 0 and 1.
+     * @return is the next availability.
+     */
+    public int sampleNextAvailability(int availability, double randomNumber){
+        return (randomNumber < this.availabilityMoveProbs[availability]) ? this.availabilityNext[availability] : availability;
+    }
+}
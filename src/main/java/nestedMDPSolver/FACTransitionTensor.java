@@ -0,0 +1,202 @@
+package nestedMDPSolver;
+
+import burlap.statehashing.HashableState;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * This class keeps the transitions of the {@link NestedVI} compiled into primitive arrays in the compressed sparse row
+ * (CSR) format, so that each backup is a sparse matrix-vector product over the values instead of generating and hashing
+ * the next states again. There is one row for each state and action of the current agent, and the FACs are already
+ * marginalized out of the rows with their probabilities.
+ * The columns are the indexes of the next states. The backed up states come first with the same indexes as in the
+ * array passed to the constructor, followed by the next states outside of them, whose values are never backed up.
+ */
+public class FACTransitionTensor {
+
+    /**
+     * Number of the backed up states and the actions of the current agent.
+     */
+    private int numStates;
+    private int numActions;
+
+    /**
+     * State of each column.
+     */
+    private HashableState[] columnStates;
+
+    /**
+     * Start of the entries of each row, and the end of the last row.
+     */
+    private int[] rowStarts;
+
+    /**
+     * Column of the next state and the probability of each entry, summed over the FACs.
+     */
+    private int[] successors;
+    private double[] probs;
+
+    /**
+     * Expected immediate reward of each row over the FACs and the next states.
+     */
+    private double[] rewards;
+
+    /**
+     * Start of the predecessors of each backed up state, and the backed up states with at least one row leading to it.
+     * Only built on demand by {@link #buildPredecessors()}.
+     */
+    private int[] predecessorStarts;
+    private int[] predecessors;
+
+
+    /**
+     * This constructor compiles the transition rows into the CSR arrays.
+     * @param states is the array of the backed up states.
+     * @param numActions is the number of the actions of the current agent.
+     * @param rowProbs is the probability of each next state, for each row. The row of the state s and action a is at
+     *                 s * numActions + a.
+     * @param rowRewards is the expected immediate reward of each row.
+     */
+    public FACTransitionTensor(HashableState[] states, int numActions, List<Map<HashableState,Double>> rowProbs,
+                               double[] rowRewards) {
+        this.numStates = states.length;
+        this.numActions = numActions;
+        this.rewards = rowRewards;
+
+        //Index the backed up states first.
+        Map<HashableState,Integer> columnIndexes = new HashMap<>();
+        for(int stateIndex = 0; stateIndex < states.length; stateIndex++){
+            columnIndexes.put(states[stateIndex], stateIndex);
+        }//end for.
+
+        int numEntries = 0;
+        for(Map<HashableState,Double> row : rowProbs){
+            numEntries += row.size();
+        }//end for.
+
+        //Flatten the rows, adding the next states outside the backed up states as new columns.
+        this.rowStarts = new int[rowProbs.size() + 1];
+        this.successors = new int[numEntries];
+        this.probs = new double[numEntries];
+        int entry = 0;
+        for(int row = 0; row < rowProbs.size(); row++){
+            this.rowStarts[row] = entry;
+            for(Map.Entry<HashableState,Double> next : rowProbs.get(row).entrySet()){
+                Integer column = columnIndexes.get(next.getKey());
+                if(column == null){
+                    column = columnIndexes.size();
+                    columnIndexes.put(next.getKey(), column);
+                }//end if.
+                this.successors[entry] = column;
+                this.probs[entry] = next.getValue();
+                entry++;
+            }//end for.
+        }//end for.
+        this.rowStarts[rowProbs.size()] = entry;
+
+        this.columnStates = new HashableState[columnIndexes.size()];
+        for(Map.Entry<HashableState,Integer> column : columnIndexes.entrySet()){
+            this.columnStates[column.getValue()] = column.getKey();
+        }//end for.
+    }
+
+
+    /**
+     * This method computes the Q-value of the state and the action from the values of the next states.
+     * @param stateIndex is the index of the backed up state.
+     * @param actionIndex is the index of the action of the current agent.
+     * @param values is the value of each column.
+     * @param gamma is the discount factor.
+     * @return is the Q-value.
+     */
+    public double qValue(int stateIndex, int actionIndex, double[] values, double gamma){
+        int row = stateIndex * this.numActions + actionIndex;
+        double expectedValue = 0.;
+        for(int entry = this.rowStarts[row]; entry < this.rowStarts[row + 1]; entry++){
+            expectedValue += this.probs[entry] * values[this.successors[entry]];
+        }//end for.
+        return this.rewards[row] + gamma * expectedValue;
+    }
+
+
+    /**
+     * This method builds the predecessors of the backed up states, i.e. the transpose of the rows of each state merged
+     * over the actions, also in the CSR format. The next states outside the backed up states are skipped, since their
+     * values never change.
+     */
+    public void buildPredecessors(){
+        //Mark the distinct predecessors of each state, and count them.
+        int[] lastPredecessor = new int[this.numStates];
+        Arrays.fill(lastPredecessor, -1);
+        int[] counts = new int[this.numStates + 1];
+        for(int stateIndex = 0; stateIndex < this.numStates; stateIndex++){
+            for(int entry = this.rowStarts[stateIndex * this.numActions];
+                    entry < this.rowStarts[(stateIndex + 1) * this.numActions]; entry++){
+                int next = this.successors[entry];
+                if(next < this.numStates && lastPredecessor[next] != stateIndex){
+                    lastPredecessor[next] = stateIndex;
+                    counts[next + 1]++;
+                }//end if.
+            }//end for.
+        }//end for.
+
+        //Cumulative counts are the starts.
+        for(int stateIndex = 0; stateIndex < this.numStates; stateIndex++){
+            counts[stateIndex + 1] += counts[stateIndex];
+        }//end for.
+        this.predecessorStarts = counts;
+        this.predecessors = new int[counts[this.numStates]];
+
+        //Fill the predecessors in the same order.
+        int[] filled = Arrays.copyOf(counts, this.numStates);
+        Arrays.fill(lastPredecessor, -1);
+        for(int stateIndex = 0; stateIndex < this.numStates; stateIndex++){
+            for(int entry = this.rowStarts[stateIndex * this.numActions];
+                    entry < this.rowStarts[(stateIndex + 1) * this.numActions]; entry++){
+                int next = this.successors[entry];
+                if(next < this.numStates && lastPredecessor[next] != stateIndex){
+                    lastPredecessor[next] = stateIndex;
+                    this.predecessors[filled[next]++] = stateIndex;
+                }//end if.
+            }//end for.
+        }//end for.
+    }
+
+
+    //Getter methods.
+    public int getNumStates() {
+        return numStates;
+    }
+
+    public int getNumActions() {
+        return numActions;
+    }
+
+    public int getNumColumns() {
+        return columnStates.length;
+    }
+
+    public HashableState getColumnState(int column) {
+        return columnStates[column];
+    }
+
+    public int getNumEntries() {
+        return successors.length;
+    }
+
+    public int getPredecessorStart(int stateIndex) {
+        return predecessorStarts[stateIndex];
+    }
+
+    public int getPredecessorEnd(int stateIndex) {
+        return predecessorStarts[stateIndex + 1];
+    }
+
+    public int getPredecessor(int position) {
+        return predecessors[position];
+    }
+}
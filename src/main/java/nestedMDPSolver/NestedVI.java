@@ -28,15 +28,22 @@ import burlap.behavior.valuefunction.ConstantValueFunction;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 import burlap.statehashing.simple.SimpleHashableStateFactory;
+import common.BinaryPolicyFile;
+import common.OtherAgentsNMDPPolicy;
 import common.RandomPolicy;
 import common.StateEnumerator;
 import datastructures.QueueLinkedList;
 import domains.wildfire.*;
 import posg.model.FACRewardFunction;
-import posg.model.FullJointIPOMCPModel;
+import scalability.BestFirstFACGenerator;
 import scalability.FrameActionConfiguration;
 import scalability.beans.ConfigurationBean;
 
@@ -46,61 +53,41 @@ public class NestedVI extends MDPSolver implements Planner,QProvider{
     public static final String WF = "wf";
     public static final String GG = "gg";
     public static final String CN = "cn";
-    private static boolean finite = true;
     public enum dom {WF,GG,CN};
-    protected static Set<HashableState> states = new LinkedHashSet<>();
-    protected static double maxDelta;
-    protected static int maxIterations;
     protected static int debugCode = 23456789;
     protected static boolean verbosemode;
     protected static boolean testingmode;
     protected static boolean debugmode = false;
     protected Map<HashableState, Double> valueFunction;
-    //Temporary Map for storing the current horizon's V values.
-    protected Map<HashableState, Double> currentHorizonValueFunction;
+    //Values by the dense index of the Wildfire states, NaN if not set. Null for the other domains, which use the map.
+    protected double[] denseValues;
     protected ConstantValueFunction vinit;
-    protected static FullJointIPOMCPModel facModel;
-    protected static FACRewardFunction facRewardFunction;
     protected World w;
-    protected static TerminalFunction tf;
-    protected static double gamma;
-    protected static HashableStateFactory hashingFactory;
-    private static Map<String, SGAgent> agentDefinitions;
-    private static Map<String, SGAgent> agentAnmDefinitions;
     protected boolean planningStarted = false;
     protected int currentAgentIndex;
     protected String currentAgentName;
     protected Map<String, Policy> otherAgentsPolicyMap;
     protected int maxLevel;
-    protected static int numPlayers;
-    protected static Map<Integer, String> agIDtoName;
-    protected static OOSGDomain domain;
-    protected static StateEnumerator senum;
-    private static boolean initNestedVI = false;
-    public static boolean doreach = false;
-    protected static List<String> agentsInWorld;
-    public static FrameActionConfiguration fac;
-    public static FrameActionConfiguration facOthers;
-    public static double[] facUniformPriors;
-    public static int zeroCounter = 0;
-    public static boolean isBackedUp;
-    public static Map<State,List<QValue>> qValueMap;
-    public static ArrayList<int[]> filteredFACs;
-    public static ArrayList<Double> filteredFACProbabilities;
+    //State of the solve.
+    protected NestedVIContext context;
     public static double epselone;
     public static double qValueErrorMargin; //For resolving bug of q-values fraction inaccuracy.
+    public static int threadCount = 1; //Threads backing up the states in each VI iteration.
+    public static int solveThreadCount = 1; //Neighbour policies solved at the same time.
+    public static boolean isPrioritizedSweeping = false; //Back up the states by their residuals instead of full sweeps.
 
 
 
 
-    public NestedVI(ConstantValueFunction vinit, int subjectAgentIndex,
+    public NestedVI(NestedVIContext context, ConstantValueFunction vinit, int subjectAgentIndex,
                     Map<String, Policy> otherAgentsPolicies, int maxLevel2) {
 
-        if(initNestedVI){
-            this.valueFunction = new HashMap<HashableState, Double>();
+        if(context != null && context.isInitialized){
+            this.context = context;
+            this.valueFunction = new ConcurrentHashMap<HashableState, Double>();
             this.vinit = vinit;
             this.currentAgentIndex = subjectAgentIndex;
-            this.currentAgentName = agIDtoName.get(this.currentAgentIndex);
+            this.currentAgentName = context.agIDtoName.get(this.currentAgentIndex);
             this.otherAgentsPolicyMap = otherAgentsPolicies;
             this.maxLevel = maxLevel2;
         }else{
@@ -109,26 +96,22 @@ public class NestedVI extends MDPSolver implements Planner,QProvider{
         }
     }
 
-    public static boolean initNestedVI(OOSGDomain d, StateEnumerator senum1, Map<String, SGAgent> agentDefs,
-                                       Map<Integer, String> agIDtoN, FACRewardFunction facRewardFunction1, TerminalFunction tf1,
-                                       HashableStateFactory hashingFactory1, double gamma1, double maxDelta1,
+    public static boolean initNestedVI(NestedVIContext context, StateEnumerator senum1, Map<String, SGAgent> agentDefs,
+                                       Map<Integer, String> agIDtoN, double gamma1, double maxDelta1,
                                        int maxIterations1, List<String> agentsInWorld1, int numP, boolean finite1) {
 
-        domain = d;
-        senum = senum1;
-        agentDefinitions = agentDefs;
-        agIDtoName = agIDtoN;
-        facRewardFunction = facRewardFunction1;
-        tf = tf1;
-        hashingFactory = hashingFactory1;
-        gamma = gamma1;
-        maxDelta = maxDelta1;
-        maxIterations = maxIterations1;
-        agentsInWorld = agentsInWorld1;
-        numPlayers = numP;
-        finite = finite1;
-        facModel = (FullJointIPOMCPModel) d.getJointActionModel();
-        qValueMap = new HashMap<>();
+        context.senum = senum1;
+        context.agentDefinitions = agentDefs;
+        context.agIDtoName = agIDtoN;
+        context.gamma = gamma1;
+        context.maxDelta = maxDelta1;
+        context.maxIterations = maxIterations1;
+        context.agentsInWorld = agentsInWorld1;
+        context.numPlayers = numP;
+        context.finite = finite1;
+        context.qValueMap = new ConcurrentHashMap<>();
+        context.qTable = null;
+        context.isInitialized = true;
 
         return true;
     }
@@ -140,15 +123,15 @@ public class NestedVI extends MDPSolver implements Planner,QProvider{
      */
     @Override
     public List<QValue> qValues(State s) {
-        String actingAgent = agIDtoName.get(this.currentAgentIndex);
+        String actingAgent = context.agIDtoName.get(this.currentAgentIndex);
 
 
         //This would save a bit more time, while writing the policy.
-        if(isBackedUp)
-            return NestedVI.qValueMap.get(s);
+        if(context.isBackedUp)
+            return context.getQValues(s);
 
         //Get all the actions for the agent.
-        List<ActionType> allsgActions = agentDefinitions.get(actingAgent).agentType().actions;
+        List<ActionType> allsgActions = context.agentDefinitions.get(actingAgent).agentType().actions;
         List<Action> allAgActions = SGtoGroundedSG(allsgActions,actingAgent);
 
         if(testingmode){
@@ -167,7 +150,7 @@ public class NestedVI extends MDPSolver implements Planner,QProvider{
         }
 
         //Replace the previous Q values with the new ones.
-        NestedVI.qValueMap.put(s,qs);
+        context.qValueMap.put(s,qs);
 
         return qs;
     }//end method.
@@ -193,21 +176,21 @@ public class NestedVI extends MDPSolver implements Planner,QProvider{
 
 
         //For all the FACs.
-        for(int facCount = 0 ; facCount < NestedVI.filteredFACs.size() ; facCount++){
+        //Temporary FAC. The transitions copy it, so the counts can be reused for the next FAC.
+        FrameActionConfiguration tempFAC = new FrameActionConfiguration(context.facOthers,false);
+        for(int facCount = 0 ; facCount < context.filteredFACs.size() ; facCount++){
 
-            //Set the Current FAC values in the facOthers from the stored list of agent values.
-            int[] agentCounts = NestedVI.filteredFACs.get(facCount);
+            //Set the Current FAC values in the temporary FAC from the stored list of agent values.
+            int[] agentCounts = context.filteredFACs.get(facCount);
             for(int pairNumber = 0 ; pairNumber < agentCounts.length ; pairNumber++){
-                NestedVI.facOthers.getCurrentConfiguration()[pairNumber].setNumberOfAgents(agentCounts[pairNumber]);
+                tempFAC.getCurrentConfiguration()[pairNumber].setNumberOfAgents(agentCounts[pairNumber]);
             }
-            //Create a temporary FAC.
-            FrameActionConfiguration tempFAC = new FrameActionConfiguration(NestedVI.facOthers,false);
             //Sum the Q-value function.
-            sumQ += NestedVI.filteredFACProbabilities.get(facCount) * getQValueForAgentFAC(s,a,tempFAC);
+            sumQ += context.filteredFACProbabilities.get(facCount) * getQValueForAgentFAC(s,a,tempFAC);
         }//end config.
 
-        if(NestedVI.zeroCounter > 0){
-            System.out.println("Total Zeroes in state transition in  one FAC rounds:" + NestedVI.zeroCounter);
+        if(context.zeroCounter.get() > 0){
+            System.out.println("Total Zeroes in state transition in  one FAC rounds:" + context.zeroCounter.get());
         }
 
         return sumQ;
@@ -226,18 +209,18 @@ public class NestedVI extends MDPSolver implements Planner,QProvider{
         FACTransitions facTransitions = new FACTransitions(s,currentAgentAction,facQ);
 
         double sumQ = 0.;
-        if(!tf.isTerminal(s)){
+        if(!context.tf.isTerminal(s)){
             List<StateTransitionProb> tps = facTransitions.tps;
             for(int i = 0; i < tps.size(); i++){
                 StateTransitionProb tp = tps.get(i);
                 double p = tp.p;
-                HashableState sh = hashingFactory.hashState(tp.s);
+                HashableState sh = context.hashingFactory.hashState(tp.s);
                 //The reward list for the given state transition.
                 double r = facTransitions.rewards.get(i);
                 double vprime = this.getValue(sh);
 
                 //TODO: Correct, but written a bit different from the equation in the OASYS paper.
-                double contribution = r + gamma*vprime;
+                double contribution = r + context.gamma*vprime;
                 double weightedContribution = p*contribution;
 
                 sumQ += weightedContribution;
@@ -250,7 +233,12 @@ public class NestedVI extends MDPSolver implements Planner,QProvider{
 
     @Override
     public double value(State s) {
-        Double d = this.valueFunction.get(hashingFactory.hashState(s));
+        int denseIndex = denseIndex(s);
+        if(denseIndex != -1){
+            double v = this.denseValues[denseIndex];
+            return Double.isNaN(v) ? vinit.value(s) : v;
+        }//end if.
+        Double d = this.valueFunction.get(context.hashingFactory.hashState(s));
         if(d == null){
             return vinit.value(s);
         }
@@ -260,23 +248,45 @@ public class NestedVI extends MDPSolver implements Planner,QProvider{
     @Override
     public void resetSolver() {
         this.valueFunction.clear();
+        this.denseValues = null;
+    }
+
+
+    /**
+     * This method finds the dense index of the state for the value array, which is the state id given by
+     * {@link WildfireAnonymousState#encode()} for the Wildfire states.
+     * @param s is the state.
+     * @return is the index of the state, -1 if the values are kept in the map for the state.
+     */
+    private int denseIndex(State s){
+        if(this.denseValues != null && s instanceof WildfireAnonymousState){
+            return ((WildfireAnonymousState) s).encode();
+        }//end if.
+        return -1;
     }
 
 
     @Override
     public Policy planFromState(State initialState) {
 
-        HashableState hashedInitialState = hashingFactory.hashState(initialState);
-        if(this.valueFunction.containsKey(hashedInitialState)){
+        int initialIndex = denseIndex(initialState);
+        if((initialIndex != -1 && !Double.isNaN(this.denseValues[initialIndex]))
+                || (initialIndex == -1 && this.valueFunction.containsKey(context.hashingFactory.hashState(initialState)))){
             return new GreedyQPolicy(this); //already performed planning here!
         }
 
+        //Wildfire states have a dense index, so the values and the Q-values are kept in the arrays.
+        if(this.denseValues == null && initialState instanceof WildfireAnonymousState){
+            this.denseValues = new double[((WildfireAnonymousState)initialState).numberOfStates()];
+            Arrays.fill(this.denseValues, Double.NaN);
+        }//end if.
+
 
         //Filter all the FACs by calculating their multi nomial probability.
-        facFilter(facRewardFunction.getRewardUpperBound(initialState,NestedVI.domain,gamma),NestedVI.epselone);
+        facFilter(context, context.facRewardFunction.getRewardUpperBound(initialState,context.domain,context.gamma),NestedVI.epselone);
 
 
-        int maxIter = maxIterations;
+        int maxIter = context.maxIterations;
 //        if(finite){
 //            if(!doreach) doreach = this.perform_H_StepReachabilityFrom(initialState);
 //            maxIter = maxIterations;
@@ -285,45 +295,73 @@ public class NestedVI extends MDPSolver implements Planner,QProvider{
 //            maxIter = maxIterations;
 //        }
 
-        if(doreach){
+        if(context.doreach){
             int iter=0;
             double maxChange;
 
-            currentHorizonValueFunction = new HashMap<>();
+            //States and their values of the current horizon for the backups.
+            HashableState[] stateArray = context.states.toArray(new HashableState[context.states.size()]);
+            double[] currentHorizonValues = new double[stateArray.length];
+            List<Action> actions = getAllGroundedActionsForAgentID(initialState, this.currentAgentIndex);
+            int[] stateIds = new int[stateArray.length];
+            for(int stateIndex = 0; stateIndex < stateArray.length; stateIndex++){
+                stateIds[stateIndex] = denseIndex(stateArray[stateIndex].s());
+            }//end for.
+            if(this.denseValues != null){
+                context.qTable = new double[this.denseValues.length][];
+                context.qActions = actions;
+            }//end if.
+            ExecutorService executor = (threadCount > 1) ? Executors.newFixedThreadPool(threadCount) : null;
             MyTimer timer = new MyTimer();
-            do{
-                timer.start();
-                maxChange = Double.NEGATIVE_INFINITY;
-                for(HashableState sh : states){
-
-                    if(!this.valueFunction.containsKey(sh)){
-                        setValue(sh, this.vinit.value(sh.s()));
-                    }
-                    double change = this.backupAgentValueFunction(sh.s());
-                    maxChange = Math.max(change, maxChange);
-                }
-
-                //Set the value of the actual V for the use in all the equations after the current
-                //horizon computation ends.
-                for(HashableState sh: states){
-                    setValue(sh, this.currentHorizonValueFunction.get(sh));
-                }
 
-                timer.stop();
+            //Compile the transitions once, so that each backup only reads the arrays.
+            timer.start();
+            FACTransitionTensor tensor = buildTransitionTensor(executor, stateArray, actions);
+            timer.stop();
+            DPrint.cl(NestedVI.debugCode , "Compiled transitions of " + stateArray.length + " states into "
+                    + tensor.getNumEntries() + " entries with " + tensor.getNumColumns() + " next states in: "
+                    + timer.getTime() + "s");
+
+            //Values of all the next states. The next states outside the backed up states keep their initial values.
+            double[] values = new double[tensor.getNumColumns()];
+            for(int column = 0; column < values.length; column++){
+                values[column] = getValue(tensor.getColumnState(column));
+            }//end for.
 
-                DPrint.cl(NestedVI.debugCode , "Finished VI backup: "+ iter +" in: "
-                        +timer.getTime()+ "s w/ max change: " + maxChange);
-                iter++;
-            }while((maxChange >= maxDelta) && (iter < maxIter));
+            timer = new MyTimer();
+            if(isPrioritizedSweeping){
+                iter = prioritizedSweeps(tensor, actions, stateArray, stateIds, values, maxIter, timer);
+            }else{
+                do{
+                    timer.start();
+                    maxChange = tensorBackup(executor, tensor, actions, stateArray, stateIds, values, currentHorizonValues);
+
+                    //Set the value of the actual V for the use in all the equations after the current
+                    //horizon computation ends.
+                    for(int stateIndex = 0; stateIndex < stateArray.length; stateIndex++){
+                        values[stateIndex] = currentHorizonValues[stateIndex];
+                        storeValue(stateArray, stateIds, stateIndex, currentHorizonValues[stateIndex]);
+                    }//end for.
+
+                    timer.stop();
+
+                    DPrint.cl(NestedVI.debugCode , "Finished VI backup: "+ iter +" in: "
+                            +timer.getTime()+ "s w/ max change: " + maxChange);
+                    iter++;
+                }while((maxChange >= context.maxDelta) && (iter < maxIter));
+            }//end if-else.
+            if(executor != null){
+                executor.shutdown();
+            }//end if.
             DPrint.cl(NestedVI.debugCode, "Performed " + iter + " backups..in "
                     +timer.getTotalTime()+"s Avg time/backup = "+timer.getAvgTime()+"s");
         }
 
         //Compare Q-Value map for each state and update them if there are marginal errors in the Q-values.
         System.out.println("---------------Q-Value Logs---------------");
-        for(HashableState sh: states){
+        for(HashableState sh: context.states){
             System.out.println("State:" + sh.s());
-            List<QValue> qValues = NestedVI.qValueMap.get(sh.s());
+            List<QValue> qValues = context.getQValues(sh.s());
             for(int qCount = 0; qCount <  qValues.size() ; qCount++){
                 System.out.print("Action:Q-Value::" + qValues.get(qCount).a.actionName() + ":" + qValues.get(qCount).q +",");
             }//end for.
@@ -333,61 +371,367 @@ public class NestedVI extends MDPSolver implements Planner,QProvider{
         return new GreedyQPolicy(this);
     }
 
-    private double backupAgentValueFunction(State s) {
-        List<QValue> QValues = qValues(s);
-
-        if(testingmode){
-            dprint("Got Qs (inside backupAgentValueFunction)");
-        }
 
+    /**
+     * This method compiles the transitions and the rewards of all the states and actions over the filtered FACs into
+     * a {@link FACTransitionTensor}. The rows are computed in parallel if there is a thread pool, since each row only
+     * reads the models.
+     * @param executor is the thread pool, null to compute the rows in the calling thread.
+     * @param stateArray is the array of all the states.
+     * @param actions is the list of the actions of the current agent.
+     * @return is the compiled transitions.
+     */
+    private FACTransitionTensor buildTransitionTensor(ExecutorService executor, final HashableState[] stateArray,
+                                                      final List<Action> actions){
+        final int numActions = actions.size();
+        final List<Map<HashableState,Double>> rowProbs = new ArrayList<>(stateArray.length * numActions);
+        for(int row = 0; row < stateArray.length * numActions; row++){
+            rowProbs.add(null);
+        }//end for.
+        final double[] rowRewards = new double[stateArray.length * numActions];
 
-        //The below code block fixes the fractional value errors due to processor inaccuracies.
-        List<QValue> qValues = NestedVI.qValueMap.get(s);
-        boolean isModified = false;
-        //For each Q-value for an action compare it against other Q-values for the state.
-        //If the difference between them is less than the threshold, then make them equal. zz
-        for(int qCount = 0; qCount <  qValues.size() ; qCount++){
-            List<QValue> compareQValues = new ArrayList<>(qValues);//Comparison Q-values.
-            for(int compCount = 0; compCount <  compareQValues.size() && qCount != compCount ; compCount++){
-                QValue compareQValue = compareQValues.get(compCount);
-                double qValueDiff = Math.abs(qValues.get(qCount).q - compareQValue.q);
-                if(qValueDiff != 0 && qValueDiff < NestedVI.qValueErrorMargin){
-                    qValues.get(qCount).q = compareQValue.q;
-                    isModified = true;
-//                    System.out.println("Q-Value Fix:" + qValues.get(qCount).q);
-                }//end if.
+        if(executor == null){
+            for(int stateIndex = 0; stateIndex < stateArray.length; stateIndex++){
+                for(int actionIndex = 0; actionIndex < numActions; actionIndex++){
+                    int row = stateIndex * numActions + actionIndex;
+                    rowProbs.set(row, transitionRow(stateArray[stateIndex].s(), actions.get(actionIndex), row, rowRewards));
+                }//end for.
             }//end for.
-        }//end for.
-        //If modified for the error, update the Q-Value map.
-        if(isModified){
-            NestedVI.qValueMap.put(s,qValues);
+        }else{
+            //Create a task for each chunk of the states.
+            int chunkSize = (stateArray.length + threadCount - 1) / threadCount;
+            List<Callable<Void>> builds = new ArrayList<>();
+            for(int start = 0; start < stateArray.length; start += chunkSize){
+                final int chunkStart = start;
+                final int chunkEnd = Math.min(stateArray.length, start + chunkSize);
+                builds.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        for(int stateIndex = chunkStart; stateIndex < chunkEnd; stateIndex++){
+                            for(int actionIndex = 0; actionIndex < numActions; actionIndex++){
+                                int row = stateIndex * numActions + actionIndex;
+                                //Each task sets its own rows, which were already added to the list.
+                                rowProbs.set(row, transitionRow(stateArray[stateIndex].s(), actions.get(actionIndex),
+                                        row, rowRewards));
+                            }//end for.
+                        }//end for.
+                        return null;
+                    }
+                });
+            }//end for.
+
+            try{
+                for(Future<Void> build : executor.invokeAll(builds)){
+                    build.get();
+                }//end for.
+            }catch(Exception e){
+                System.out.println("NestedVI: Compiling the transitions failed.");
+                e.printStackTrace();
+                System.exit(0);
+            }//end try-catch.
+        }//end if-else.
+
+        if(context.zeroCounter.get() > 0){
+            System.out.println("Total Zeroes in state transition in  one FAC rounds:" + context.zeroCounter.get());
+        }//end if.
+
+        return new FACTransitionTensor(stateArray, numActions, rowProbs, rowRewards);
+    }
+
+
+    /**
+     * This method computes the probability of each next state for the state and the action of the current agent, and
+     * the expected immediate reward, summed over the filtered FACs with their probabilities.
+     * @param s is the state.
+     * @param a is the action of the current agent.
+     * @param row is the row of the state and the action.
+     * @param rowRewards is the array of the expected rewards of the rows to set.
+     * @return is the probability of each next state. It is empty for the terminal states.
+     */
+    private Map<HashableState,Double> transitionRow(State s, Action a, int row, double[] rowRewards){
+        Map<HashableState,Double> nextProbs = new LinkedHashMap<>();
+        double expectedReward = 0.;
+        if(!context.tf.isTerminal(s)){
+            //Temporary FAC. The transitions copy it, so the counts can be reused for the next FAC.
+            FrameActionConfiguration tempFAC = new FrameActionConfiguration(context.facOthers,false);
+            for(int facCount = 0 ; facCount < context.filteredFACs.size() ; facCount++){
+                int[] agentCounts = context.filteredFACs.get(facCount);
+                for(int pairNumber = 0 ; pairNumber < agentCounts.length ; pairNumber++){
+                    tempFAC.getCurrentConfiguration()[pairNumber].setNumberOfAgents(agentCounts[pairNumber]);
+                }//end for.
+
+                double facProb = context.filteredFACProbabilities.get(facCount);
+                FACTransitions facTransitions = new FACTransitions(s,a,tempFAC);
+                for(int i = 0; i < facTransitions.tps.size(); i++){
+                    StateTransitionProb tp = facTransitions.tps.get(i);
+                    double p = facProb * tp.p;
+                    HashableState sh = context.hashingFactory.hashState(tp.s);
+                    Double prevP = nextProbs.get(sh);
+                    nextProbs.put(sh, (prevP == null) ? p : prevP + p);
+                    expectedReward += p * facTransitions.rewards.get(i);
+                }//end for.
+            }//end config.
         }//end if.
 
+        rowRewards[row] = expectedReward;
+        return nextProbs;
+    }
+
 
-        HashableState sh = hashingFactory.hashState(s);
+    /**
+     * This method backs up all the states from the compiled transitions. The states are split into one chunk per
+     * thread if there is a thread pool, and each chunk writes the new values of its states into the current horizon's
+     * array, which is swapped into the values by the caller after the sweep.
+     * @param executor is the thread pool, null to back up the states in the calling thread.
+     * @param tensor is the compiled transitions.
+     * @param actions is the list of the actions of the current agent.
+     * @param stateArray is the array of all the states.
+     * @param stateIds is the dense index of each state, -1 if the state does not have one.
+     * @param values is the value of each column of the transitions from the previous horizon.
+     * @param currentHorizonValues is the array of the values of the current horizon for each state.
+     * @return is the max change in the values.
+     */
+    private double tensorBackup(ExecutorService executor, final FACTransitionTensor tensor, final List<Action> actions,
+                                final HashableState[] stateArray, final int[] stateIds, final double[] values,
+                                final double[] currentHorizonValues){
+        if(executor == null){
+            return backupChunk(tensor, actions, stateArray, stateIds, values, currentHorizonValues, 0, stateArray.length);
+        }//end if.
+
+        //Create a task for each chunk of the states.
+        int chunkSize = (stateArray.length + threadCount - 1) / threadCount;
+        List<Callable<Double>> backups = new ArrayList<>();
+        for(int start = 0; start < stateArray.length; start += chunkSize){
+            final int chunkStart = start;
+            final int chunkEnd = Math.min(stateArray.length, start + chunkSize);
+            backups.add(new Callable<Double>() {
+                @Override
+                public Double call() {
+                    return backupChunk(tensor, actions, stateArray, stateIds, values, currentHorizonValues,
+                            chunkStart, chunkEnd);
+                }
+            });
+        }//end for.
+
+        //Wait for all the chunks and find the max change.
         double maxChange = Double.NEGATIVE_INFINITY;
-        double maxQ = Double.NEGATIVE_INFINITY;
+        try{
+            for(Future<Double> backup : executor.invokeAll(backups)){
+                maxChange = Math.max(maxChange, backup.get());
+            }//end for.
+        }catch(Exception e){
+            System.out.println("NestedVI: Parallel backup failed.");
+            e.printStackTrace();
+            System.exit(0);
+        }//end try-catch.
 
-        double oldVal = getValue(sh);
+        return maxChange;
+    }
 
-        for(QValue qv : QValues){
-            maxQ = Math.max(maxQ, qv.q);
-        }
-        double newVal = maxQ;
 
-        maxChange = Math.max(maxChange, Math.abs(newVal-oldVal));
-        this.currentHorizonValueFunction.put(sh, newVal);
+    /**
+     * This method backs up a chunk of the states from the compiled transitions, and stores their Q-values.
+     * @param tensor is the compiled transitions.
+     * @param actions is the list of the actions of the current agent.
+     * @param stateArray is the array of all the states.
+     * @param stateIds is the dense index of each state, -1 if the state does not have one.
+     * @param values is the value of each column of the transitions from the previous horizon.
+     * @param currentHorizonValues is the array of the values of the current horizon for each state.
+     * @param chunkStart is the index of the first state of the chunk.
+     * @param chunkEnd is the index after the last state of the chunk.
+     * @return is the max change in the values of the chunk.
+     */
+    private double backupChunk(FACTransitionTensor tensor, List<Action> actions, HashableState[] stateArray,
+                               int[] stateIds, double[] values, double[] currentHorizonValues,
+                               int chunkStart, int chunkEnd){
+        double maxChange = Double.NEGATIVE_INFINITY;
+        for(int stateIndex = chunkStart; stateIndex < chunkEnd; stateIndex++){
+            double maxQ = backupState(tensor, actions, stateArray, stateIds, values, stateIndex);
+            currentHorizonValues[stateIndex] = maxQ;
+            maxChange = Math.max(maxChange, Math.abs(maxQ - values[stateIndex]));
+        }//end for.
         return maxChange;
     }
 
 
+    /**
+     * This method computes the new value of a state from the compiled transitions, and stores its Q-values. The new
+     * value itself is not stored.
+     * @param tensor is the compiled transitions.
+     * @param actions is the list of the actions of the current agent.
+     * @param stateArray is the array of all the states.
+     * @param stateIds is the dense index of each state, -1 if the state does not have one.
+     * @param values is the value of each column of the transitions.
+     * @param stateIndex is the index of the state.
+     * @return is the max Q-value of the state.
+     */
+    private double backupState(FACTransitionTensor tensor, List<Action> actions, HashableState[] stateArray,
+                               int[] stateIds, double[] values, int stateIndex){
+        double[] qs = new double[actions.size()];
+        for(int actionIndex = 0; actionIndex < qs.length; actionIndex++){
+            qs[actionIndex] = tensor.qValue(stateIndex, actionIndex, values, context.gamma);
+        }//end for.
+        fixQValueErrors(qs);
+
+        //Store the Q-values in the Q table if the state has a dense index, in the map otherwise.
+        if(stateIds[stateIndex] != -1){
+            context.qTable[stateIds[stateIndex]] = qs;
+        }else{
+            State s = stateArray[stateIndex].s();
+            List<QValue> qValues = new ArrayList<QValue>(qs.length);
+            for(int actionIndex = 0; actionIndex < qs.length; actionIndex++){
+                qValues.add(new QValue(s, actions.get(actionIndex), qs[actionIndex]));
+            }//end for.
+            context.qValueMap.put(s, qValues);
+        }//end if-else.
+
+        double maxQ = Double.NEGATIVE_INFINITY;
+        for(double q : qs){
+            maxQ = Math.max(maxQ, q);
+        }//end for.
+        return maxQ;
+    }
+
+
+    /**
+     * This method stores the value of a backed up state, in the dense values if the state has a dense index.
+     * @param stateArray is the array of all the states.
+     * @param stateIds is the dense index of each state, -1 if the state does not have one.
+     * @param stateIndex is the index of the state.
+     * @param v is the value.
+     */
+    private void storeValue(HashableState[] stateArray, int[] stateIds, int stateIndex, double v){
+        if(stateIds[stateIndex] != -1){
+            this.denseValues[stateIds[stateIndex]] = v;
+        }else{
+            setValue(stateArray[stateIndex], v);
+        }//end if-else.
+    }
+
+
+    /**
+     * This method backs up the states in the order of their Bellman residuals instead of the full synchronous sweeps
+     * (prioritized sweeping). Each backup is done in place (Gauss-Seidel), and the change of the value is added to the
+     * residual bounds of the predecessors of the state, discounted by the gamma. Each sweep backs up the states whose
+     * bound is at least the maxDelta, the largest first, so the states which converged early are skipped, and it stops
+     * when no such states are left.
+     * @param tensor is the compiled transitions.
+     * @param actions is the list of the actions of the current agent.
+     * @param stateArray is the array of all the states.
+     * @param stateIds is the dense index of each state, -1 if the state does not have one.
+     * @param values is the value of each column of the transitions, which is updated in place.
+     * @param maxIter is the maximum number of the sweeps.
+     * @param timer is the timer of the sweeps.
+     * @return is the number of the sweeps done.
+     */
+    private int prioritizedSweeps(FACTransitionTensor tensor, List<Action> actions, HashableState[] stateArray,
+                                  int[] stateIds, double[] values, int maxIter, MyTimer timer){
+        tensor.buildPredecessors();
+
+        //Upper bound of the Bellman residual of each state. All the states are backed up in the first sweep.
+        final double[] residuals = new double[stateArray.length];
+        Arrays.fill(residuals, Double.POSITIVE_INFINITY);
+
+        int iter = 0;
+        while(iter < maxIter){
+            timer.start();
+
+            //Order the states to back up by their residuals.
+            List<Integer> order = new ArrayList<>();
+            for(int stateIndex = 0; stateIndex < stateArray.length; stateIndex++){
+                if(residuals[stateIndex] >= context.maxDelta){
+                    order.add(stateIndex);
+                }//end if.
+            }//end for.
+            if(order.isEmpty()){
+                timer.stop();
+                break;
+            }//end if.
+            Collections.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer first, Integer second) {
+                    return Double.compare(residuals[second], residuals[first]);
+                }
+            });
+
+            double maxChange = Double.NEGATIVE_INFINITY;
+            for(int stateIndex : order){
+                residuals[stateIndex] = 0;
+                double newVal = backupState(tensor, actions, stateArray, stateIds, values, stateIndex);
+                double change = Math.abs(newVal - values[stateIndex]);
+                values[stateIndex] = newVal;
+                storeValue(stateArray, stateIds, stateIndex, newVal);
+                maxChange = Math.max(maxChange, change);
+
+                //The change can only raise the residuals of the predecessors by the discounted change.
+                if(change > 0){
+                    for(int position = tensor.getPredecessorStart(stateIndex);
+                            position < tensor.getPredecessorEnd(stateIndex); position++){
+                        residuals[tensor.getPredecessor(position)] += context.gamma * change;
+                    }//end for.
+                }//end if.
+            }//end for.
+
+            //Residual left after the sweep.
+            int pending = 0;
+            double maxResidual = 0;
+            for(double residual : residuals){
+                if(residual >= context.maxDelta){
+                    pending++;
+                }//end if.
+                maxResidual = Math.max(maxResidual, residual);
+            }//end for.
+            timer.stop();
+
+            DPrint.cl(NestedVI.debugCode , "Finished prioritized sweep: "+ iter +" in: " +timer.getTime()
+                    + "s w/ " + order.size() + " backups, max change: " + maxChange
+                    + ", max residual: " + maxResidual + ", states left: " + pending);
+            iter++;
+        }//end while.
+
+        return iter;
+    }
+
+
+    /**
+     * This method fixes the fractional value errors due to processor inaccuracies in the Q-values of a state.
+     * @param qs is the Q-value of each action of the state, which is modified in place.
+     */
+    private void fixQValueErrors(double[] qs){
+        //For each Q-value for an action compare it against other Q-values for the state.
+        //If the difference between them is less than the threshold, then make them equal. zz
+        for(int qCount = 0; qCount <  qs.length ; qCount++){
+            for(int compCount = 0; compCount <  qs.length && qCount != compCount ; compCount++){
+                double qValueDiff = Math.abs(qs[qCount] - qs[compCount]);
+                if(qValueDiff != 0 && qValueDiff < NestedVI.qValueErrorMargin){
+                    qs[qCount] = qs[compCount];
+//                    System.out.println("Q-Value Fix:" + qs[qCount]);
+                }//end if.
+            }//end for.
+        }//end for.
+    }
+
+
     public double getValue(HashableState sh){
+        int denseIndex = denseIndex(sh.s());
+        if(denseIndex != -1){
+            double stored = this.denseValues[denseIndex];
+            if(!Double.isNaN(stored)){
+                return stored;
+            }
+            double v = 0.;
+            if(!context.tf.isTerminal(sh.s())){
+                v = this.vinit.value(sh.s());
+            }
+            this.denseValues[denseIndex] = v;
+            return v;
+        }
         Double stored = this.valueFunction.get(sh);
         if(stored != null){
             return stored;
         }
         double v = 0.;
-        if(!tf.isTerminal(sh.s())){
+        if(!context.tf.isTerminal(sh.s())){
             v = this.vinit.value(sh.s());
         }
         this.valueFunction.put(sh, v);
@@ -395,6 +739,11 @@ public class NestedVI extends MDPSolver implements Planner,QProvider{
     }
 
     public void setValue(HashableState sh, double v){
+        int denseIndex = denseIndex(sh.s());
+        if(denseIndex != -1){
+            this.denseValues[denseIndex] = v;
+            return;
+        }
         this.valueFunction.put(sh, v);
     }
 
@@ -406,16 +755,17 @@ public class NestedVI extends MDPSolver implements Planner,QProvider{
      * N_theta = number of agents of type theta in the current state.
      * n_i is the number of agents at location i of type theta.
      * A_i is the number of actions which the agent at location i and type theta can perform.
+     * @param context is the context of the solve.
      * @param agentsInTheWorld is the list of the agent groups.
      * @param currentAgentGroup is the current agent group.
      * @param d is the Wildfire domain object.
      * @param isInflatedDistribution is the parameter to decide the base distribution for finding agents at level-0. If true, then
      *                               the agents would follow inflated distribution for actions, uniform random otherwise.
      */
-    public static void calculateUniformPrior(List<String> agentsInTheWorld,String currentAgentGroup, WildfireDomain d,
+    public static void calculateUniformPrior(NestedVIContext context, List<String> agentsInTheWorld,String currentAgentGroup, WildfireDomain d,
                                              boolean isInflatedDistribution){
         //Create the probability array for the uniform priors.
-        NestedVI.facUniformPriors = new double[NestedVI.facOthers.getMaxConfiguration().length];
+        context.facUniformPriors = new double[context.facOthers.getMaxConfiguration().length];
         Map<Integer,Double> typeAlphas = new HashMap<>();
 
         //Count through all the theta-action pair and find the groups which are suitable to this pair.
@@ -423,12 +773,12 @@ public class NestedVI extends MDPSolver implements Planner,QProvider{
         //And find the ratio for particular group size/no. of actions.
         //Multiply (1/total agents) * (Sum of the ratios above).
         int configCount = 0;
-        for(ConfigurationBean config : facOthers.getMaxConfiguration()){
+        for(ConfigurationBean config : context.facOthers.getMaxConfiguration()){
             ArrayList<SGAgent> actingAgents = new ArrayList<>();
 
             //Find the agents who can perform the action of the config's type.
             for(String agentGroup: agentsInTheWorld) {
-                SGAgent groupAgent = NestedVI.agentAnmDefinitions.get(agentGroup);
+                SGAgent groupAgent = context.agentAnmDefinitions.get(agentGroup);
                 for (ActionType groupAction : groupAgent.agentType().actions) {
                     //Action Type name and the action names are same in general.
                     if (groupAction.typeName().equals(config.getAction().actionName())
@@ -486,14 +836,14 @@ public class NestedVI extends MDPSolver implements Planner,QProvider{
             //Find the number of the agents of a particular type in the configuration
             //of the same type as the current type-action pair.
             int totalTypeAgents = 0;
-            for(int typeIndex = 0; typeIndex < NestedVI.facOthers.getAgentTypes().length; typeIndex++){
-                if(config.getAgentType() == NestedVI.facOthers.getAgentTypes()[typeIndex][0]){
-                    totalTypeAgents = NestedVI.facOthers.getAgentTypes()[typeIndex][1];
+            for(int typeIndex = 0; typeIndex < context.facOthers.getAgentTypes().length; typeIndex++){
+                if(config.getAgentType() == context.facOthers.getAgentTypes()[typeIndex][0]){
+                    totalTypeAgents = context.facOthers.getAgentTypes()[typeIndex][1];
                 }//end if.
             }//end for.
 
             //Find the final probability after the division by the N_type.
-            NestedVI.facUniformPriors[configCount++] = sumOfRatios/totalTypeAgents;
+            context.facUniformPriors[configCount++] = sumOfRatios/totalTypeAgents;
 
             //Calculate the alpha's to normalize.
             if (typeAlphas.get(config.getAgentType()) == null){
@@ -506,8 +856,8 @@ public class NestedVI extends MDPSolver implements Planner,QProvider{
 
         //Normalize the probabilities.
         configCount = 0;
-        for(ConfigurationBean config : facOthers.getMaxConfiguration()){
-            NestedVI.facUniformPriors[configCount] = NestedVI.facUniformPriors[configCount] / typeAlphas.get(config.getAgentType());
+        for(ConfigurationBean config : context.facOthers.getMaxConfiguration()){
+            context.facUniformPriors[configCount] = context.facUniformPriors[configCount] / typeAlphas.get(config.getAgentType());
             configCount++;
         }//end for.
 
@@ -524,8 +874,8 @@ public class NestedVI extends MDPSolver implements Planner,QProvider{
 
 
     public List<Action> getAllGroundedActionsForAgentID(State s, int agentIndex){
-        String actingAgent = agIDtoName.get(agentIndex);
-        List<ActionType> allsgActions = agentDefinitions.get(actingAgent).agentType().actions;
+        String actingAgent = context.agIDtoName.get(agentIndex);
+        List<ActionType> allsgActions = context.agentDefinitions.get(actingAgent).agentType().actions;
         List<Action> allAgActions = SGtoGroundedSG(allsgActions,actingAgent);
         return allAgActions;
     }
@@ -566,11 +916,11 @@ public class NestedVI extends MDPSolver implements Planner,QProvider{
          * next states and also calculate rewards.
          * @param s is the current state.
          * @param currentAgentAction is the action done by current agent.
-         * @param facIn is the FAC for the other agents.
+         * @param facIn is the FAC for the other agents. It is copied before adding the current agent.
          */
         public FACTransitions(State s,Action currentAgentAction, FrameActionConfiguration facIn) {
             this.currentAgentAction = currentAgentAction;
-            this.facIn = facIn;
+            this.facIn = new FrameActionConfiguration(facIn,false);
 
             //Add current agent to the action list.
             WildfireAnonymousState was = (WildfireAnonymousState)s;
@@ -596,10 +946,10 @@ public class NestedVI extends MDPSolver implements Planner,QProvider{
 
             //NOTE : Sanity check. Just in case the transition method is modifying the state.
             WildfireAnonymousState anonymousState = new WildfireAnonymousState(was);
-            this.tps = facModel.stateTransitions(anonymousState, this.facIn);
+            this.tps = context.facModel.stateTransitions(anonymousState, this.facIn);
 
             if(tps.size() == 0){
-                NestedVI.zeroCounter++;
+                context.zeroCounter.incrementAndGet();
 //                System.out.println("State Transition with 0 next states.");
 //                System.out.println( "State:" + ((WildfireAnonymousState)s).toString() + " action:" + currentAgentAction.actionName()
 //                        + " fac:" + Arrays.toString(facIn.currentConfiguration));
@@ -608,7 +958,7 @@ public class NestedVI extends MDPSolver implements Planner,QProvider{
             this.rewards = new ArrayList<Double>();
 
             for(StateTransitionProb tp : this.tps){
-                double reward = facRewardFunction.reward(s,currentAgentAction,this.facIn, tp.s) ;
+                double reward = context.facRewardFunction.reward(s,currentAgentAction,this.facIn, tp.s) ;
                 this.rewards.add(reward);
             }//end for.
         }//end constructor.
@@ -619,7 +969,7 @@ public class NestedVI extends MDPSolver implements Planner,QProvider{
             this.facIn = facIn;
             this.tps = tps;
             for(StateTransitionProb tp : this.tps){
-                double reward = facRewardFunction.reward(s,currentAgentAction,this.facIn, tp.s);
+                double reward = context.facRewardFunction.reward(s,currentAgentAction,this.facIn, tp.s);
                 this.rewards.add(reward);
             }//end for.
         }
@@ -635,15 +985,15 @@ public class NestedVI extends MDPSolver implements Planner,QProvider{
             throw new RuntimeException("Cannot reset the agent definitions after planning has already started.");
         }
 
-        if(agentDefinitions == null){
+        if(context.agentDefinitions == null){
             return;
         }
 
-        if(agentDefinitions == agentDefs){
+        if(context.agentDefinitions == agentDefs){
             return ;
         }
 
-        agentDefinitions = agentDefs;
+        context.agentDefinitions = agentDefs;
 
     }
 
@@ -659,7 +1009,7 @@ public class NestedVI extends MDPSolver implements Planner,QProvider{
         }
     }
 
-    public static HashMap<Integer, ArrayList<Integer>> makeAgLvlMap(int level, int currentAgentIndex) {
+    public static HashMap<Integer, ArrayList<Integer>> makeAgLvlMap(int level, int currentAgentIndex, int numPlayers) {
         HashMap<Integer, ArrayList<Integer>> agLvlMap = new HashMap<Integer, ArrayList<Integer>>();
         ArrayList<Integer> lvlList;
         int curPlayerLevel = level;
@@ -736,30 +1086,29 @@ public class NestedVI extends MDPSolver implements Planner,QProvider{
     }
 
 
-    public static Policy runVI(State s, OOSGDomain d, StateEnumerator senum1,
+    public static Policy runVI(NestedVIContext context, State s, StateEnumerator senum1,
                                Map<String, SGAgent> agentDefs, Map<Integer, String> agIDtoN,
-                               FACRewardFunction fc1, TerminalFunction tf1, HashableStateFactory hf,
                                double gamma1, double maxDelta1, int maxIterations1, int maxLevel,
                                List<String> agentsInWorld1, int currentAgentIndex, boolean finite1) {
 
         int numP = agentsInWorld1.size();
         //Initialize the Nested VI.
-        initNestedVI = initNestedVI(d, senum1, agentDefs, agIDtoN, fc1, tf1, hf,
+        initNestedVI(context, senum1, agentDefs, agIDtoN,
                 gamma1, maxDelta1, maxIterations1, agentsInWorld1, numP, finite1);
 
         //The following is just used to generate uniformly random policies of others for level-0 planning
         Map<String,Policy> otherAgentsPoliciesForLvl0Planning = new HashMap<String,Policy>();
-        otherAgentsPoliciesForLvl0Planning = generateOthersUniformPolicy(d,s,currentAgentIndex);
+        otherAgentsPoliciesForLvl0Planning = generateOthersUniformPolicy(context,context.domain,s,currentAgentIndex);
 
         //The main method for computing all level policies for all agents from state
         Map<Integer,Map<Integer,Policy>> allLevelPolicyList = new HashMap<Integer,Map<Integer,Policy>>();
-        allLevelPolicyList = computeAgLvlPoliciesFromState(s, currentAgentIndex, otherAgentsPoliciesForLvl0Planning, maxLevel);
+        allLevelPolicyList = computeAgLvlPoliciesFromState(context, s, currentAgentIndex, otherAgentsPoliciesForLvl0Planning, maxLevel);
 
 
         return allLevelPolicyList.get(maxLevel).get(currentAgentIndex);
     }
 
-    private static Map<Integer, Map<Integer, Policy>> computeAgLvlPoliciesFromState(State s,
+    private static Map<Integer, Map<Integer, Policy>> computeAgLvlPoliciesFromState(NestedVIContext context, State s,
                                                                                     int subjectAgentIndex, Map<String, Policy> otherAgentsPoliciesForLvl0Planning, int maxLevel) {
 
         if(maxLevel==0){
@@ -767,11 +1116,11 @@ public class NestedVI extends MDPSolver implements Planner,QProvider{
             Map<Integer,Policy> agPolicyList = new HashMap<Integer,Policy>();
             Map<Integer,Map<Integer,Policy>> allLevelAgPolicyList = new HashMap<Integer,Map<Integer,Policy>>();
 
-            NestedVI nVI = new NestedVI(new ConstantValueFunction(0.0),
+            NestedVI nVI = new NestedVI(context, new ConstantValueFunction(0.0),
                     subjectAgentIndex, otherAgentsPoliciesForLvl0Planning, maxLevel);
 
             Policy agentPol = nVI.planFromState(s);
-            Policy cAgentPol = new CachedPolicy(hashingFactory,(EnumerablePolicy) agentPol);
+            Policy cAgentPol = new CachedPolicy(context.hashingFactory,(EnumerablePolicy) agentPol);
             agPolicyList.put(subjectAgentIndex, cAgentPol);
 
             allLevelAgPolicyList.put(maxLevel, agPolicyList);
@@ -866,17 +1215,17 @@ public class NestedVI extends MDPSolver implements Planner,QProvider{
     }
 
     //Updated to return the Policy for the whole group.
-    public static Map<String,Policy> generateOthersUniformPolicy(OOSGDomain d, State s, Integer subjectAgent) {
+    public static Map<String,Policy> generateOthersUniformPolicy(NestedVIContext context, OOSGDomain d, State s, Integer subjectAgent) {
         //Convert to wildfire domain.
         WildfireDomain wf = (WildfireDomain)d;
 
         Map<String,Policy> otherAgentsPoliciesForLvl0Planning = new HashMap<String,Policy>();
 
-        if(numPlayers > 1){
+        if(context.numPlayers > 1){
             //Generate uniform policy for each agent groups.
-            for(String agent:agentsInWorld){
+            for(String agent:context.agentsInWorld){
 
-                List<ActionType> allsgActions = agentAnmDefinitions.get(agent).agentType().actions;
+                List<ActionType> allsgActions = context.agentAnmDefinitions.get(agent).agentType().actions;
                 List<Action> allAgActions = SGtoGroundedSG(allsgActions,agent);
 
                 if(debugmode){
@@ -918,54 +1267,51 @@ public class NestedVI extends MDPSolver implements Planner,QProvider{
 
     /**
      * This method filter outs the FACs, which are supposed to be removed due to very less utility value.
-     * The FACs are being iterated using the FrameActionConfiguration class.
+     * The FACs are generated best-first by the {@link BestFirstFACGenerator}, in the decreasing order of their
+     * probabilities, so only the FACs which are kept are generated. Without a threshold, i.e. a non-positive epselone,
+     * every FAC is kept, so they are enumerated in place by {@link FrameActionConfiguration#hasNext()} instead.
      * The calculation done in a few steps.
      * 1. Get the FAC log probabilities.
      * 2. Compare the values with epselone :
      *     Check if ( Log(P(FAC)) + Log(Reward Upper Bound) >= Log(epselone))
      *     If Yes, add the FAC to the list and add the P(FAC) value against that entry.
+     *     The generation stops at the first FAC failing the check.
+     * @param context is the context of the solve.
      * @param rewardUpperBound is the calculated reward upper bound for the domain.
      * @param epselone is the epselone- threshold value.
      */
-    public static void facFilter(double rewardUpperBound ,double epselone){
-        //Filtered FAC objects.
-        NestedVI.filteredFACs = new ArrayList<>();
-        NestedVI.filteredFACProbabilities = new ArrayList<>();
-
-        //Initialize the fac for iteration.
-        facOthers.initializeCurrentFAC();
+    public static void facFilter(NestedVIContext context, double rewardUpperBound ,double epselone){
+        //Initialize the fac.
+        context.facOthers.initializeCurrentFAC();
+
+        if(epselone <= 0){
+            //Enumerate all the FACs, as the best-first order is of no use without a threshold.
+            double[] logValues = factorialLogValues(context.facOthers.getTotalAgents());
+            context.filteredFACs = new ArrayList<>();
+            context.filteredFACProbabilities = new ArrayList<>();
+            while(context.facOthers.hasNext()){
+                context.filteredFACs.add(context.facOthers.getCurrentCounts().clone());
+                context.filteredFACProbabilities.add(Math.exp(getFACLogProbs(context.facOthers, logValues,
+                        context.facUniformPriors)));
+            }//end while.
+            System.out.println("All " + context.filteredFACs.size() + " FACs selected.");
+        }else{
+            //Generate the FACs above the threshold.
+            BestFirstFACGenerator generator = new BestFirstFACGenerator(context.facOthers, context.facUniformPriors);
+            generator.generate(Math.log(epselone) - Math.log(rewardUpperBound));
 
-        //Total FAC count
-        int counter = 0;
-        //Get the log values for 1 to total number of agents.
-        double[] logValues = factorialLogValues(facOthers.getTotalAgents());
+            //Filtered FAC objects.
+            context.filteredFACs = new ArrayList<>(generator.getFACs());
+            context.filteredFACProbabilities = new ArrayList<>(generator.getProbabilities());
+            System.out.println("Out of " + generator.getExpandedCount() + " type compositions expanded, "
+                    + context.filteredFACs.size() + " FACs selected.");
+        }//end if-else.
 
-        double probLogValue = 0;//Variable for calculation.
         double overallSum = 0;//Sum the probabilities for sanity check.
-        //Search through all the FACs.
-        while (facOthers.hasNext()){
-            counter++;
-
-            //Get the ln(p(FAC))
-            probLogValue = getFACLogProbs(facOthers,logValues);
-            //Sum up the log probabilities.
-            overallSum += Math.exp(probLogValue);
-
-            //Add the FAC to the list.
-            if(( probLogValue + Math.log(rewardUpperBound))>= Math.log(epselone)){
-                //Create an array of the counts.
-                int[] configCounters = new int[facOthers.getCurrentConfiguration().length];
-                for(int configCount = 0 ; configCount < facOthers.getCurrentConfiguration().length ; configCount++){
-                      configCounters[configCount] = facOthers.getCurrentConfiguration()[configCount].getNumberOfAgents();
-                }//end for.
-
-                NestedVI.filteredFACs.add(configCounters);
-                //Add probabilities
-                NestedVI.filteredFACProbabilities.add(Math.exp(probLogValue));
-            }//end if.
-        }//end while.
-        System.out.println("Out of " + counter + " FACs, only " + NestedVI.filteredFACs.size() + " selected.");
-        System.out.println("Sum of Probabilities: " + overallSum);
+        for(double facProbability : context.filteredFACProbabilities){
+            overallSum += facProbability;
+        }//end for.
+        System.out.println("Sum of Probabilities of the selected FACs: " + overallSum);
 
     }//end method.
 
@@ -979,9 +1325,10 @@ public class NestedVI extends MDPSolver implements Planner,QProvider{
      *                      +    (_SUM (Num of agent in type-action pair of type theta * Log(probability of the action of type theta)))
      * @param probFAC is the Frame Action Configuration for which the probability should be calculated.
      * @param logValues is an array of log values of factorials maximum size up to number of agents.
+     * @param facUniformPriors is the prior probability of each type-action pair.
      * @return log probability value for the FAC.
      */
-    public static double getFACLogProbs(FrameActionConfiguration probFAC, double[] logValues){
+    public static double getFACLogProbs(FrameActionConfiguration probFAC, double[] logValues, double[] facUniformPriors){
         double probLogSum = 0; //Probabilities log sum.
 
         for(int typeIndex = 0 ; typeIndex < probFAC.getAgentTypes().length;typeIndex++){
@@ -999,7 +1346,7 @@ public class NestedVI extends MDPSolver implements Planner,QProvider{
                     typeSum += (-1) * logValues[probFAC.getCurrentConfiguration()[configCount].getNumberOfAgents() - 1];
                     //Add the probability values.
                     typeSum +=  probFAC.getCurrentConfiguration()[configCount].getNumberOfAgents() *
-                            Math.log(NestedVI.facUniformPriors[configCount]);
+                            Math.log(facUniformPriors[configCount]);
                 }//end if.
             }//end for - config Count.
 
@@ -1059,9 +1406,12 @@ public class NestedVI extends MDPSolver implements Planner,QProvider{
 //        String outFileHead = "D:\\MyWork\\scalableoasys\\output\\Simulations\\Config_"+ WildfireParameters.config+"_Results\\Experiment_"+experiment+"\\";
 
         //If you want to run the whole Nested VI modelling in sequence, pass only 7 arguments.
+        //The thread count of the VI backups can be passed as the optional argument after the Q-value error margin, and
+        //the number of the neighbour policies solved at the same time after that, when the groups are passed.
+        //The last optional argument switches the VI to the prioritized sweeping of the states.
         //Else if you want to create policy for a particular set pass the current agent group and the neighbour group to map. This can run in parallel with
         //bash script.
-		if(args.length == 8){
+		if(args.length == 8 || args.length == 9){
             conf = Integer.parseInt(args[0]);
             gamma = Double.parseDouble(args[1]);
             maxLevel = Integer.parseInt(args[2]);
@@ -1072,7 +1422,10 @@ public class NestedVI extends MDPSolver implements Planner,QProvider{
             currentGroupToBKP = null;
             neighbourGroupToBKP = null;
             NestedVI.qValueErrorMargin = Double.parseDouble(args[7]);
-		}else if (args.length == 10){
+            if(args.length == 9){
+                NestedVI.threadCount = Math.max(1, Integer.parseInt(args[8]));
+            }
+		}else if (args.length >= 10 && args.length <= 13){
             conf = Integer.parseInt(args[0]);
             gamma = Double.parseDouble(args[1]);
             maxLevel = Integer.parseInt(args[2]);
@@ -1083,6 +1436,22 @@ public class NestedVI extends MDPSolver implements Planner,QProvider{
             currentGroupToBKP = args[7];
             neighbourGroupToBKP = args[8];
             NestedVI.qValueErrorMargin = Double.parseDouble(args[9]);
+            if(args.length >= 11){
+                NestedVI.threadCount = Math.max(1, Integer.parseInt(args[10]));
+            }
+            if(args.length >= 12){
+                NestedVI.solveThreadCount = Math.max(1, Integer.parseInt(args[11]));
+            }
+            if(args.length == 13){
+                NestedVI.isPrioritizedSweeping = Boolean.parseBoolean(args[12]);
+            }
+            //"all" solves every group or neighbour in this JVM.
+            if("all".equals(currentGroupToBKP)){
+                currentGroupToBKP = null;
+            }
+            if("all".equals(neighbourGroupToBKP)){
+                neighbourGroupToBKP = null;
+            }
         }
 
 
@@ -1104,8 +1473,6 @@ public class NestedVI extends MDPSolver implements Planner,QProvider{
 
 
 
-        MyTimer senumTimer = new MyTimer();
-
         boolean vmode = true;
         boolean dmode = false;
         boolean tmode = false;
@@ -1153,7 +1520,10 @@ public class NestedVI extends MDPSolver implements Planner,QProvider{
             ms = Wildfire.getInitialMasterState((WildfireDomain) d,agentAvailability,false,false,false);
 
 
-            //Iterate through all the groups and run the Nested VI for the first agent of each group.
+            //Iterate through all the groups and create a solve for each neighbour of the first agent of each group.
+            List<Callable<Policy>> solves = new ArrayList<>();
+            final List<Integer> solveAgents = new ArrayList<>();
+            final List<String> solveNeighbours = new ArrayList<>();
             for(int currentGroup = 0; currentGroup < numPlayers; currentGroup++){ //numPlayers
 
 
@@ -1173,11 +1543,11 @@ public class NestedVI extends MDPSolver implements Planner,QProvider{
                 //Get the first agent of the group.
                 ArrayList<String> startEndIndexes =new ArrayList<>(Arrays.asList(d.agentGroups.get(currentGroup).split("-")));
                 //Separate indexes.
-                int firstAgentIndex = Integer.parseInt(startEndIndexes.get(0));
+                final int firstAgentIndex = Integer.parseInt(startEndIndexes.get(0));
 
                 //Add the agents and their neighbours to the world.
                 //The list is heterogeneous and would contain the current agent number and neighbour groups. e.g. [1,5-10]
-                List<String> agentsInWorld = new ArrayList<String>();
+                final List<String> agentsInWorld = new ArrayList<String>();
                 agentsInWorld.add(d.agentGroups.get(currentGroup));
                 //Add neighbours.
                 for(String neighbourGroup : neighbors){
@@ -1189,244 +1559,321 @@ public class NestedVI extends MDPSolver implements Planner,QProvider{
 
                 //2. set agent definitions of agents in the local neighborhood of subject agent
                 System.out.println("Getting agent definitions for all agents in subject agent's world..");
-                NestedVI.agentDefinitions = allAgentDefinitions.get(firstAgentIndex);
-                NestedVI.agentAnmDefinitions = allAgentAnmDefinitions.get(d.agentGroups.get(currentGroup));
+                final Map<String, SGAgent> agentDefinitions = allAgentDefinitions.get(firstAgentIndex);
+                final Map<String, SGAgent> agentAnmDefinitions = allAgentAnmDefinitions.get(d.agentGroups.get(currentGroup));
 
 
                 //3. create state of subject agent from master state and then convert it into the Anonymous state.
                 System.out.println("Getting subject agent's initial state and it's anonymous version..");
                 State initialState = Wildfire.createAgentStateFromMasterState(d, firstAgentIndex, ms);
-                State initialAnmState = new WildfireAnonymousState((WildfireState)initialState,d);
-
-                //4. Setting state enumerator for subject agent's world..
-                //Updated to take the Anonymous definitions of the state.
-                System.out.println("Setting state enumerator for subject agent's world..");
-                //NOTE: BURLAP 2 and 3 implementations are different. They have
-                HashableStateFactory hf = new SimpleHashableStateFactory(true);
-
-
-
-
-                //Clear the FAC every time planning for a new agent group.
-                NestedVI.fac = new FrameActionConfiguration();
-                System.out.println("Caching all enumerated states reachable from subject agent's initial state..");
-
-
-                Map<String,Policy> neighborPolicies = new HashMap<String,Policy>();
+                final State initialAnmState = new WildfireAnonymousState((WildfireState)initialState,d);
+                final String currentGroupName = d.agentGroups.get(currentGroup);
 
                 //Now, create policy for the random agents.
-                for(String neighbourTOMap: agentsInWorld){
+                for(final String neighbourTOMap: agentsInWorld){
 
                     //Run for just one Group neighbourGroupToBKP. Otherwise continue.
                     if(neighbourGroupToBKP != null && !("".equals(neighbourGroupToBKP)) && !(neighbourTOMap.equals(neighbourGroupToBKP))){
                         continue;
                     }
 
-                    //Reset the Backup flag.
-                    isBackedUp = false;
-
-                    int neighborType = ((WildfireDomain) d).sampleAgentPerGroup.get(neighbourTOMap).getPowerType();
-                    System.out.println("Getting neighbor agent "+neighbourTOMap+"'s local state from subject agent "+firstAgentIndex+"'s world..");
+                    final WildfireDomain solveDomain = d;
+                    final FACRewardFunction solveRewardFunction = facr;
+                    final TerminalFunction solveTerminalFunction = tf;
+                    final double solveGamma = gamma;
+                    final double solveMaxDelta = maxDelta;
+                    final int solveMaxIterations = maxIterations;
+                    final int solveMaxLevel = maxLevel;
+                    final boolean solveFinite = finite;
+                    final int solveConf = conf;
+                    solves.add(new Callable<Policy>() {
+                        @Override
+                        public Policy call() {
+                            return solveNeighbourPolicy(solveDomain, solveRewardFunction, solveTerminalFunction, agIDtoName,
+                                    agentDefinitions, agentAnmDefinitions, agentsInWorld, currentGroupName, firstAgentIndex,
+                                    initialAnmState, neighbourTOMap, solveGamma, solveMaxDelta, solveMaxIterations,
+                                    solveMaxLevel, solveFinite, solveConf, outFileHead);
+                        }
+                    });
+                    solveAgents.add(firstAgentIndex);
+                    solveNeighbours.add(neighbourTOMap);
+                }//end for.
+            }//end for.
 
-                    //Change the state type if the agent-group in process is not of the current agent's group.
-                    State neibourState;
-                    if(neighbourTOMap.equals(d.agentGroups.get(currentGroup))){
-                        neibourState = initialAnmState;
-                    }else{
-                        neibourState = Wildfire.createOtherAgentAnmState((WildfireDomain) d,neighbourTOMap, initialAnmState);
+            //Solve all the neighbour policies in the shared thread pool.
+            ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, solveThreadCount));
+            try{
+                List<Future<Policy>> policies = executor.invokeAll(solves);
+                for(int solve = 0; solve < policies.size(); solve++){
+                    if(agFinalPolicyMap.get(solveAgents.get(solve)) == null){
+                        agFinalPolicyMap.put(solveAgents.get(solve), new HashMap<String,Policy>());
                     }
+                    agFinalPolicyMap.get(solveAgents.get(solve)).put(solveNeighbours.get(solve), policies.get(solve).get());//Save the policy on group's name.
+                }//end for.
+            }catch(Exception e){
+                System.out.println("NestedVI: Solving the neighbour policies failed.");
+                e.printStackTrace();
+                System.exit(0);
+            }finally {
+                executor.shutdown();
+            }//end try-catch.
 
+            for(Map.Entry<Integer,Map<String,Policy>> agentPolicies : agFinalPolicyMap.entrySet()){
+                System.out.println("Agent ["+agentPolicies.getKey()+"] has " + agentPolicies.getValue().size()+" neighbor policies..");
+            }
+            System.out.println("Number of Agents: "+ agFinalPolicyMap.size());
+        }
+        System.out.println("Done!!");
+    }//end main.
 
 
+    /**
+     * This method solves the policy of one neighbour group from the perspective of the current agent group, and writes
+     * the policy and the Q-values to the files. Each solve has its own {@link NestedVIContext}, so that the solves can
+     * run at the same time.
+     * @param d is the domain.
+     * @param facr is the reward function.
+     * @param tf is the terminal function.
+     * @param agIDtoName is the mapping of the first agent of each group to the group.
+     * @param agentDefinitions is the agent definitions of the current agent group.
+     * @param agentAnmDefinitions is the anonymous agent definitions of the current agent group.
+     * @param agentsInWorld is the current agent group and its neighbour groups.
+     * @param currentGroupName is the current agent group.
+     * @param firstAgentIndex is the first agent of the current agent group.
+     * @param initialAnmState is the initial anonymous state of the current agent.
+     * @param neighbourTOMap is the neighbour group to solve.
+     * @param gamma is the discount factor.
+     * @param maxDelta is the max change in the values to stop the VI.
+     * @param maxIterations is the max VI iterations.
+     * @param maxLevel is the max nesting level.
+     * @param finite is true for the finite horizon.
+     * @param conf is the configuration number.
+     * @param outFileHead is the output directory.
+     * @return is the policy of the neighbour group.
+     */
+    private static Policy solveNeighbourPolicy(WildfireDomain d, FACRewardFunction facr, TerminalFunction tf,
+                                               Map<Integer, String> agIDtoName, Map<String, SGAgent> agentDefinitions,
+                                               Map<String, SGAgent> agentAnmDefinitions, List<String> agentsInWorld,
+                                               String currentGroupName, int firstAgentIndex, State initialAnmState,
+                                               String neighbourTOMap, double gamma, double maxDelta, int maxIterations,
+                                               int maxLevel, boolean finite, int conf, String outFileHead){
+        MyTimer senumTimer = new MyTimer();
 
+        //4. Setting state enumerator for subject agent's world..
+        //Updated to take the Anonymous definitions of the state.
+        System.out.println("Setting state enumerator for subject agent's world..");
+        //NOTE: BURLAP 2 and 3 implementations are different. They have
+        HashableStateFactory hf = new SimpleHashableStateFactory(true);
 
-                    // Caching all enumerated states..
-                    //Get all possible reachable states from the current states in infinite/<horizon value> horizons.
-                    senumTimer.start();
-                    states = new HashSet<HashableState>();
-                    d.setStateEnumerator(new StateEnumerator(d, hf, agentDefinitions,agentAnmDefinitions));
-
-
-                    System.out.println("Getting state enumerator for subject agent's world..");
-                    StateEnumerator senum = d.getStateEnumerator();
-                    if(finite){
-                        //Don't Exclude self agent's actions in FAC.
-                        senum.findReachableAnmStatesAndEnumerate(neibourState,NestedVI.fac,maxIterations,false); //remove horizons later
-                    }else{
-                        //Don't Exclude self agent's actions in FAC.
-                        senum.findReachableAnmStatesAndEnumerate(neibourState,NestedVI.fac, -1,false);//Put Horizon value as -1.
-                    }
-                    //Enumerate all the states.
-                    int nS = senum.numStatesEnumerated();
-                    for(int i=0;i<nS;i++){
-                        if(i%1000 == 0){
-                            System.out.print(".");
-                        }
-                        State st = senum.getStateForEnumerationId(i);
-                        HashableState hashedST = hf.hashState(st);
-                        states.add(hashedST);
-                    }
-
+        //Context of the solve.
+        NestedVIContext context = new NestedVIContext(d, facr, tf, hf);
+        context.agentAnmDefinitions = agentAnmDefinitions;
 
+        //Clear the FAC every time planning for a new agent group.
+        context.fac = new FrameActionConfiguration();
+        System.out.println("Caching all enumerated states reachable from subject agent's initial state..");
 
-                    //State File Name.
-                    String stateFileName = outFileHead + "States_" + d.agentsList.size()
-                            +"-WF_config"+ conf +"_firestates"+WildfireParameters.MAX_FIRE_STATES
-                            +"_current_agent"+firstAgentIndex + "_neighbour_" + neighbourTOMap + ".txt";
+        int neighborType = d.sampleAgentPerGroup.get(neighbourTOMap).getPowerType();
+        System.out.println("Getting neighbor agent "+neighbourTOMap+"'s local state from subject agent "+firstAgentIndex+"'s world..");
 
-                    //Write the states to the file as well as print.
-                    File stateFile;
-                    PrintWriter stateOut;
-                    try {
-                        stateFile = new File(stateFileName);
-                        stateFile.getParentFile().mkdirs();
-                        if(!stateFile.exists()){
-                            stateFile.createNewFile();
-                        }
-                        stateOut = new PrintWriter(new BufferedWriter(new FileWriter(stateFile.getAbsoluteFile())));
-                        String output = "";
-
-                        //Iterate through each available state.
-                        for(HashableState s: states){
-                            WildfireAnonymousState anm = (WildfireAnonymousState) s.s();
-//                        System.out.println("State:" + anm);
-                            output += anm.hashCode() + ":" +  anm;
-                            output += "\n";
-                        }
-                        stateOut.println(output);
-                        stateOut.close();
-                    }catch (IOException e) {
-                        System.out.println("Error:" + e.getMessage());
-                        e.printStackTrace();
-                    }//end try-catch.
+        //Change the state type if the agent-group in process is not of the current agent's group.
+        State neibourState;
+        if(neighbourTOMap.equals(currentGroupName)){
+            neibourState = new WildfireAnonymousState((WildfireAnonymousState) initialAnmState);
+        }else{
+            neibourState = Wildfire.createOtherAgentAnmState(d,neighbourTOMap, initialAnmState);
+        }
 
 
-                    //Stop Timer.
-                    System.out.println("[Done] in "+senumTimer.getTime()+"s; "+states.size()+" unique states found.");
-                    System.out.println("States are written to:" + stateFileName);
+        // Caching all enumerated states..
+        //Get all possible reachable states from the current states in infinite/<horizon value> horizons.
+        senumTimer.start();
+        context.states = new HashSet<HashableState>();
 
+        System.out.println("Getting state enumerator for subject agent's world..");
+        StateEnumerator senum = new StateEnumerator(d, hf, agentDefinitions,agentAnmDefinitions);
+        if(finite){
+            //Don't Exclude self agent's actions in FAC.
+            senum.findReachableAnmStatesAndEnumerate(neibourState,context.fac,maxIterations,false); //remove horizons later
+        }else{
+            //Don't Exclude self agent's actions in FAC.
+            senum.findReachableAnmStatesAndEnumerate(neibourState,context.fac, -1,false);//Put Horizon value as -1.
+        }
+        //Enumerate all the states.
+        int nS = senum.numStatesEnumerated();
+        for(int i=0;i<nS;i++){
+            if(i%1000 == 0){
+                System.out.print(".");
+            }
+            State st = senum.getStateForEnumerationId(i);
+            HashableState hashedST = hf.hashState(st);
+            context.states.add(hashedST);
+        }
 
-                    doreach = true;
-                    senumTimer.stop();
 
+        //State File Name.
+        String stateFileName = outFileHead + "States_" + d.agentsList.size()
+                +"-WF_config"+ conf +"_firestates"+WildfireParameters.MAX_FIRE_STATES
+                +"_current_agent"+firstAgentIndex + "_neighbour_" + neighbourTOMap + ".txt";
 
+        //Write the states to the file as well as print.
+        File stateFile;
+        PrintWriter stateOut;
+        try {
+            stateFile = new File(stateFileName);
+            stateFile.getParentFile().mkdirs();
+            if(!stateFile.exists()){
+                stateFile.createNewFile();
+            }
+            stateOut = new PrintWriter(new BufferedWriter(new FileWriter(stateFile.getAbsoluteFile())));
+            String output = "";
+
+            //Iterate through each available state.
+            for(HashableState s: context.states){
+                WildfireAnonymousState anm = (WildfireAnonymousState) s.s();
+                output += anm.encode() + ":" +  anm;
+                output += "\n";
+            }
+            stateOut.println(output);
+            stateOut.close();
+        }catch (IOException e) {
+            System.out.println("Error:" + e.getMessage());
+            e.printStackTrace();
+        }//end try-catch.
 
 
-                    //Find the Possible FACs for the current agent, if the other agent is not from the same group.
-                    NestedVI.facOthers = new FrameActionConfiguration();
-                    senum.initializeFAC(neibourState,NestedVI.facOthers,true);//Exclude self agent's actions in FAC.
+        //Stop Timer.
+        System.out.println("[Done] in "+senumTimer.getTime()+"s; "+context.states.size()+" unique states found.");
+        System.out.println("States are written to:" + stateFileName);
 
-                    System.out.println("Neighbouring State Description:" + neibourState.toString());
-                    System.out.println("Planning from neighbor agent "+neibourState+"'s local state..");
 
-                    ArrayList<String> neighbourIndexes =new ArrayList<> (Arrays.asList(neighbourTOMap.split("-")));
-                    //Separate indexes.
-                    int neighborAgent = Integer.parseInt(neighbourIndexes.get(0));
+        context.doreach = true;
+        senumTimer.stop();
 
 
-                    //Calculate the Random prior for the agent action.
-                    //The method takes all static parameters to calculate the prior.
-                    calculateUniformPrior(agentsInWorld,neighbourTOMap,d,false);//use Uniform random probabilities.
+        //Find the Possible FACs for the current agent, if the other agent is not from the same group.
+        context.facOthers = new FrameActionConfiguration();
+        senum.initializeFAC(neibourState,context.facOthers,true);//Exclude self agent's actions in FAC.
 
-                    //Calculate the policy.
-                    Policy nPol =  NestedVI.runVI(neibourState,d,senum,agentAnmDefinitions,agIDtoName,facr,tf,hf,
-                            gamma,maxDelta,maxIterations,maxLevel,agentsInWorld,neighborAgent,finite);
+        System.out.println("Neighbouring State Description:" + neibourState.toString());
+        System.out.println("Planning from neighbor agent "+neibourState+"'s local state..");
 
-                    //Set the flag to done,so that no more qValue calculations.
-                    isBackedUp = true;
+        ArrayList<String> neighbourIndexes =new ArrayList<> (Arrays.asList(neighbourTOMap.split("-")));
+        //Separate indexes.
+        int neighborAgent = Integer.parseInt(neighbourIndexes.get(0));
 
-                    neighborPolicies.put(neighbourTOMap,nPol);//Save the policy on group's name.
 
+        //Calculate the Random prior for the agent action.
+        calculateUniformPrior(context,agentsInWorld,neighbourTOMap,d,false);//use Uniform random probabilities.
 
+        //Calculate the policy.
+        Policy nPol =  NestedVI.runVI(context,neibourState,senum,agentAnmDefinitions,agIDtoName,
+                gamma,maxDelta,maxIterations,maxLevel,agentsInWorld,neighborAgent,finite);
 
-                    System.out.println("Writing neighbor agent "+neighbourTOMap+"'s policy to file..");
-                    //Writing policy to file
-                    //Set the agent type from the anonymous agent definitions.
-                    SetStrategySGAgent.SetStrategyAgentFactory agentFactory = new SetStrategySGAgent.SetStrategyAgentFactory(d, nPol);
-                    SGAgent MDPagent = agentFactory.generateAgent(neighbourTOMap,
-                            agentAnmDefinitions.get(neighbourTOMap).agentType());
-                    World w = new World(d, facr, tf, neibourState);
-                    w.join(MDPagent);
+        //Set the flag to done,so that no more qValue calculations.
+        context.isBackedUp = true;
 
-                    //TODO: Organize the file names through-out the domain.
-                    String filename = outFileHead + d.agentsList.size()
-                                               +"-WF_config"+ conf +"_firestates"+WildfireParameters.MAX_FIRE_STATES
-                                                +"_nmdp_policy_level"+maxLevel+"_agent"+firstAgentIndex+"_neighbor"+neighbourTOMap
-                                                +"-"+neighborType+"_iter"+ maxIterations+".txt";
-                    String fileNameQ = outFileHead + d.agentsList.size()
-                            +"-WF_config"+ conf +"_firestates"+WildfireParameters.MAX_FIRE_STATES
-                            +"_nmdp_QValues_level"+maxLevel+"_agent"+firstAgentIndex+"_neighbor"+neighbourTOMap
-                            +"-"+neighborType+"_iter"+ maxIterations+".txt";
 
+        System.out.println("Writing neighbor agent "+neighbourTOMap+"'s policy to file..");
+        //Writing policy to file
+        //Set the agent type from the anonymous agent definitions.
+        SetStrategySGAgent.SetStrategyAgentFactory agentFactory = new SetStrategySGAgent.SetStrategyAgentFactory(d, nPol);
+        SGAgent MDPagent = agentFactory.generateAgent(neighbourTOMap,
+                agentAnmDefinitions.get(neighbourTOMap).agentType());
+        World w = new World(d, facr, tf, neibourState);
+        w.join(MDPagent);
 
-                    System.out.println("FileName:" + filename);
-                    File outputFile,outputFileQ;
-                    PrintWriter out,outQ;
-                    try {
-                        outputFile = new File(filename);
-                        outputFileQ = new File(fileNameQ);
+        //TODO: Organize the file names through-out the domain.
+        String filename = outFileHead + d.agentsList.size()
+                                   +"-WF_config"+ conf +"_firestates"+WildfireParameters.MAX_FIRE_STATES
+                                    +"_nmdp_policy_level"+maxLevel+"_agent"+firstAgentIndex+"_neighbor"+neighbourTOMap
+                                    +"-"+neighborType+"_iter"+ maxIterations+".txt";
+        String fileNameQ = outFileHead + d.agentsList.size()
+                +"-WF_config"+ conf +"_firestates"+WildfireParameters.MAX_FIRE_STATES
+                +"_nmdp_QValues_level"+maxLevel+"_agent"+firstAgentIndex+"_neighbor"+neighbourTOMap
+                +"-"+neighborType+"_iter"+ maxIterations+".txt";
 
-                        outputFile.getParentFile().mkdirs();
-                        outputFileQ.getParentFile().mkdirs();
 
-                        if(!outputFile.exists()){
-                            outputFile.createNewFile();
-                        }
+        System.out.println("FileName:" + filename);
+        File outputFile,outputFileQ;
+        PrintWriter out,outQ;
+        try {
+            outputFile = new File(filename);
+            outputFileQ = new File(fileNameQ);
 
-                        if(!outputFileQ.exists()){
-                            outputFileQ.createNewFile();
-                        }
+            outputFile.getParentFile().mkdirs();
+            outputFileQ.getParentFile().mkdirs();
 
-                        out = new PrintWriter(new BufferedWriter(new FileWriter(outputFile.getAbsoluteFile())));
-                        outQ = new PrintWriter(new BufferedWriter(new FileWriter(outputFileQ.getAbsoluteFile())));
-
-                        int c=0;
-                        String output = "";
-                        String outputQ = "";
-
-                        for(HashableState state: states){
-                            Action mdpaction = w.getRegisteredAgents().get(0).action  (state.s());
-                            List<ActionProb> aps = new ArrayList<ActionProb>();
-                            aps = ((CachedPolicy)nPol).policyDistribution(state.s());
-                            String apsString = "";
-                            String actionStr = "";
-                            for(ActionProb ap: aps){
-                                if(c<1) actionStr += ap.ga.actionName()+",";
-                                apsString += Double.toString(ap.pSelection) +",";
-                            }
-
-                            List<QValue> qValues = NestedVI.qValueMap.get(state.s());
-                            outputQ += ((WildfireAnonymousState)state.s())
-                                    + " : "  + ((WildfireAnonymousState)state.s()).hashCode() + ": \n";
-                            for(int qCount = 0; qCount <  qValues.size() ; qCount++){
-                                outputQ +=  qValues.get(qCount).a.actionName() + ":" + qValues.get(qCount).q +",";
-                            }//end for.
-                            outputQ += "\n";
+            if(!outputFile.exists()){
+                outputFile.createNewFile();
+            }
 
+            if(!outputFileQ.exists()){
+                outputFileQ.createNewFile();
+            }
 
-                            if(c<1) actionStr += "\n";
-                            output +=actionStr+ ((WildfireAnonymousState)state.s()).hashCode() + ":" +mdpaction.actionName()+":"+apsString+"\n";
-                            c++;
-                        }
-                        out.println(output);
-                        outQ.println(outputQ);
-                        System.out.println("Neighbor agent "+neighbourTOMap+"'s policy is stored in file.."+filename);
-
-                        out.close();
-                        outQ.close();
-                    }catch (IOException e) {
-                        System.out.println("Error:" + e.getMessage());
-                        e.printStackTrace();
-                    }
+            out = new PrintWriter(new BufferedWriter(new FileWriter(outputFile.getAbsoluteFile())));
+            outQ = new PrintWriter(new BufferedWriter(new FileWriter(outputFileQ.getAbsoluteFile())));
+
+            int c=0;
+            //Best actions and Q-values by the dense state index for the binary policy file.
+            int numberOfStates = ((WildfireAnonymousState)neibourState).numberOfStates();
+            long[] bestActionMasks = new long[numberOfStates];
+            double[][] qTable = new double[numberOfStates][];
+            String[] actionNames = null;
+
+            //Stream each state's line into the text files.
+            for(HashableState state: context.states){
+                Action mdpaction = w.getRegisteredAgents().get(0).action  (state.s());
+                List<ActionProb> aps = new ArrayList<ActionProb>();
+                aps = ((CachedPolicy)nPol).policyDistribution(state.s());
+                int stateIndex = ((WildfireAnonymousState)state.s()).encode();
+                if(c<1){
+                    actionNames = new String[aps.size()];
+                    for(int actionIndex = 0; actionIndex < aps.size(); actionIndex++){
+                        actionNames[actionIndex] = aps.get(actionIndex).ga.actionName();
+                        out.print(actionNames[actionIndex] + ",");
+                    }//end for.
+                    out.print("\n");
+                }//end if.
+                out.print(stateIndex + ":" + mdpaction.actionName() + ":");
+                for(int actionIndex = 0; actionIndex < aps.size(); actionIndex++){
+                    out.print(Double.toString(aps.get(actionIndex).pSelection) + ",");
+                    if(aps.get(actionIndex).pSelection > 0){
+                        bestActionMasks[stateIndex] |= 1L << actionIndex;
+                    }//end if.
                 }//end for.
-
-                agFinalPolicyMap.put(firstAgentIndex,neighborPolicies);
-
-
-                System.out.println("Agent ["+firstAgentIndex+"] has " + agFinalPolicyMap.get(firstAgentIndex).size()+" neighbor policies..");
+                out.print("\n");
+
+                List<QValue> qValues = context.getQValues(state.s());
+                outQ.print(((WildfireAnonymousState)state.s()) + " : "  + stateIndex + ": \n");
+                qTable[stateIndex] = new double[qValues.size()];
+                for(int qCount = 0; qCount <  qValues.size() ; qCount++){
+                    outQ.print(qValues.get(qCount).a.actionName() + ":" + qValues.get(qCount).q +",");
+                    qTable[stateIndex][qCount] = qValues.get(qCount).q;
+                }//end for.
+                outQ.print("\n");
+                c++;
             }
-            System.out.println("Number of Agents: "+ agFinalPolicyMap.size());
+            out.println();
+            outQ.println();
+            System.out.println("Neighbor agent "+neighbourTOMap+"'s policy is stored in file.."+filename);
+
+            //Binary policy file, which is read instead of the text file if it exists.
+            if(actionNames != null){
+                String binaryFileName = BinaryPolicyFile.binaryFileName(filename);
+                BinaryPolicyFile.write(binaryFileName, OtherAgentsNMDPPolicy.PolicyType.Deterministic, actionNames,
+                        bestActionMasks, qTable);
+                System.out.println("Binary policy is stored in file.."+binaryFileName);
+            }//end if.
+
+            out.close();
+            outQ.close();
+        }catch (IOException e) {
+            System.out.println("Error:" + e.getMessage());
+            e.printStackTrace();
         }
-        System.out.println("Done!!");
-    }//end main.
+
+        return nPol;
+    }//end method.
 }//end class.
@@ -0,0 +1,146 @@
+package nestedMDPSolver;
+
+import burlap.behavior.valuefunction.QValue;
+import burlap.mdp.core.TerminalFunction;
+import burlap.mdp.core.action.Action;
+import burlap.mdp.core.state.State;
+import burlap.mdp.stochasticgames.agent.SGAgent;
+import burlap.mdp.stochasticgames.oo.OOSGDomain;
+import burlap.statehashing.HashableState;
+import burlap.statehashing.HashableStateFactory;
+import common.StateEnumerator;
+import domains.wildfire.WildfireAnonymousState;
+import posg.model.FACRewardFunction;
+import posg.model.FullJointIPOMCPModel;
+import scalability.FrameActionConfiguration;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * This class keeps the state of one {@link NestedVI} solve, i.e. the policy of one neighbour group from the perspective
+ * of one agent group. Each solve has its own context, so that several (current group, neighbour) pairs can be solved
+ * at the same time in one JVM.
+ */
+public class NestedVIContext {
+
+    /**
+     * Domain and the models of the solve.
+     */
+    OOSGDomain domain;
+    FullJointIPOMCPModel facModel;
+    FACRewardFunction facRewardFunction;
+    TerminalFunction tf;
+    HashableStateFactory hashingFactory;
+
+    /**
+     * VI parameters.
+     */
+    double gamma;
+    double maxDelta;
+    int maxIterations;
+    boolean finite = true;
+
+    /**
+     * Agents in the world of the current agent group, and their definitions.
+     */
+    Map<String, SGAgent> agentDefinitions;
+    Map<String, SGAgent> agentAnmDefinitions;
+    Map<Integer, String> agIDtoName;
+    List<String> agentsInWorld;
+    int numPlayers;
+
+    /**
+     * Enumerated states reachable from the neighbour's state.
+     */
+    StateEnumerator senum;
+    Set<HashableState> states = new LinkedHashSet<>();
+    boolean doreach = false;
+    boolean isInitialized = false;
+
+    /**
+     * FAC including the current agent, and the FAC of the other agents with their prior type-action probabilities.
+     */
+    FrameActionConfiguration fac;
+    FrameActionConfiguration facOthers;
+    double[] facUniformPriors;
+
+    /**
+     * FACs left after the filtering by the epselone, and their probabilities.
+     */
+    ArrayList<int[]> filteredFACs;
+    ArrayList<Double> filteredFACProbabilities;
+
+    /**
+     * Q-Values of each state, and the flag to stop computing them after the VI.
+     */
+    Map<State, List<QValue>> qValueMap = new ConcurrentHashMap<>();
+    volatile boolean isBackedUp = false;
+
+    /**
+     * Q-Values of each action by the dense index of the state, for the Wildfire states, whose hashcode is a dense index.
+     * Null for the other domains, which keep the Q-values in the qValueMap instead.
+     */
+    double[][] qTable;
+    List<Action> qActions;
+
+    /**
+     * Number of the state transitions without any next states.
+     */
+    AtomicInteger zeroCounter = new AtomicInteger();
+
+
+    /**
+     * Constructor with the domain and the models of the solve.
+     * @param domain is the domain.
+     * @param facRewardFunction is the reward function.
+     * @param tf is the terminal function.
+     * @param hashingFactory is the hashing factory of the states.
+     */
+    public NestedVIContext(OOSGDomain domain, FACRewardFunction facRewardFunction, TerminalFunction tf,
+                           HashableStateFactory hashingFactory) {
+        this.domain = domain;
+        this.facModel = (FullJointIPOMCPModel) domain.getJointActionModel();
+        this.facRewardFunction = facRewardFunction;
+        this.tf = tf;
+        this.hashingFactory = hashingFactory;
+    }
+
+
+    //Getter methods for the results of the solve.
+    public Set<HashableState> getStates() {
+        return states;
+    }
+
+    public Map<State, List<QValue>> getQValueMap() {
+        return qValueMap;
+    }
+
+    /**
+     * This method finds the Q-values of the state stored by the VI, from the Q table if the state has a dense index,
+     * from the Q-value map otherwise.
+     * @param s is the state.
+     * @return is the list of the Q-values, null if the state is not backed up.
+     */
+    public List<QValue> getQValues(State s) {
+        if(this.qTable == null || !(s instanceof WildfireAnonymousState)){
+            return this.qValueMap.get(s);
+        }//end if.
+
+        double[] qs = this.qTable[((WildfireAnonymousState) s).encode()];
+        if(qs == null){
+            return null;
+        }//end if.
+        List<QValue> qValues = new ArrayList<QValue>(qs.length);
+        for(int actionIndex = 0; actionIndex < qs.length; actionIndex++){
+            qValues.add(new QValue(s, this.qActions.get(actionIndex), qs[actionIndex]));
+        }//end for.
+        return qValues;
+    }
+
+    public StateEnumerator getSenum() {
+        return senum;
+    }
+}
@@ -12,6 +12,9 @@ import burlap.mdp.core.action.Action;
 import burlap.mdp.core.action.ActionType;
 import burlap.mdp.core.state.State;
 import burlap.statehashing.HashableState;
+import common.AgentGroupCache;
+import common.AliasSampler;
+import common.OtherAgentsNMDPPolicy;
 import common.StateEnumerator;
 import domains.wildfire.*;
 
@@ -23,13 +26,34 @@ import org.thejavaguy.prng.generators.XorshiftPlus;
 import pomcp.beans.*;
 import posg.model.FACRewardFunction;
 import posg.model.FullJointIPOMCPModel;
+import posg.model.PartialObservationFunction;
 import scalability.FrameActionConfiguration;
 import simulators.SimulatorHelper;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.ThreadFactory;
 
 
 public class IPOMCP extends MDPSolver implements Planner,QProvider {
+    /**
+     * Effective sample size of the updated belief, as a fraction of the particle count, below which new particles are
+     * injected, and the fraction of the particles injected.
+     */
+    private static final double MIN_EFFECTIVE_SAMPLE_RATIO = 0.5;
+    private static final double PARTICLE_INJECTION_RATIO = 0.1;
+
+    /**
+     * Number of the simulations of each thread between the checks of the early stopping, and the minimum visits of each
+     * root action before the search can stop.
+     */
+    private static final int EARLY_STOP_CHECK_INTERVAL = 100;
+    private static final int EARLY_STOP_MIN_VISITS = 5;
+
     /**
      * Maximum allowed error.
      */
@@ -55,6 +79,38 @@ public class IPOMCP extends MDPSolver implements Planner,QProvider {
      */
     private int timeBound;
 
+    /**
+     * Budget of each search, which is the time bound unless set otherwise. The workers share the budget of the planner.
+     */
+    private SearchBudget searchBudget;
+
+    /**
+     * Workers of the running root-parallel search, for the anytime query. Null if no root-parallel search is running.
+     */
+    private volatile ArrayList<IPOMCP> activeWorkers;
+
+    /**
+     * Scratch arrays of the truncated sampling of the FAC, kept by each planner and worker to avoid the allocations.
+     */
+    private int[] typeConfigScratch;
+    private double[] truncatedWeightScratch;
+
+    /**
+     * Thread pool of the parallel searches, created on the first parallel search and kept until the planner is shut down.
+     */
+    private ExecutorService searchExecutor;
+
+    /**
+     * Scale of the bandit constant in the confidence bounds of the early stopping, 0 or less to search until the budget
+     * runs out. The search stops once the best root action is decided by {@link #isActionDecided()}.
+     */
+    private double earlyStopConfidence;
+
+    /**
+     * Planner which owns the search, which is the planner itself or the planner of the worker.
+     */
+    private IPOMCP planner;
+
     /**
      * Number of particles in the root node.
      */
@@ -125,6 +181,28 @@ public class IPOMCP extends MDPSolver implements Planner,QProvider {
      */
     private ArrayList<Agent> sampledAgents;
 
+    /**
+     * Index of the group of each sampled agent in the agent groups of the domain, and the first agent number of the group.
+     */
+    private int[] sampledAgentGroups;
+    private int[] sampledAgentStartIndexes;
+
+    /**
+     * Policy state template of each agent group, null for the groups without sampled agents, and the position of the
+     * fire of the particle state copied to each fire of the template, -1 if the fire of the template is not copied.
+     */
+    private WildfireAnonymousState[] policyStateTemplates;
+    private int[][] policyStateFireSources;
+
+    /**
+     * Policy state of the sampled agents at (group index * policyStateCount + encoded policy state), where the encoded
+     * policy state holds the fire intensities of the particle state and the availability of the mental model.
+     * It is shared with the worker planners. Only the state is cached, and the action is sampled from the policy for
+     * each FAC, so the stochastic policies and the ties of the deterministic ones are modelled in full.
+     */
+    private AtomicReferenceArray<State> policyStateCache;
+    private int policyStateCount;
+
     /**
      * Root node to start making the tree.
      */
@@ -162,9 +240,9 @@ public class IPOMCP extends MDPSolver implements Planner,QProvider {
     private StateEnumerator senum;
 
     /**
-     * State Enumerator.
+     * Alias samplers of the rollout action distribution for each enumerated state.
      */
-    private Map<Integer,ArrayList<Double>> rolloutDistribution;
+    private Map<Integer,AliasSampler> rolloutDistribution;
 
     /**
      * Random Number generator.
@@ -207,7 +285,44 @@ public class IPOMCP extends MDPSolver implements Planner,QProvider {
     int rolloutRewardCount;
     int treeRewardCount;
 
-    private Map<Integer, ArrayList<BeliefParticle>> nextParticles;
+    private Map<Integer, ParticleStore> nextParticles;
+
+    /**
+     * Number of threads for the root-parallel search. Each thread grows an independent tree from its own subset of
+     * the root particles, and the root statistics are merged before choosing the action. 1 is the sequential search.
+     */
+    private int threadCount;
+
+    /**
+     * If the threads search the same tree (tree-parallel search) instead of growing independent trees.
+     * The threads apply virtual loss to the action nodes they are passing through.
+     */
+    private boolean isTreeParallel;
+
+    /**
+     * If the subtree under the real action and observation is kept as the tree of the next stage, instead of starting
+     * the search of each stage from an empty tree.
+     */
+    private boolean isTreeReuse;
+
+    /**
+     * Maximum number of the particles kept in each node deeper than the children of the root, which are never harvested
+     * for the belief update. The particles are kept as a uniform reservoir sample, no particles are kept for 0, and all
+     * of them for a negative value.
+     */
+    private int particleReservoirSize;
+
+    /**
+     * Index of the best action of the last search, to find the subtree to reuse in the belief update.
+     */
+    private int lastBestActionIndex;
+
+    /**
+     * The belief particle and the reward of the last call to the black box simulator of this planner (or worker).
+     * Other threads may add particles and rewards to the same tree node in the tree-parallel search.
+     */
+    private BeliefParticle simulatedParticle;
+    private double simulatedReward;
 
 
     //Default Constructor.
@@ -225,7 +340,8 @@ public class IPOMCP extends MDPSolver implements Planner,QProvider {
                   Wildfire wildfire,WildfireDomain wildfireDomain,FACRewardFunction rewardFunction,
                   FullJointIPOMCPModel jointIPOMCPModel,
                   TerminalFunction terminalFunction,StateEnumerator senum,State initialAnmState,State masterState, boolean isRandom,
-                  int trials, int trialSeries, boolean isAvgQActionNode, boolean isSuppOpen, boolean isSingleConfigNode){
+                  int trials, int trialSeries, boolean isAvgQActionNode, boolean isSuppOpen, boolean isSingleConfigNode,
+                  int threadCount, boolean isTreeParallel, boolean isTreeReuse, int particleReservoirSize){
         this();
 
         //Initialize the constant values for the IPOMCP.
@@ -234,6 +350,9 @@ public class IPOMCP extends MDPSolver implements Planner,QProvider {
         this.C = C;
         this.maxHorizons = maxHorizons;
         this.timeBound = timeBound;
+        if(timeBound > 0){
+            this.searchBudget = new SearchBudget(0,timeBound);
+        }//end if.
         this.particleCount = particleCount;
         this.alpha = alpha;
         this.samplingErrorBound = samplingErrorBound;
@@ -266,15 +385,16 @@ public class IPOMCP extends MDPSolver implements Planner,QProvider {
 
         //Sample the agents for modeling.
         sampleAgents(this.wildfireDomain);
+        preparePolicyStates((WildfireAnonymousState) initialAnmState);
 
         //Randomly pick some of the mental models from the all possible options.
-        ArrayList<BeliefParticle> beliefParticles = sampleBeliefParticles(initialAnmState,masterState,null) ;
+        ParticleStore beliefParticles = sampleBeliefParticles(initialAnmState,masterState,null) ;
         //Initialize the initial root of the I-POMCP Tree.
         this.rootNode = new TreeNode(); //Use the initial state instead.
         this.rootNode.setBeliefParticles(beliefParticles);
         //Generate the IPOMCP Tree and add the initial node into that.
         this.ipomcpTree = new IPOMCPTree();
-        this.ipomcpTree.setNode(rootNode);
+        this.ipomcpTree.setRoot(rootNode);
         this.currentHorizon = 0;
 
         //Initialize maps.
@@ -283,12 +403,91 @@ public class IPOMCP extends MDPSolver implements Planner,QProvider {
 
         //Updated distribution for the roll out.
         this.senum = senum;
-        this.rolloutDistribution = new HashMap<>();
-        rolloutDistribution(senum);
+        //The rollout distribution is built once for the state enumerator of the group and shared afterwards.
+        this.rolloutDistribution = AgentGroupCache.getRolloutDistribution(senum);
+        if(this.rolloutDistribution == null){
+            this.rolloutDistribution = AgentGroupCache.putRolloutDistribution(senum, rolloutDistribution(senum));
+        }//end if.
 
         rolloutRewardCount = 0;
         treeRewardCount = 0;
         this.nextParticles = new HashMap<>();
+        this.threadCount = Math.max(1, threadCount);
+        this.isTreeReuse = isTreeReuse;
+        this.particleReservoirSize = particleReservoirSize;
+        this.lastBestActionIndex = -1;
+        this.isTreeParallel = isTreeParallel;
+        this.planner = this;
+    }
+
+
+    /**
+     * Constructor for a worker of the parallel search. The worker shares the parameters, sampled agents, policies
+     * and rollout distribution of the planner, which are only read during the search, while it gets its own
+     * random number generator and horizon. In the root-parallel search the worker gets its own tree with a subset of
+     * the root particles, and in the tree-parallel search the planner's tree is shared.
+     * @param ipomcp is the planner to create the worker for.
+     * @param rootNode is the root node of the worker's tree.
+     * @param ipomcpTree is the worker's tree.
+     */
+    private IPOMCP(IPOMCP ipomcp, TreeNode rootNode, IPOMCPTree ipomcpTree){
+        this();
+
+        //Copy the constant values.
+        this.epsilon = ipomcp.epsilon;
+        this.gamma = ipomcp.gamma;
+        this.C = ipomcp.C;
+        this.maxHorizons = ipomcp.maxHorizons;
+        this.timeBound = ipomcp.timeBound;
+        this.searchBudget = ipomcp.searchBudget;
+        this.particleCount = rootNode.getBeliefParticles().size();
+        this.alpha = ipomcp.alpha;
+        this.samplingErrorBound = ipomcp.samplingErrorBound;
+
+        //Share the domain values.
+        this.possibleMaxConfiguration = ipomcp.possibleMaxConfiguration;
+        this.agentPolicies = ipomcp.agentPolicies;
+        this.currentAgentNumber = ipomcp.currentAgentNumber;
+        this.currentAgentAction = ipomcp.currentAgentAction;
+        this.wildfire = ipomcp.wildfire;
+        this.wildfireDomain = ipomcp.wildfireDomain;
+        this.jointIPOMCPModel = ipomcp.jointIPOMCPModel;
+        this.rewardFunction = ipomcp.rewardFunction;
+        this.terminalFunction = ipomcp.terminalFunction;
+        this.isRandom = ipomcp.isRandom;
+        this.stages = ipomcp.stages;
+        this.trials = ipomcp.trials;
+        this.trialSeries = ipomcp.trialSeries;
+        this.isAvgQActionNode = ipomcp.isAvgQActionNode;
+        this.isSuppOpen = ipomcp.isSuppOpen;
+        this.isSingleConfigNode = ipomcp.isSingleConfigNode;
+        this.sampledAgents = ipomcp.sampledAgents;
+        this.sampledAgentGroups = ipomcp.sampledAgentGroups;
+        this.sampledAgentStartIndexes = ipomcp.sampledAgentStartIndexes;
+        this.policyStateTemplates = ipomcp.policyStateTemplates;
+        this.policyStateFireSources = ipomcp.policyStateFireSources;
+        this.policyStateCache = ipomcp.policyStateCache;
+        this.policyStateCount = ipomcp.policyStateCount;
+        this.senum = ipomcp.senum;
+        this.rolloutDistribution = ipomcp.rolloutDistribution;
+        this.threadCount = 1;
+        this.isTreeParallel = ipomcp.isTreeParallel;
+        this.earlyStopConfidence = ipomcp.earlyStopConfidence;
+        this.planner = ipomcp.planner;
+        this.particleReservoirSize = ipomcp.particleReservoirSize;
+        //Own random number generator for the worker.
+        generator =  new XorshiftPlus.Smart(new XorshiftPlus());
+
+        //Tree for the worker.
+        this.rootNode = rootNode;
+        this.ipomcpTree = ipomcpTree;
+        this.currentHorizon = 0;
+
+        weightedQValue = new double[this.currentAgentAction.length];
+        overallVisits = new int[this.currentAgentAction.length];
+        rolloutRewardCount = 0;
+        treeRewardCount = 0;
+        this.nextParticles = new HashMap<>();
     }
 
     /**
@@ -298,8 +497,11 @@ public class IPOMCP extends MDPSolver implements Planner,QProvider {
      * to all the actions which are the wrong actions. In the end the Softmax function is used for generating a distribution.
      *
      * @param senum is the state enumerator containing all the states.
+     * @return is the alias sampler of the distribution of each enumerated state.
      */
-    private void rolloutDistribution(StateEnumerator senum) {
+    private Map<Integer,AliasSampler> rolloutDistribution(StateEnumerator senum) {
+        Map<Integer,AliasSampler> rolloutDistribution = new HashMap<>();
+
         //Distribution Temp variable.
         ArrayList<Double> distribution ;
 
@@ -378,9 +580,11 @@ public class IPOMCP extends MDPSolver implements Planner,QProvider {
             }//end for.
 
 
-            //Add state id and distribution to the map.
-            rolloutDistribution.put(stateID,distribution);
+            //Add state id and the sampler of the distribution to the map.
+            rolloutDistribution.put(stateID,new AliasSampler(distribution));
         }//end for.
+
+        return rolloutDistribution;
     }//end.
 
 
@@ -409,87 +613,36 @@ public class IPOMCP extends MDPSolver implements Planner,QProvider {
         SimulatorHelper.addParticleLog("Particle Count Before Resizing:" + this.rootNode.getBeliefParticles().size());
         treeLog += "Current State:" + ((WildfireAnonymousState)anonymousState).toString() + "\n";
 
+        //The resampled particles of the belief update keep their simulated states, so anchor them to the current state
+        //keeping their mental models. The other particle counts are resized by the search.
+        if(this.rootNode.getBeliefParticles().size() == this.particleCount){
+            this.rootNode.setBeliefParticles(sampleBeliefParticles(anonymousState,null,this.rootNode.getBeliefParticles()));
+        }//end if.
+
 
 
         //Get total number of configuration sampled from root.
         double maxQValue = -100000;
 
         Action bestAction = null;
-        //Get the current time.
-        long startTime = System.currentTimeMillis();
+        //Start the budget of the search.
+        if(this.searchBudget == null){
+            throw new Exception("Search budget is not set");
+        }//end if.
+        this.searchBudget.start();
         this.count = 0;
 
-//        System.out.println("TIME Budget:" + this.timeBound);
-
-        //Run the loop until the timeout.
-        //NOTE: Because of uneven performance of the machine for creating a tree for each agent, counter might be helpful.
-        //NOTE: Time bound would help to put at least some more nodes than the uneven performance of the machine is generating.
-        while((System.currentTimeMillis() - startTime) < this.timeBound){
-            this.count++;//Increase the counter.
-
-            if(this.rootNode == null){
-                throw new Exception("Root for the new exploration is null");
-            }else{
-
-                if(this.isAvgQActionNode){
-                    //Update the Q-values every time a new run is starting.
-                    weightedQValue = new double[this.currentAgentAction.length];
-                    overallVisits = new int[this.currentAgentAction.length];
-                    //Find the average Q-value by summing the weighted Q-Value of the all action nodes below the root node.
-                    //The weight is the likelihood of the Configuration (C_i / C).
-                    for(HistoryElement historyElement : this.rootNode.getHistoryElement()){
-                        // C_i / C  = current configuration visits / total configuration sampled.
-                        // The probability to choose the best action is 1, so is not included.
-
-                        int configurationSampled =  this.rootNode.countSampledConfigs();
-                        double configRatio = (double)historyElement.getConfigurationNode().getNodeVisit() / (double)configurationSampled;
-
-                        //Iterate over all the action branches.
-                        for(int actionBranch=0; actionBranch < historyElement.getActionNodes().size(); actionBranch++){
-
-//                        //Add if the best action value does not exist.
-//                        if(weightedQValue.size() == 0 ||  weightedQValue.size() <= actionBranch) {
-//                            weightedQValue.add(actionBranch, 0.0);
-//                            overallVisits.add(actionBranch,0);
-//                        }//end if.
-
-                            //Add the Config-Ratio * Q-Value for each branch.
-                            weightedQValue[actionBranch] =
-                                    weightedQValue[actionBranch]
-                                            + configRatio * historyElement.getActionNodes().get(actionBranch).getNodeQValue();
-
-                            //Add the Number of visits to the current branch.
-                            overallVisits[actionBranch] =
-                                    overallVisits[actionBranch]
-                                            +  historyElement.getActionNodes().get(actionBranch).getNodeVisit();
-
-                        }//end for.
-                    }//end for.
-                }//end if. Is average-Q action node.
-
-
-//                if(counter == 1){
-//                    //Print the Particles into the log file.
-//                    SimulatorHelper.addParticleLog("\nParticles at the Beginning:\n");
-//                    printParticles();
-//                }
-
-                //If it is not initial state, sample particles using the anonymous state and merged belief state.
-                // and recreate the root node.
-                if(!(this.rootNode.getBeliefParticles().size() == this.particleCount)){
-                    ArrayList<BeliefParticle> beliefParticles = sampleBeliefParticles(anonymousState,null,this.rootNode.getBeliefParticles()) ;
-                    this.rootNode.setBeliefParticles(beliefParticles);
-                }//end if.
-                //Sample a particle from the tree node.
-                BeliefParticle sampledParticle = this.rootNode.sampleParticle();
-                //Reset the horizon value.
-                this.currentHorizon = 0;
-                //Simulate the actions.
-                simulate(sampledParticle, this.rootNode, this.wildfireDomain);
-            }//end if.
-        }//end while.
+        //Workers of the root-parallel search.
+        ArrayList<IPOMCP> workers = null;
+        if(this.threadCount > 1 && this.isTreeParallel){
+            treeParallelSearch(anonymousState);
+        }else if(this.threadCount > 1){
+            workers = rootParallelSearch(anonymousState);
+        }else{
+            runSimulations(anonymousState);
+        }//end if-else.
 
-        System.out.println("Total time taken for creating tree TIME:" + (System.currentTimeMillis() - startTime));
+        System.out.println("Total time taken for creating tree TIME:" + this.searchBudget.getElapsedMillis());
         System.out.println("Total Visits to the tree:" + this.count);
         System.out.println("Rollout Reward COUNTER:" + this.rolloutRewardCount);
         System.out.println("Tree Reward COUNTER:" + this.treeRewardCount);
@@ -512,40 +665,9 @@ public class IPOMCP extends MDPSolver implements Planner,QProvider {
 
 
         //Calculate the average Q-value just once if the action nodes are starting from zero.
-        if(!this.isAvgQActionNode){
-            //Update the Q-values every time a new run is starting.
-            weightedQValue = new double[this.currentAgentAction.length];
-            overallVisits = new int[this.currentAgentAction.length];
-            //Find the average Q-value by summing the weighted Q-Value of the all action nodes below the root node.
-            //The weight is the likelihood of the Configuration (C_i / C).
-            for(HistoryElement historyElement : this.rootNode.getHistoryElement()){
-                // C_i / C  = current configuration visits / total configuration sampled.
-                // The probability to choose the best action is 1, so is not included.
-
-                int configurationSampled =  this.rootNode.countSampledConfigs();
-                double configRatio = (double)historyElement.getConfigurationNode().getNodeVisit() / (double)configurationSampled;
-
-                //Iterate over all the action branches.
-                for(int actionBranch=0; actionBranch < historyElement.getActionNodes().size(); actionBranch++){
-
-//                        //Add if the best action value does not exist.
-//                        if(weightedQValue.size() == 0 ||  weightedQValue.size() <= actionBranch) {
-//                            weightedQValue.add(actionBranch, 0.0);
-//                            overallVisits.add(actionBranch,0);
-//                        }//end if.
-
-                    //Add the Config-Ratio * Q-Value for each branch.
-                    weightedQValue[actionBranch] =
-                            weightedQValue[actionBranch]
-                                    + configRatio * historyElement.getActionNodes().get(actionBranch).getNodeQValue();
-
-                    //Add the Number of visits to the current branch.
-                    overallVisits[actionBranch] =
-                            overallVisits[actionBranch]
-                                    +  historyElement.getActionNodes().get(actionBranch).getNodeVisit();
-
-                }//end for.
-            }//end for.
+        //The root-parallel search has already merged the workers' values.
+        if(!this.isAvgQActionNode && workers == null){
+            computeRootQValues();
         }//end if Is-Average Q.
 
 
@@ -569,22 +691,14 @@ public class IPOMCP extends MDPSolver implements Planner,QProvider {
 
         // save the possible next particle filters for the next beliefUpdate step (so that we can clear the tree to save memory)
         this.nextParticles.clear();
-        Integer fireDifference;
-        int hashcode;
-        for (ObservationNode onode : rootNode.getHistoryElement().get(0).getObservationNodes().get(bestActionIndex)) {
-            // get the observation
-            fireDifference = ((FireObservation) onode.getObservation()).getFireDifference();
-
-            // create the list of next particles
-            ArrayList<BeliefParticle> beliefParticles = new ArrayList<>();
-            this.nextParticles.put(fireDifference, beliefParticles);
-
-            // fill the list of next particles
-            hashcode = onode.getChildHashCode();
-            for (BeliefParticle particle : this.ipomcpTree.getBeliefTree().get(hashcode).getBeliefParticles()) {
-                beliefParticles.add(particle);
-            }
-        }
+        if(workers == null){
+            collectNextParticles(bestActionIndex,this.nextParticles);
+        }else{
+            for(IPOMCP worker : workers){
+                worker.collectNextParticles(bestActionIndex,this.nextParticles);
+                worker.ipomcpTree.clear();
+            }//end for.
+        }//end if-else.
 
 
         //Print the Particles into the log file.
@@ -622,13 +736,443 @@ public class IPOMCP extends MDPSolver implements Planner,QProvider {
         System.out.println(actionString);
         System.out.println(predictionString);
 
-        // clear the tree to save memory
-        this.ipomcpTree.clear();
+        // clear the tree to save memory, unless the subtree is reused in the belief update.
+        // The trees of the root-parallel search are already cleared.
+        if(this.isTreeReuse && workers == null){
+            this.lastBestActionIndex = bestActionIndex;
+        }else{
+            this.lastBestActionIndex = -1;
+            this.ipomcpTree.clear();
+        }//end if-else.
 
         return bestAction;
     }//end search method.
 
 
+    /**
+     * This method runs the simulations from the root node until the search budget is exhausted.
+     * @param anonymousState is the reference state for the current agent to plan for.
+     * @throws Exception if the root node is not available.
+     */
+    private void runSimulations(State anonymousState) throws Exception{
+        //Run the loop until the budget is exhausted.
+        //NOTE: Because of uneven performance of the machine for creating a tree for each agent, the simulation count
+        //budget gives the same number of simulations to each search.
+        while(this.searchBudget.tryAcquire()){
+            this.count++;//Increase the counter.
+
+            if(this.rootNode == null){
+                throw new Exception("Root for the new exploration is null");
+            }else{
+
+                if(this.isAvgQActionNode){
+                    //Update the Q-values every time a new run is starting.
+                    synchronized (this.rootNode){
+                        computeRootQValues();
+                    }//end synchronized.
+                }//end if. Is average-Q action node.
+
+
+//                if(counter == 1){
+//                    //Print the Particles into the log file.
+//                    SimulatorHelper.addParticleLog("\nParticles at the Beginning:\n");
+//                    printParticles();
+//                }
+
+                //If it is not initial state, sample particles using the anonymous state and merged belief state.
+                // and recreate the root node.
+                if(!(this.rootNode.getBeliefParticles().size() == this.particleCount)){
+                    ParticleStore beliefParticles = sampleBeliefParticles(anonymousState,null,this.rootNode.getBeliefParticles()) ;
+                    this.rootNode.setBeliefParticles(beliefParticles);
+                }//end if.
+                //Sample a particle from the tree node.
+                BeliefParticle sampledParticle = this.rootNode.sampleParticle(this.generator.nextDouble());
+                //Reset the horizon value.
+                this.currentHorizon = 0;
+                //Simulate the actions.
+                simulate(sampledParticle, this.rootNode, this.wildfireDomain);
+
+                //Stop the search of all the threads, if the best root action is already decided.
+                if(this.earlyStopConfidence > 0 && this.count % EARLY_STOP_CHECK_INTERVAL == 0
+                        && this.planner.isActionDecided()){
+                    this.searchBudget.stop();
+                }//end if.
+            }//end if.
+        }//end while.
+    }//end method.
+
+
+    /**
+     * This method runs the root-parallel search. The root particles are divided among the workers, each worker grows
+     * its own tree with its own random number generator until the budget runs out, and in the end the weighted Q-values and
+     * visits of the workers' root action nodes are merged into the current planner.
+     * The tree of the first worker is kept for the tree and the configuration logs.
+     * @param anonymousState is the reference state for the current agent to plan for.
+     * @return is the list of workers, which holds the trees until the next particles are collected.
+     * @throws Exception if any of the worker fails.
+     */
+    private ArrayList<IPOMCP> rootParallelSearch(final State anonymousState) throws Exception{
+        //Sample the particles of the root before dividing them.
+        if(!(this.rootNode.getBeliefParticles().size() == this.particleCount)){
+            ParticleStore beliefParticles = sampleBeliefParticles(anonymousState,null,this.rootNode.getBeliefParticles()) ;
+            this.rootNode.setBeliefParticles(beliefParticles);
+        }//end if.
+
+        //Divide the root particles among the workers.
+        int workerCount = Math.min(this.threadCount,this.rootNode.getBeliefParticles().size());
+        ArrayList<ParticleStore> workerParticles = new ArrayList<>(workerCount);
+        for(int worker = 0; worker < workerCount; worker++){
+            workerParticles.add(new ParticleStore());
+        }//end for.
+        for(int particle = 0; particle < this.rootNode.getBeliefParticles().size(); particle++){
+            workerParticles.get(particle % workerCount).add(this.rootNode.getBeliefParticles(), particle);
+        }//end for.
+
+        //Create the workers with their own trees.
+        ArrayList<IPOMCP> workers = new ArrayList<>(workerCount);
+        for(int worker = 0; worker < workerCount; worker++){
+            TreeNode workerRoot = new TreeNode();
+            workerRoot.setBeliefParticles(workerParticles.get(worker));
+            IPOMCPTree workerTree = new IPOMCPTree();
+            workerTree.setRoot(workerRoot);
+            workers.add(new IPOMCP(this,workerRoot,workerTree));
+        }//end for.
+
+        //Run all the searches and wait for them to finish.
+        this.activeWorkers = workers;
+        try{
+            runWorkers(workers,anonymousState);
+        }finally {
+            this.activeWorkers = null;
+        }//end try-finally.
+
+        //Merge the root statistics.
+        this.weightedQValue = new double[this.currentAgentAction.length];
+        this.overallVisits = new int[this.currentAgentAction.length];
+        double[] sumQValue = new double[this.currentAgentAction.length];
+        for(IPOMCP worker : workers){
+            worker.computeRootQValues();
+
+            //Visit weighted Q-value over the workers.
+            for(int actionBranch = 0 ; actionBranch < this.currentAgentAction.length ; actionBranch++){
+                this.weightedQValue[actionBranch] += worker.overallVisits[actionBranch] * worker.weightedQValue[actionBranch];
+                this.overallVisits[actionBranch] += worker.overallVisits[actionBranch];
+                sumQValue[actionBranch] += worker.weightedQValue[actionBranch];
+            }//end for.
+        }//end for.
+        for(int actionBranch = 0 ; actionBranch < this.currentAgentAction.length ; actionBranch++){
+            //Average it out, if none of the workers has visited the action.
+            if(this.overallVisits[actionBranch] == 0){
+                this.weightedQValue[actionBranch] = sumQValue[actionBranch] / workers.size();
+            }else{
+                this.weightedQValue[actionBranch] = this.weightedQValue[actionBranch] / this.overallVisits[actionBranch];
+            }//end if-else.
+        }//end for.
+
+        //Keep the first worker's tree for logging.
+        this.rootNode.setHistoryElement(workers.get(0).rootNode.getHistoryElement());
+        this.ipomcpTree = workers.get(0).ipomcpTree;
+
+        return workers;
+    }//end method.
+
+
+    /**
+     * This method runs the tree-parallel search. All the workers search the tree of the current planner from its root
+     * until the budget runs out, and the concurrent simulations are spread over the actions using virtual loss.
+     * @param anonymousState is the reference state for the current agent to plan for.
+     * @throws Exception if any of the worker fails.
+     */
+    private void treeParallelSearch(State anonymousState) throws Exception{
+        //Sample the particles of the root before sharing them.
+        if(!(this.rootNode.getBeliefParticles().size() == this.particleCount)){
+            ParticleStore beliefParticles = sampleBeliefParticles(anonymousState,null,this.rootNode.getBeliefParticles()) ;
+            this.rootNode.setBeliefParticles(beliefParticles);
+        }//end if.
+
+        //Create the workers on the same tree.
+        ArrayList<IPOMCP> workers = new ArrayList<>(this.threadCount);
+        for(int worker = 0; worker < this.threadCount; worker++){
+            workers.add(new IPOMCP(this,this.rootNode,this.ipomcpTree));
+        }//end for.
+
+        //Run all the searches and wait for them to finish.
+        runWorkers(workers,anonymousState);
+    }//end method.
+
+
+    /**
+     * This method runs the simulations of each worker in its own thread until the budget runs out, and adds up the
+     * workers' counters to the current planner's counters.
+     * @param workers is the list of the workers.
+     * @param anonymousState is the reference state for the current agent to plan for.
+     * @throws Exception if any of the worker fails.
+     */
+    private void runWorkers(ArrayList<IPOMCP> workers, final State anonymousState) throws Exception{
+        ArrayList<Callable<Integer>> searches = new ArrayList<>(workers.size());
+        for(final IPOMCP worker : workers){
+            searches.add(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    worker.runSimulations(anonymousState);
+                    return worker.count;
+                }
+            });
+        }//end for.
+
+        for(Future<Integer> search : searchExecutor().invokeAll(searches)){
+            this.count += search.get();
+        }//end for.
+
+        for(IPOMCP worker : workers){
+            this.rolloutRewardCount += worker.rolloutRewardCount;
+            this.treeRewardCount += worker.treeRewardCount;
+        }//end for.
+    }//end method.
+
+
+    /**
+     * This method returns the thread pool of the parallel searches of the planner, and creates it on the first call.
+     * The pool is kept for all the searches of the planner until {@link #shutdown()}, and its threads are daemon
+     * threads, so a planner which is never shut down does not keep the JVM alive.
+     * @return is the thread pool.
+     */
+    private synchronized ExecutorService searchExecutor(){
+        if(this.searchExecutor == null){
+            this.searchExecutor = Executors.newFixedThreadPool(this.threadCount, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "ipomcp-agent" + currentAgentNumber + "-search");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }//end if.
+        return this.searchExecutor;
+    }
+
+
+    /**
+     * This method shuts down the thread pool of the parallel searches, when the planner is no longer used.
+     */
+    public synchronized void shutdown(){
+        if(this.searchExecutor != null){
+            this.searchExecutor.shutdown();
+            this.searchExecutor = null;
+        }//end if.
+    }
+
+
+    /**
+     * This method calculates the weighted Q-value and the overall visits for each action of the current agent,
+     * by summing the Q-values of the all action nodes below the root node weighted by the likelihood of
+     * the Configuration (C_i / C).
+     */
+    private void computeRootQValues(){
+        //Update the Q-values every time a new run is starting.
+        weightedQValue = new double[this.currentAgentAction.length];
+        overallVisits = new int[this.currentAgentAction.length];
+        rootQValues(this.rootNode,weightedQValue,overallVisits);
+    }//end method.
+
+
+    /**
+     * This method adds the weighted Q-value and the visits of each action of the current agent below the given root.
+     * @param root is the root node.
+     * @param weightedQValue is the weighted Q-value of each action to add to.
+     * @param overallVisits is the visits of each action to add to.
+     */
+    private static void rootQValues(TreeNode root, double[] weightedQValue, int[] overallVisits){
+        //Find the average Q-value by summing the weighted Q-Value of the all action nodes below the root node.
+        //The weight is the likelihood of the Configuration (C_i / C).
+        for(HistoryElement historyElement : root.getHistoryElement()){
+            // C_i / C  = current configuration visits / total configuration sampled.
+            // The probability to choose the best action is 1, so is not included.
+
+            int configurationSampled =  root.countSampledConfigs();
+            double configRatio = (double)historyElement.getConfigurationNode().getNodeVisit() / (double)configurationSampled;
+
+            //Iterate over all the action branches.
+            ActionStatistics actionStatistics = historyElement.getActionStatistics();
+            for(int actionBranch=0; actionBranch < actionStatistics.size(); actionBranch++){
+                //Add the Config-Ratio * Q-Value for each branch.
+                weightedQValue[actionBranch] =
+                        weightedQValue[actionBranch]
+                                + configRatio * actionStatistics.getNodeQValue(actionBranch);
+
+                //Add the Number of visits to the current branch.
+                overallVisits[actionBranch] =
+                        overallVisits[actionBranch]
+                                +  actionStatistics.getNodeVisit(actionBranch);
+            }//end for.
+        }//end for.
+    }//end method.
+
+
+    /**
+     * This method is the anytime query of the search, which can be called from another thread while the search is
+     * running, e.g. by a stage coordinator before it stops the search with the {@link SearchBudget#stop()}. The Q-values
+     * of the root are computed and merged over the root-parallel workers the same way as at the end of the search,
+     * without changing the planner.
+     * @return is the best action so far, null if none of the actions has been visited yet.
+     */
+    public Action bestActionSoFar(){
+        double[] qValues = new double[this.currentAgentAction.length];
+        int[] visits = new int[this.currentAgentAction.length];
+        if(mergeRootQValues(qValues,visits) == 0){
+            return null;
+        }//end if.
+
+        //Choose the action the same way as the search.
+        Action bestAction = null;
+        double maxQValue = -100000;
+        for(int actionBranch = 0 ; actionBranch < this.currentAgentAction.length ; actionBranch++){
+            if(qValues[actionBranch] >= maxQValue){
+                bestAction = this.currentAgentAction[actionBranch].associatedAction("Useless Argument");
+                maxQValue = qValues[actionBranch];
+            }//end if.
+        }//end for.
+
+        return bestAction;
+    }//end method.
+
+
+    /**
+     * This method checks if the best root action is statistically decided, i.e. if its lower confidence bound is above
+     * the upper confidence bounds of all the other actions. The bounds are the UCB1 bounds of the bandit, with the
+     * bandit constant scaled by the early stopping confidence, over the merged Q-values and visits of the root. All the
+     * actions must have been visited a few times before the search can stop.
+     * @return is true if the search can stop.
+     */
+    public boolean isActionDecided(){
+        double[] qValues = new double[this.currentAgentAction.length];
+        int[] visits = new int[this.currentAgentAction.length];
+        int totalVisits = mergeRootQValues(qValues,visits);
+
+        int bestActionIndex = -1;
+        for(int actionBranch = 0 ; actionBranch < this.currentAgentAction.length ; actionBranch++){
+            if(visits[actionBranch] < EARLY_STOP_MIN_VISITS){
+                return false;
+            }//end if.
+            if(bestActionIndex == -1 || qValues[actionBranch] >= qValues[bestActionIndex]){
+                bestActionIndex = actionBranch;
+            }//end if.
+        }//end for.
+        if(bestActionIndex == -1){
+            return false;
+        }//end if.
+
+        //Lower bound of the best action against the upper bounds of the rest.
+        double logVisits = Math.log(totalVisits);
+        double scale = this.earlyStopConfidence * this.C;
+        double bestLowerBound = qValues[bestActionIndex] - scale * Math.sqrt(logVisits / visits[bestActionIndex]);
+        for(int actionBranch = 0 ; actionBranch < this.currentAgentAction.length ; actionBranch++){
+            if(actionBranch != bestActionIndex
+                    && qValues[actionBranch] + scale * Math.sqrt(logVisits / visits[actionBranch]) >= bestLowerBound){
+                return false;
+            }//end if.
+        }//end for.
+        return true;
+    }//end method.
+
+
+    /**
+     * This method computes the Q-value and the visits of each root action, merged over the roots of the root-parallel
+     * workers if the root-parallel search is running. Each root is read under its lock.
+     * @param qValues is the merged Q-value of each action to fill.
+     * @param visits is the merged visits of each action to fill.
+     * @return is the total visits of the actions.
+     */
+    private int mergeRootQValues(double[] qValues, int[] visits){
+        ArrayList<TreeNode> roots = new ArrayList<>();
+        ArrayList<IPOMCP> workers = this.activeWorkers;
+        if(workers != null){
+            for(IPOMCP worker : workers){
+                roots.add(worker.rootNode);
+            }//end for.
+        }else{
+            roots.add(this.rootNode);
+        }//end if-else.
+
+        //Visit weighted Q-value over the roots.
+        double[] sumQValue = new double[this.currentAgentAction.length];
+        for(TreeNode root : roots){
+            double[] rootQValue = new double[this.currentAgentAction.length];
+            int[] rootVisits = new int[this.currentAgentAction.length];
+            synchronized (root){
+                rootQValues(root,rootQValue,rootVisits);
+            }//end synchronized.
+            for(int actionBranch = 0 ; actionBranch < this.currentAgentAction.length ; actionBranch++){
+                qValues[actionBranch] += rootVisits[actionBranch] * rootQValue[actionBranch];
+                visits[actionBranch] += rootVisits[actionBranch];
+                sumQValue[actionBranch] += rootQValue[actionBranch];
+            }//end for.
+        }//end for.
+
+        int totalVisits = 0;
+        for(int actionBranch = 0 ; actionBranch < this.currentAgentAction.length ; actionBranch++){
+            //Average it out, if none of the roots has visited the action.
+            if(visits[actionBranch] == 0){
+                qValues[actionBranch] = sumQValue[actionBranch] / roots.size();
+            }else{
+                qValues[actionBranch] = qValues[actionBranch] / visits[actionBranch];
+            }//end if-else.
+            totalVisits += visits[actionBranch];
+        }//end for.
+        return totalVisits;
+    }//end method.
+
+
+    //Getter and setter methods of the search budget and the early stopping.
+    public SearchBudget getSearchBudget() {
+        return searchBudget;
+    }
+
+    public void setSearchBudget(SearchBudget searchBudget) {
+        this.searchBudget = searchBudget;
+    }
+
+    public double getEarlyStopConfidence() {
+        return earlyStopConfidence;
+    }
+
+    public void setEarlyStopConfidence(double earlyStopConfidence) {
+        this.earlyStopConfidence = earlyStopConfidence;
+    }
+
+
+    /**
+     * This method adds the particles of the root's children under the given action to the next particles, grouped by
+     * the fire difference observation of the children.
+     * @param bestActionIndex is the index of the chosen action.
+     * @param particles is the map of the observations and their particles to add to.
+     */
+    private void collectNextParticles(int bestActionIndex, Map<Integer, ParticleStore> particles){
+        //Nothing to collect, if the root has never been explored.
+        if(this.rootNode.getHistoryElement().size() == 0){
+            return;
+        }//end if.
+
+        Integer fireDifference;
+        int nodeId;
+        for (ObservationNode onode : rootNode.getHistoryElement().get(0).getObservationNodes().get(bestActionIndex)) {
+            // get the observation
+            fireDifference = ((FireObservation) onode.getObservation()).getFireDifference();
+
+            // create the list of next particles
+            ParticleStore beliefParticles = particles.get(fireDifference);
+            if(beliefParticles == null){
+                beliefParticles = new ParticleStore();
+                particles.put(fireDifference, beliefParticles);
+            }//end if.
+
+            // fill the list of next particles without decoding them
+            nodeId = onode.getChildNodeId();
+            beliefParticles.addAll(this.ipomcpTree.getNode(nodeId).getBeliefParticles());
+        }
+    }//end method.
+
+
     /**
      * Prints particles in the beginning while creating tree.
      */
@@ -697,13 +1241,13 @@ public class IPOMCP extends MDPSolver implements Planner,QProvider {
         System.out.println("Printing Tree For the Agent:" + this.currentAgentNumber);
         long start = System.currentTimeMillis();
 
-        String printString = "Tree Size:" + this.ipomcpTree.getBeliefTree().size();
+        String printString = "Tree Size:" + this.ipomcpTree.size();
         ArrayList<TreeNode> printStack = new ArrayList();
         ArrayList<Integer> levelIndex = new ArrayList<>();
         printStack.add(this.rootNode);
         int nodeAddCounter = 1;//Root node is added.
         levelIndex.add(nodeAddCounter);
-        //Get all the tree nodes in the tree until level 2 by getting hascodes from the observation nodes.
+        //Get all the tree nodes in the tree until level 2 by getting node IDs from the observation nodes.
         for(int level=0; level < 5; level++){
             int startIndex = printStack.size()-nodeAddCounter;
             int endIndex = printStack.size();
@@ -714,8 +1258,9 @@ public class IPOMCP extends MDPSolver implements Planner,QProvider {
                     //Get the list of observation node arrays.
                     for(ArrayList<ObservationNode> obsNodes: history.getObservationNodes()){
                         for(ObservationNode obsNode: obsNodes){
-                            if(this.ipomcpTree.getNode(obsNode.getChildHashCode()) != null){
-                                printStack.add(this.ipomcpTree.getNode(obsNode.getChildHashCode()));
+                            TreeNode childNode = this.ipomcpTree.getNode(obsNode.getChildNodeId());
+                            if(childNode != null && childNode.isVisited()){
+                                printStack.add(childNode);
                                 nodeAddCounter++;
                             }//end if.
                         }//end for.
@@ -773,70 +1318,84 @@ public class IPOMCP extends MDPSolver implements Planner,QProvider {
         }
 
 
-        //If the path does not exist in the tree, then go for roll out.
-        if( this.ipomcpTree.getBeliefTree().get(Objects.hashCode(currentNode.getPath())) == null){
-            //Create just a simple node copy with belief particles. No history element is added into the tree for this node.
-            TreeNode nodeToAdd = new TreeNode(currentNode,false);
-            //Add the node to the tree.
-            this.ipomcpTree.setNode(nodeToAdd);
-
+        //If the node has not been visited before, then go for roll out.
+        boolean isFirstVisit;
+        synchronized (currentNode){
+            isFirstVisit = !currentNode.isVisited();
+            currentNode.setVisited(true);
+        }//end synchronized.
+        if(isFirstVisit){
             //Get the reward and return the value.
             return rollOut(beliefParticle,currentNode,wildfireDomain);
         }else{
             try{
                 //Sample the FAC.
                 FrameActionConfiguration fac  = sampleFAC(beliefParticle,wildfireDomain);
-                //Check if the configuration already exist in the belief node or not.
-                branchNumber = currentNode.configExist(fac,this.isSingleConfigNode);
+                int bestActionIndex;
 
+                //The selection is done under the lock of the node for the tree-parallel search.
+                synchronized (currentNode){
+                    //Check if the configuration already exist in the belief node or not.
+                    branchNumber = currentNode.configExist(fac,this.isSingleConfigNode);
 
-                //Explore this node by adding a history element into the current node, if the FAC node did not exist.
-                if(branchNumber == -1){
-                   branchNumber = exploreNode(currentNode,fac,beliefParticle);
-                }else{
-                    if(this.isSingleConfigNode){
-                        currentNode.getHistoryElement().get(branchNumber).getConfigurationNode().setFac(fac);
-                    }//end if.
-                }//end if-else.
 
-                //Find the best action using the Q-Value of the Bandit Action.
-                int bestActionIndex = getBestBanditAction(currentNode,branchNumber);
+                    //Explore this node by adding a history element into the current node, if the FAC node did not exist.
+                    if(branchNumber == -1){
+                       branchNumber = exploreNode(currentNode,fac,beliefParticle);
+                    }else{
+                        if(this.isSingleConfigNode){
+                            currentNode.getHistoryElement().get(branchNumber).getConfigurationNode().setFac(fac);
+                        }//end if.
+                    }//end if-else.
+
+                    //Find the best action using the Q-Value of the Bandit Action.
+                    bestActionIndex = getBestBanditAction(currentNode,branchNumber);
+                    //Steer the other threads away from the action, until the simulation returns.
+                    currentNode.getHistoryElement().get(branchNumber)
+                            .getActionNodes().get(bestActionIndex).addVirtualLoss();
+                }//end synchronized.
 
-//                System.out.println("Path:" + currentNode.getPath() + " FAC:" + branchNumber + " Best Action:" + bestActionIndex);
+//                System.out.println("Node:" + currentNode.getNodeId() + " FAC:" + branchNumber + " Best Action:" + bestActionIndex);
                 //Simulate the environment. No new node added.
                 TreeNode nextTreeNode = blackBoxSimulator(beliefParticle,currentNode,branchNumber,bestActionIndex,false);
-
-                //Initialize the action node with the reward value.
-                if(currentNode.getHistoryElement().get(branchNumber)
-                        .getActionNodes().get(bestActionIndex).getNodeVisit() == 0){
-                    currentNode.getHistoryElement().get(branchNumber)
-                            .getActionNodes().get(bestActionIndex).setNodeQValue(nextTreeNode.getValue());
-                }//end if.
+                BeliefParticle nextParticle = this.simulatedParticle;
+                double nextReward = this.simulatedReward;
+
+                synchronized (currentNode){
+                    //Initialize the action node with the reward value.
+                    if(currentNode.getHistoryElement().get(branchNumber)
+                            .getActionNodes().get(bestActionIndex).getNodeVisit() == 0){
+                        currentNode.getHistoryElement().get(branchNumber)
+                                .getActionNodes().get(bestActionIndex).setNodeQValue(nextReward);
+                    }//end if.
 
 
-                //Increase the counters by 1.
-                currentNode.getHistoryElement().get(branchNumber)
-                        .getConfigurationNode().incrementVisit();
-                currentNode.getHistoryElement().get(branchNumber)
-                        .getActionNodes().get(bestActionIndex).incrementVisit();
+                    //Increase the counters by 1.
+                    currentNode.getHistoryElement().get(branchNumber)
+                            .getConfigurationNode().incrementVisit();
+                    currentNode.getHistoryElement().get(branchNumber)
+                            .getActionNodes().get(bestActionIndex).incrementVisit();
+                }//end synchronized.
 
 
 
                 //Increase the horizon value.
                 this.currentHorizon++;
 
-                if(nextTreeNode.getValue() > 0){
-//                    System.out.println("Visit:" + this.count + " Path:" + nextTreeNode.getPath());
+                if(nextReward > 0){
+//                    System.out.println("Visit:" + this.count + " Node:" + nextTreeNode.getNodeId());
                     this.treeRewardCount++;
                 }
 
                 //Recursively iterate through the tree to calculate reward of the next nodes.
-                reward = nextTreeNode.getValue()
-                        + this.gamma * simulate(nextTreeNode.getBeliefParticles().get(nextTreeNode.getBeliefParticles().size()-1),
-                        nextTreeNode, wildfireDomain);
+                reward = nextReward
+                        + this.gamma * simulate(nextParticle, nextTreeNode, wildfireDomain);
 
                 //Update Q-Value.
-                currentNode.getHistoryElement().get(branchNumber).getActionNodes().get(bestActionIndex).incrementQValue(reward);
+                synchronized (currentNode){
+                    currentNode.getHistoryElement().get(branchNumber).getActionNodes().get(bestActionIndex).incrementQValue(reward);
+                    currentNode.getHistoryElement().get(branchNumber).getActionNodes().get(bestActionIndex).removeVirtualLoss();
+                }//end synchronized.
             }catch (Exception e){
                 System.out.println("IPOMCP Simulator, creating the tree:" + e.getMessage());
                 e.printStackTrace();
@@ -877,7 +1436,7 @@ public class IPOMCP extends MDPSolver implements Planner,QProvider {
             actionNode.setAction(action);
 
             //Add action and observation nodes.
-            historyElement.getActionNodes().add(actionNode);
+            historyElement.addActionNode(actionNode);
             historyElement.getObservationNodes().add(new ArrayList<>());
         }//end for.
 
@@ -932,9 +1491,7 @@ public class IPOMCP extends MDPSolver implements Planner,QProvider {
         double reward = 0;
         FrameActionConfiguration rolloutFAC = null;
         HistoryElement rolloutHistoryElement = null;
-        ArrayList<Double> distribution = null;
-        double randomNumber;
-        double distributionSum = 0;
+        AliasSampler distribution = null;
         int randomActionIndex = 0;
         Action randomAction;
 
@@ -969,17 +1526,9 @@ public class IPOMCP extends MDPSolver implements Planner,QProvider {
             anonymousState.getSelfAgent().setAgentNumber(sampleAgentNumber);
 
             distribution = this.rolloutDistribution.get(this.senum.getEnumeratedID(anonymousState));
-            randomNumber= Math.random();
 
             //Select the action based on distribution and random number.
-
-            for(int actionIndex = 0 ; actionIndex < this.currentAgentAction.length ; actionIndex++){
-                distributionSum += distribution.get(actionIndex);
-                if(distributionSum > randomNumber){
-                    randomActionIndex = actionIndex;
-                    break;
-                }//end if.
-            }//end for
+            randomActionIndex = distribution.sample(this.generator.nextDouble());
 
 
             //Choose the action finally.
@@ -1002,19 +1551,20 @@ public class IPOMCP extends MDPSolver implements Planner,QProvider {
             obsNodes.add(new ArrayList<>());
             rolloutHistoryElement.setObservationNodes(obsNodes);
 
-            //Add the history element to the tree node.
+            //Add the history element to a roll out node, as the node might be in the tree.
             ArrayList<HistoryElement> historyElements = new ArrayList<>();
             historyElements.add(rolloutHistoryElement);
-            node.setHistoryElement(historyElements);
+            TreeNode rolloutNode = new TreeNode();
+            rolloutNode.setHistoryElement(historyElements);
 
 
             // Find the next node after performing fac and random action on the current belief sample.
             // No Addition of any nodes.
-            TreeNode nextBeliefNode = blackBoxSimulator(beliefParticle,node,0,0,true);
+            TreeNode nextBeliefNode = blackBoxSimulator(beliefParticle,rolloutNode,0,0,true);
 
 
             if(nextBeliefNode.getValue() > 0){
-//                System.out.println("In Rollout: Visit:" + this.count + " Path:" + node.getPath());
+//                System.out.println("In Rollout: Visit:" + this.count);
                 this.rolloutRewardCount++;
             }
 
@@ -1023,7 +1573,7 @@ public class IPOMCP extends MDPSolver implements Planner,QProvider {
 
             //Reward value calculation.
             //There is only one particle, which can be sampled here. So, nothing to worry about.
-            reward = nextBeliefNode.getValue() + this.gamma * rollOut(nextBeliefNode.sampleParticle(),nextBeliefNode,wildfireDomain);
+            reward = nextBeliefNode.getValue() + this.gamma * rollOut(nextBeliefNode.sampleParticle(this.generator.nextDouble()),nextBeliefNode,wildfireDomain);
 
         }catch (Exception e){
             System.out.println(e.getMessage());
@@ -1038,6 +1588,8 @@ public class IPOMCP extends MDPSolver implements Planner,QProvider {
      * This method finds the best action for the current agent by iterating through all the actions availabie to
      * that agent and calculating the Q-Value for each.
      *  Argmax_a  Q(p,a,C_h) +  C * ( log(C_h count) / (A_i count))^1/2
+     * In the tree-parallel search, each simulation still passing through an action is a virtual loss, which counts as
+     * a visit and reduces the Q-value by C / (A_i count). Without any simulation in progress, it is the same as above.
      * @param node is the current node being explored.
      * @param branch is the history element of the node being explored.
      * @return is the index of the best action available at the current node.
@@ -1049,20 +1601,28 @@ public class IPOMCP extends MDPSolver implements Planner,QProvider {
 
         //Get information of the configuration node.
         FACNode facNode = node.getHistoryElement().get(branch).getConfigurationNode();
-        //Get all the action nodes.
-        ArrayList<ActionNode> actionNodes = node.getHistoryElement().get(branch).getActionNodes();
+        //Get the statistics of all the action nodes.
+        ActionStatistics actionStatistics = node.getHistoryElement().get(branch).getActionStatistics();
+        int[] nodeVisits = actionStatistics.getNodeVisits();
+        double[] nodeQValues = actionStatistics.getNodeQValues();
+        int[] virtualLosses = actionStatistics.getVirtualLosses();
+        double logFACVisits = Math.log(Math.max(1,facNode.getNodeVisit()));
 
         //Choose the best action
-        for(int actionNode = 0 ; actionNode < actionNodes.size(); actionNode++){
+        for(int actionNode = 0 ; actionNode < actionStatistics.size(); actionNode++){
+
+            //Visits including the simulations in progress.
+            int actionVisits = nodeVisits[actionNode] + virtualLosses[actionNode];
 
             //As the counter of the action is zero, the Q-value would be infinite.
             //Else choose an action with the highest value.
-            if(actionNodes.get(actionNode).getNodeVisit() == 0){
+            if(actionVisits == 0){
                 bestActionIndex = actionNode;
                 break;
             }else{
-                double banditQValue = actionNodes.get(actionNode).getNodeQValue() +
-                                        this.C * Math.sqrt( (Math.log(facNode.getNodeVisit())/ actionNodes.get(actionNode).getNodeVisit()));
+                double banditQValue = nodeQValues[actionNode]
+                                        - this.C * virtualLosses[actionNode] / actionVisits
+                                        + this.C * Math.sqrt( logFACVisits / actionVisits);
                 if( banditQValue > bestActionValue){
                     bestActionIndex = actionNode;
                     bestActionValue = banditQValue;
@@ -1130,6 +1690,68 @@ public class IPOMCP extends MDPSolver implements Planner,QProvider {
 
             sampleNeighbors(fire, n);
         }
+
+        //Find the group of each sampled agent once, for the policy states.
+        this.sampledAgentGroups = new int[this.sampledAgents.size()];
+        this.sampledAgentStartIndexes = new int[this.sampledAgents.size()];
+        for (int agent = 0; agent < this.sampledAgents.size(); agent++) {
+            String agentGroup = this.sampledAgents.get(agent).getAgentGroup();
+            this.sampledAgentGroups[agent] = wildfireDomain.agentGroups.indexOf(agentGroup);
+            this.sampledAgentStartIndexes[agent] = Integer.parseInt(agentGroup.split("-")[0]);
+        }
+    }
+
+
+    /**
+     * This method creates the policy state template of each group of the sampled agents from the anonymous state of
+     * the current agent, and an empty policy state cache. The policy state of a sampled agent is then decoded from the
+     * template of its group, without creating the other agent's state from the particle state.
+     * @param anonymousState is the anonymous state of the current agent, with the same fires as the particles.
+     */
+    private void preparePolicyStates(WildfireAnonymousState anonymousState){
+        int groupCount = this.wildfireDomain.agentGroups.size();
+        String currentGroup = this.wildfireDomain.agentsList.get(anonymousState.getSelfAgent().getAgentNumber()).getAgentGroup();
+        this.policyStateTemplates = new WildfireAnonymousState[groupCount];
+        this.policyStateFireSources = new int[groupCount][];
+        this.policyStateCount = 0;
+
+        for(int agent = 0; agent < this.sampledAgentGroups.length; agent++){
+            int group = this.sampledAgentGroups[agent];
+            if(this.policyStateTemplates[group] != null){
+                continue;
+            }//end if.
+            String agentGroup = this.wildfireDomain.agentGroups.get(group);
+
+            //Create Other agent's state, with the first agent in the group as the self agent to find the action from the policy.
+            WildfireAnonymousState template = (WildfireAnonymousState) Wildfire.createOtherAgentAnmState(this.wildfireDomain,
+                    agentGroup, anonymousState);
+            template.getSelfAgent().setAgentNumber(this.sampledAgentStartIndexes[agent]);
+
+            //Find the fire of the particle state copied to each fire of the template, as in the other agent's state.
+            int[] fireSources = new int[template.getFireList().length];
+            Arrays.fill(fireSources, -1);
+            if(agentGroup.equals(currentGroup)){
+                for(int fireIndex = 0; fireIndex < fireSources.length; fireIndex++){
+                    fireSources[fireIndex] = fireIndex;
+                }//end for.
+            }else{
+                ArrayList<Integer> visibleFires = this.wildfireDomain.agentVisibleFires.get(agentGroup);
+                for(int fireIndex = 0; fireIndex < visibleFires.size(); fireIndex++){
+                    for(int currentFire = 0; currentFire < anonymousState.getFireList().length; currentFire++){
+                        if(anonymousState.getFireList()[currentFire].getFireNumber() == visibleFires.get(fireIndex)){
+                            fireSources[fireIndex] = currentFire;
+                            break;
+                        }//end if.
+                    }//end for.
+                }//end for.
+            }//end if-else.
+
+            this.policyStateTemplates[group] = template;
+            this.policyStateFireSources[group] = fireSources;
+            this.policyStateCount = Math.max(this.policyStateCount, template.numberOfStates());
+        }//end for.
+
+        this.policyStateCache = new AtomicReferenceArray<>(groupCount * this.policyStateCount);
     }
 
     /**
@@ -1210,37 +1832,43 @@ public class IPOMCP extends MDPSolver implements Planner,QProvider {
 
     /**
      * Sample the particleCount number of particles from the list of particles available in the root node.
-     * If no particles available, sample them randomly.
+     * If no particles available, sample them randomly. If there are already particleCount particles, their mental
+     * models are kept one to one, and drawn uniformly otherwise. All the particles share the initial state, so the state
+     * is encoded once and only the mental models are packed for each particle.
      * @param initialState is the initial Wildfire state.
      * @param masterState is initial Master state.
      * @param currentParticles is the belief particles in the root node.
      * @return is the sampled particles.
      */
-     public ArrayList<BeliefParticle> sampleBeliefParticles(State initialState,State masterState, ArrayList<BeliefParticle> currentParticles){
+     public ParticleStore sampleBeliefParticles(State initialState,State masterState, ParticleStore currentParticles){
 
          //Belief Particles.
-         ArrayList<BeliefParticle> beliefParticles = new ArrayList<BeliefParticle>();
+         ParticleStore beliefParticles = new ParticleStore(this.particleCount);
+         int initialStateId = ((WildfireAnonymousState) initialState).encode();
          int randomParticle = -1;
 
          try{
              //Sample particles up to maximum limit.
              for(int particle=0; particle < this.particleCount; particle++){
-                 //Copy the initial state to all the particles.
-                 State beliefStateParticle = new WildfireAnonymousState((WildfireAnonymousState) initialState);
-
                  ArrayList<Integer> mentalModel = null;
                  //If the particles are already available after belief update, choose one from them. Sample
                  //totally random otherwise.
-                 if(currentParticles != null && currentParticles.size() != 0){
-                     randomParticle = (int)Math.round(Math.random() * (currentParticles.size()-1));
-                     mentalModel = currentParticles.get(randomParticle).getMentalModels();
+                 if(currentParticles != null && currentParticles.size() == this.particleCount){
+                     mentalModel = currentParticles.getMentalModels(particle);
+                 }else if(currentParticles != null && currentParticles.size() != 0){
+                     randomParticle = (int)(this.generator.nextDouble() * currentParticles.size());
+                     mentalModel = currentParticles.getMentalModels(randomParticle);
                  }else{
                      mentalModel = sampleRandMentalModel();
                  }//end if-else.
 
 
-                 //Add the particle into the list.
-                 beliefParticles.add(new BeliefParticle(beliefStateParticle,mentalModel));
+                 //Add the particle into the store. The first particle sets the template of the store.
+                 if(particle == 0){
+                     beliefParticles.add(new BeliefParticle(initialState,mentalModel));
+                 }else{
+                     beliefParticles.add(initialStateId,mentalModel);
+                 }//end if-else.
              }//end for.
          }catch (Exception e){
              System.out.println("Error while sampling particles:" + e.getMessage());
@@ -1308,8 +1936,10 @@ public class IPOMCP extends MDPSolver implements Planner,QProvider {
      * This method samples the Frame Action Configuration given the mental models of the sampled agents and the
      * sampled state. To find the action of the agent in current circumstances, the policies of the agents are
      * being loaded into the IPOMCP.agentPolicies variable, while the method uses IPOMCP.possibleConfiguration
-     * for finding the type-total agent pair to extrapolate the sampled action from the policy. In the end the
-     * overall FAC is returned.
+     * for finding the type-total agent pair to extrapolate the sampled action from the policy. The extrapolation
+     * samples the agents of each type-action pair exactly from the multinomial distribution of the type truncated to the
+     * max configuration, see {@link #sampleTypeConfigurations(FrameActionConfiguration, int, double[])}.
+     * In the end the overall FAC is returned.
      * @param beliefParticle contains the state and mental models for calculating the fac.
      * @param wildfireDomain is the wildfireDomain object.
      * @return is the sampled FAC.
@@ -1322,43 +1952,52 @@ public class IPOMCP extends MDPSolver implements Planner,QProvider {
          double[] actionDistribution = new double[this.possibleMaxConfiguration.getMaxConfiguration().length];
 
          //For each sampled agent, find the best action from the policy and mental model.
+         WildfireAnonymousState particleState = (WildfireAnonymousState)beliefParticle.getStateParticle();
          for(int agent=0; agent < this.sampledAgents.size() ; agent++){
-             //Create Other agent's state.
-             State otherAgentState = Wildfire.createOtherAgentAnmState(wildfireDomain,this.sampledAgents.get(agent).getAgentGroup(),
-                     beliefParticle.getStateParticle());
-             //Set the Availability according to the sampled Mental model.
-             ((WildfireAnonymousState)otherAgentState).getSelfAgent().setAvailability(beliefParticle.getMentalModels().get(agent));
-             //Also, set the agent's self agent as the first agent in the group to find the action from the policy.
-             ArrayList<String> startEndIndexes =new ArrayList<> (Arrays.asList(this.sampledAgents.get(agent).getAgentGroup().split("-")));
-             int startIndex = Integer.parseInt(startEndIndexes.get(0));
-             ((WildfireAnonymousState)otherAgentState).getSelfAgent().setAgentNumber(startIndex);
-
-             //Get the Action from the policy file.
-             Action action = this.agentPolicies
-                                .get(((WildfireAnonymousState) otherAgentState).getSelfAgent().getAgentGroup())
-                                .action(otherAgentState);
+             int powerType = this.sampledAgents.get(agent).getPowerType();
+             //Get the other agent's state from the cache, or decode it from the template of the group for a new state.
+             //The availability is set according to the sampled mental model.
+             int group = this.sampledAgentGroups[agent];
+             int policyStateId = policyStateId(group, particleState, beliefParticle.getMentalModels().get(agent));
+             int cacheIndex = group * this.policyStateCount + policyStateId;
+             State otherAgentState = this.policyStateCache.get(cacheIndex);
+             if(otherAgentState == null){
+                 otherAgentState = this.policyStateTemplates[group].decode(policyStateId);
+                 this.policyStateCache.set(cacheIndex, otherAgentState);
+             }//end if.
+
+             //Sample the action from the policy, with the random numbers of the planner for the NMDP policies.
+             Policy agentPolicy = this.agentPolicies
+                                    .get(((WildfireAnonymousState) otherAgentState).getSelfAgent().getAgentGroup());
+             Action action;
+             if(agentPolicy instanceof OtherAgentsNMDPPolicy){
+                 action = ((OtherAgentsNMDPPolicy)agentPolicy).sampleAction(otherAgentState, this.generator.nextDouble());
+             }else{
+                 action = agentPolicy.action(otherAgentState);
+             }//end if-else.
              //Set the sampled agent action for a help in mental models.
-             beliefParticle.getSampledActions().add(action);
+             //The particle might be sampled by other threads in the tree-parallel search.
+             synchronized (beliefParticle){
+                 beliefParticle.getSampledActions().add(action);
+             }//end synchronized.
 
 
              //If the configuration exist, then get the configuration and add 1 to the value.
-             int typeActionIndex = sampledFAC.search(((WildfireAnonymousState) otherAgentState).getSelfAgent().getPowerType(),action.actionName());
+             int typeActionIndex = sampledFAC.search(powerType,action.actionName());
              //If the pair does not exist than start with 1, otherwise add 1 to the current pair.
              if(typeActionIndex == -1){
-                 sampledFAC.putCurrentConfiguration(((WildfireAnonymousState) otherAgentState).getSelfAgent().getPowerType(),
-                         action,1);
+                 sampledFAC.putCurrentConfiguration(powerType,action,1);
              }else{
                  int numOfAgents = sampledFAC.getCurrentConfiguration()[typeActionIndex].getNumberOfAgents();
 
-                 sampledFAC.putCurrentConfiguration(((WildfireAnonymousState) otherAgentState).getSelfAgent().getPowerType(),
-                         action,numOfAgents+1);
+                 sampledFAC.putCurrentConfiguration(powerType,action,numOfAgents+1);
              }//end if-else.
 
              //Get the number of sampled agents per type. Create a new map of the agents, if not created or add one.
-             if(sampledAgentsPerType.get(this.sampledAgents.get(agent).getPowerType()) == null){
-                 sampledAgentsPerType.put(this.sampledAgents.get(agent).getPowerType(),1);
+             if(sampledAgentsPerType.get(powerType) == null){
+                 sampledAgentsPerType.put(powerType,1);
              }else{
-                 sampledAgentsPerType.put(this.sampledAgents.get(agent).getPowerType(),sampledAgentsPerType.get(this.sampledAgents.get(agent).getPowerType()) + 1);
+                 sampledAgentsPerType.put(powerType,sampledAgentsPerType.get(powerType) + 1);
              }//end if -else.
          }//end loop.
 
@@ -1369,52 +2008,150 @@ public class IPOMCP extends MDPSolver implements Planner,QProvider {
         }//end for.
 
 
-        int counter = 0;
+        //Sample the number of agents of each type-action pair from the multinomial distribution of the type,
+        //truncated to the max configuration.
         for(int typeIndex = 0 ; typeIndex < extraPolatedFAC.getAgentTypes().length ; typeIndex++){
-             //Get the type of the agents.
-             int type = extraPolatedFAC.getAgentTypes()[typeIndex][0];
-             //Iterate through actions for each agents.
-            for(int agentIndex = 0 ; agentIndex < extraPolatedFAC.getAgentTypes()[typeIndex][1];){
-                double randomNumber = Math.random();
-
-                double cumulativeSum = 0;
-                for(int configCount = 0; configCount < extraPolatedFAC.getMaxConfiguration().length ; configCount++){
-                    if(extraPolatedFAC.getMaxConfiguration()[configCount].getAgentType() == type){
-                        //Current action.
-                        Action action = extraPolatedFAC.getMaxConfiguration()[configCount].getAction();
-                        cumulativeSum += actionDistribution[configCount];
-                        if(cumulativeSum >= randomNumber){
-                            //If the configuration exist, then get the configuration and add 1 to the value.
-                            int typeActionIndex = extraPolatedFAC.search(type,action.actionName());
-
-                            //If the agents are already touching the max then regenerate the random number.
-                            if(extraPolatedFAC.getCurrentConfiguration()[typeActionIndex].getNumberOfAgents()
-                                    == extraPolatedFAC.getMaxConfiguration()[typeActionIndex].getNumberOfAgents()){
-                                break;
-                            }
-
-                            agentIndex++;
-                            counter++;
-                            //If the pair does not exist than start with 1, otherwise add 1 to the current pair.
-                            if(typeActionIndex == -1){
-                                extraPolatedFAC.putCurrentConfiguration(type,action,1);
-                            }else{
-                                int numOfAgents = extraPolatedFAC.getCurrentConfiguration()[typeActionIndex].getNumberOfAgents();
-                                extraPolatedFAC.putCurrentConfiguration(type,action,numOfAgents+1);
-                            }//end if-else.
-                            break;
-                        }//end if.
+             sampleTypeConfigurations(extraPolatedFAC, typeIndex, actionDistribution);
+        }//end for.
+
+         return extraPolatedFAC;
+    }
+
+
+    /**
+     * This method encodes the policy state of an agent group for a particle state, the same way as
+     * {@link WildfireAnonymousState#encode()} encodes the other agent's state, without creating the state.
+     * @param group is the index of the agent group.
+     * @param state is the anonymous state of the particle.
+     * @param availability is the availability of the sampled agent from the mental model.
+     * @return is the encoded policy state.
+     */
+    private int policyStateId(int group, WildfireAnonymousState state, int availability){
+        Fire[] templateFires = this.policyStateTemplates[group].getFireList();
+        int[] fireSources = this.policyStateFireSources[group];
+        int stateId = availability;
+        for(int fire = fireSources.length - 1; fire >= 0; fire--){
+            int intensity = (fireSources[fire] >= 0) ? state.getFireList()[fireSources[fire]].getIntensity()
+                                                      : templateFires[fire].getIntensity();
+            stateId = stateId * WildfireParameters.MAX_FIRE_STATES + intensity;
+        }//end for.
+        return stateId;
+    }
+
+
+    /**
+     * This method samples the number of agents of each type-action pair of a type exactly from the multinomial
+     * distribution of the type, truncated to the max agents of each pair, and puts them in the given FAC.
+     * The truncated distribution is sampled pair by pair from the conditional distribution of each pair given the
+     * remaining agents. With the rate l(j) = n * p(j) of the pair j, the weight W(j,r) of placing r agents on the pairs
+     * from j onwards sums l(j)^a / a! * W(j+1,r-a) over a up to the max agents of j, and the pair j gets a agents with
+     * the probability l(j)^a / a! * W(j+1,r-a) / W(j,r). The weights are computed backwards once per type, so the cost
+     * does not depend on the number of sampled agents. If no pair with a non-zero probability can take the remaining
+     * agents, the agents are spread uniformly within the max agents of the pairs.
+     * @param fac is the FAC to put the agents in.
+     * @param typeIndex is the index of the type in the agent types of the FAC.
+     * @param actionDistribution is the probability of each type-action pair of the max configuration within its type.
+     */
+    private void sampleTypeConfigurations(FrameActionConfiguration fac, int typeIndex, double[] actionDistribution){
+        int type = fac.getAgentTypes()[typeIndex][0];
+        int totalAgents = fac.getAgentTypes()[typeIndex][1];
+        int configLength = fac.getMaxConfiguration().length;
+
+        //Configurations of the type.
+        int typeConfigCount = 0;
+        if(this.typeConfigScratch == null || this.typeConfigScratch.length < configLength){
+            this.typeConfigScratch = new int[configLength];
+        }//end if.
+        int[] typeConfigs = this.typeConfigScratch;
+        for(int configCount = 0; configCount < configLength ; configCount++){
+            if(fac.getMaxConfiguration()[configCount].getAgentType() == type){
+                typeConfigs[typeConfigCount++] = configCount;
+            }//end if.
+        }//end for.
+
+        //Weights of the remaining agents, at (typeConfig * (totalAgents + 1) + remainingAgents).
+        int width = totalAgents + 1;
+        if(this.truncatedWeightScratch == null || this.truncatedWeightScratch.length < (typeConfigCount + 1) * width){
+            this.truncatedWeightScratch = new double[(typeConfigCount + 1) * width];
+        }//end if.
+        double[] weights = this.truncatedWeightScratch;
+        boolean isUniform = !fillTruncatedWeights(fac, typeConfigs, typeConfigCount, totalAgents, actionDistribution, false);
+        if(isUniform && !fillTruncatedWeights(fac, typeConfigs, typeConfigCount, totalAgents, actionDistribution, true)){
+            throw new IllegalStateException("The max configuration can not take the " + totalAgents
+                    + " agents of the type " + type + ".");
+        }//end if.
+
+        int remainingAgents = totalAgents;
+        for(int typeConfig = 0; typeConfig < typeConfigCount && remainingAgents > 0 ; typeConfig++){
+            int configCount = typeConfigs[typeConfig];
+            int maxAgents = Math.min(fac.getMaxConfiguration()[configCount].getNumberOfAgents(), remainingAgents);
+            double rate = isUniform ? 1.0 : totalAgents * actionDistribution[configCount];
+
+            //Invert the conditional distribution of the pair given the remaining agents.
+            double pointer = this.generator.nextDouble() * weights[typeConfig * width + remainingAgents];
+            int numOfAgents = 0;
+            double term = 1.0;
+            double cumulativeWeight = term * weights[(typeConfig + 1) * width + remainingAgents];
+            while(numOfAgents < maxAgents && cumulativeWeight <= pointer){
+                numOfAgents++;
+                term *= rate / numOfAgents;
+                cumulativeWeight += term * weights[(typeConfig + 1) * width + remainingAgents - numOfAgents];
+            }//end while.
+            //Skip the counts which can not be completed by the next pairs, in case of the rounding at the end.
+            while(weights[(typeConfig + 1) * width + remainingAgents - numOfAgents] == 0 && numOfAgents > 0){
+                numOfAgents--;
+            }//end while.
+
+            if(numOfAgents > 0){
+                //Add the agents to the current pair, if it exists.
+                Action action = fac.getMaxConfiguration()[configCount].getAction();
+                int typeActionIndex = fac.search(type,action.actionName());
+                int currentAgents = (typeActionIndex == -1) ? 0
+                                       : fac.getCurrentConfiguration()[typeActionIndex].getNumberOfAgents();
+                fac.putCurrentConfiguration(type,action,currentAgents+numOfAgents);
+                remainingAgents -= numOfAgents;
+            }//end if.
+        }//end for.
+    }
+
+
+    /**
+     * This method computes the weights of the truncated multinomial distribution of a type backwards from its last
+     * type-action pair, into the weight scratch of the planner.
+     * @param fac is the FAC with the max configuration.
+     * @param typeConfigs is the index of each type-action pair of the type in the max configuration.
+     * @param typeConfigCount is the number of the type-action pairs of the type.
+     * @param totalAgents is the number of the agents of the type.
+     * @param actionDistribution is the probability of each type-action pair of the max configuration within its type.
+     * @param isUniform is true to use the same probability for all the pairs.
+     * @return is true if all the agents of the type can be placed with a non-zero probability.
+     */
+    private boolean fillTruncatedWeights(FrameActionConfiguration fac, int[] typeConfigs, int typeConfigCount,
+                                         int totalAgents, double[] actionDistribution, boolean isUniform){
+        int width = totalAgents + 1;
+        double[] weights = this.truncatedWeightScratch;
+        //No pairs are left after the last pair, so only zero agents can be placed.
+        Arrays.fill(weights, typeConfigCount * width, (typeConfigCount + 1) * width, 0.0);
+        weights[typeConfigCount * width] = 1.0;
+
+        for(int typeConfig = typeConfigCount - 1; typeConfig >= 0 ; typeConfig--){
+            int configCount = typeConfigs[typeConfig];
+            int maxAgents = fac.getMaxConfiguration()[configCount].getNumberOfAgents();
+            double rate = isUniform ? 1.0 : totalAgents * actionDistribution[configCount];
+            for(int remainingAgents = 0; remainingAgents <= totalAgents ; remainingAgents++){
+                double weight = 0.0;
+                double term = 1.0;
+                for(int numOfAgents = 0; numOfAgents <= Math.min(maxAgents, remainingAgents) ; numOfAgents++){
+                    if(numOfAgents > 0){
+                        term *= rate / numOfAgents;
                     }//end if.
+                    weight += term * weights[(typeConfig + 1) * width + remainingAgents - numOfAgents];
                 }//end for.
+                weights[typeConfig * width + remainingAgents] = weight;
             }//end for.
         }//end for.
 
-        if(counter != extraPolatedFAC.getTotalAgents()){
-            System.out.println("Problem in sampling FAC.");
-            System.exit(0);
-        }
-
-         return extraPolatedFAC;
+        return weights[totalAgents] > 0;
     }
 
 
@@ -1451,8 +2188,6 @@ public class IPOMCP extends MDPSolver implements Planner,QProvider {
         BeliefParticle nextBeliefParticle = null;
         //Fire Observation.
         FireObservation fireObservation = null;
-        //Path
-        String path = null;
         try{
             //Get the observation, next state and the reward.
 
@@ -1462,72 +2197,75 @@ public class IPOMCP extends MDPSolver implements Planner,QProvider {
             //Create a new mental model.
             //Get the next mental model after the transition.
             ArrayList<Integer> nextMentalModels = new ArrayList<>();
-            for(int mentalModel = 0 ; mentalModel < beliefParticle.getMentalModels().size() ; mentalModel++){
-                nextMentalModels.add(
-                        this.jointIPOMCPModel.sampleInternalTransition(beliefParticle.getMentalModels().get(mentalModel)
-                                ,beliefParticle.getSampledActions().get(mentalModel)));
-            }
+            synchronized (beliefParticle){
+                for(int mentalModel = 0 ; mentalModel < beliefParticle.getMentalModels().size() ; mentalModel++){
+                    nextMentalModels.add(
+                            this.jointIPOMCPModel.sampleInternalTransition(beliefParticle.getMentalModels().get(mentalModel)
+                                    ,beliefParticle.getSampledActions().get(mentalModel)));
+                }
+            }//end synchronized.
+
+            //Get the action and the configuration of the branches.
+            Action action;
+            FrameActionConfiguration fac;
+            synchronized (treeNode){
+                action = treeNode.getHistoryElement().get(facIndex).getActionNodes().get(actionIndex).getAction();
+                fac = treeNode.getHistoryElement().get(facIndex).getConfigurationNode().getFac();
+            }//end synchronized.
 
             //Sample the observation and then create the Observation node.
             fireObservation = (FireObservation) (this.wildfireDomain.getPartialObservationFunction().sample
-                    (beliefParticle.getStateParticle(), nextState,
-                            treeNode.getHistoryElement().get(facIndex).getActionNodes()
-                                    .get(actionIndex).getAction()));
+                    (beliefParticle.getStateParticle(), nextState, action));
 
 
-            //Get the Path string
-            path = treeNode.getPath() + "-" + facIndex + "-" + actionIndex ;
-
-            //Add the observation index to path.
-
-
-
-            boolean createNewNode = false;
+            nextBeliefParticle = new BeliefParticle(nextState,nextMentalModels);
 
             //If it's not roll out, search for the nodes in the existing tree.
             if(!isRollout){
-                int obsIndex = treeNode.obsExist(facIndex,actionIndex,fireObservation);
-                if(obsIndex != -1 ){
-                    path += "-" + obsIndex;
-                    //Get the existing node if it exist, and add the belief particle as well as increment the visit value.
-                    nextBeliefNode = this.ipomcpTree.getNode(Objects.hashCode(path));
-                    nextBeliefParticle = new BeliefParticle(nextState,nextMentalModels);
-                    nextBeliefNode.getBeliefParticles().add(nextBeliefParticle);
-                }else{
-                    path += "-" + (treeNode.getHistoryElement().get(facIndex).getObservationNodes().get(actionIndex).size());
-                    createNewNode = true;
-                }//end if-else.
-            }//end if.
-
-
-
-            if(createNewNode || isRollout){//In case of roll out.
+                synchronized (treeNode){
+                    ArrayList<ObservationNode> observationNodes = treeNode.getHistoryElement().get(facIndex)
+                                                                            .getObservationNodes().get(actionIndex);
+                    int obsIndex = treeNode.obsExist(facIndex,actionIndex,fireObservation);
+                    if(obsIndex != -1 ){
+                        //Get the existing node, and add the belief particle.
+                        nextBeliefNode = this.ipomcpTree.getNode(observationNodes.get(obsIndex).getChildNodeId());
+                    }else{
+                        //Create a new Node.
+                        nextBeliefNode = new TreeNode();
+
+                        //Don't add any observation or the node on the maximum horizon.
+                        if(this.currentHorizon != this.maxHorizons-1){
+                            //Add the node to the tree, which would be rolled out on its first visit.
+                            int nodeId = this.ipomcpTree.addNode(nextBeliefNode);
+                            //Add the observation node to the current tree with the node reference.
+                            observationNodes.add(new ObservationNode(fireObservation,nodeId));
+                        }//end if.
+                    }//end if-else.
+                }//end synchronized.
+
+                //Only the particles of the children of the root are harvested for the belief update, so the deeper
+                //nodes keep a bounded reservoir sample, if set.
+                synchronized (nextBeliefNode){
+                    if(this.currentHorizon == 0 || this.particleReservoirSize < 0){
+                        nextBeliefNode.getBeliefParticles().add(nextBeliefParticle);
+                    }else if(this.particleReservoirSize > 0){
+                        nextBeliefNode.getBeliefParticles().offer(nextBeliefParticle,this.particleReservoirSize,
+                                this.generator.nextDouble());
+                    }//end if-else.
+                }//end synchronized.
+            }else{//In case of roll out.
                 //Create a new Node, but don't add it to the tree.
                 nextBeliefNode = new TreeNode();
-                nextBeliefParticle = new BeliefParticle(nextState,nextMentalModels);
                 nextBeliefNode.getBeliefParticles().add(nextBeliefParticle);
-
-                //Set the path.
-                nextBeliefNode.setPath(path);
-
-
-                //Don't add any observation on the maximum horizon.
-                if(this.currentHorizon != this.maxHorizons-1){
-                    //Set the observation node reference.
-                    ObservationNode observationNode = new ObservationNode(fireObservation,nextBeliefNode.hashCode());
-                    //Add the observation node to the current tree.
-                    treeNode.getHistoryElement().get(facIndex).getObservationNodes().get(actionIndex).add(observationNode);
-                }//end if.
-            }//end if.
+            }//end if-else.
 
             //Set Reward for the next node.
-            nextBeliefNode.setValue(this.rewardFunction.reward(beliefParticle.getStateParticle(),
-                    treeNode.getHistoryElement().get(facIndex).getActionNodes().get(actionIndex).getAction(),
-                    treeNode.getHistoryElement().get(facIndex).getConfigurationNode().getFac(),
-                    nextState));
+            this.simulatedReward = this.rewardFunction.reward(beliefParticle.getStateParticle(), action, fac, nextState);
+            this.simulatedParticle = nextBeliefParticle;
+            nextBeliefNode.setValue(this.simulatedReward);
         }catch (Exception e){
             System.out.println("Node:" + nextBeliefNode);
-            System.out.println("Path" + path + " Hashcode:" + Objects.hashCode(path));
+            System.out.println("Parent Node:" + treeNode.getNodeId() + " FAC:" + facIndex + " Action:" + actionIndex);
         }
 
 
@@ -1546,20 +2284,39 @@ public class IPOMCP extends MDPSolver implements Planner,QProvider {
         long start = System.currentTimeMillis();
         FireObservation fireObservation = (FireObservation)realObservation;
 
-        // grab the correct particle filter
-        ArrayList<BeliefParticle> beliefParticles = this.nextParticles.get(fireObservation.getFireDifference());
+        //Weight and resample the next particles with the real observation.
+        ParticleStore beliefParticles = filterParticles(fireObservation,realAction);
         System.out.println(this.currentAgentNumber +": " + beliefParticles.size());
 
-        //Set it to the new root node.
-        TreeNode newRootNode = new TreeNode();
-        newRootNode.setBeliefParticles(beliefParticles);
+        //Find the node reached by the real action and observation, if the tree is reused.
+        TreeNode reusedNode = null;
+        if(this.lastBestActionIndex != -1 && this.rootNode.getHistoryElement().size() > 0){
+            for(ObservationNode onode : this.rootNode.getHistoryElement().get(0).getObservationNodes().get(this.lastBestActionIndex)){
+                if(fireObservation.equals(onode.getObservation())){
+                    reusedNode = this.ipomcpTree.getNode(onode.getChildNodeId());
+                    break;
+                }//end if.
+            }//end for.
+        }//end if.
+
+        if(reusedNode != null){
+            //Promote the node to the root with its history elements, visits and Q-values.
+            reusedNode.setBeliefParticles(beliefParticles);
+            this.ipomcpTree = this.ipomcpTree.extractSubtree(reusedNode);
+            this.rootNode = reusedNode;
+        }else{
+            //Set it to the new root node.
+            TreeNode newRootNode = new TreeNode();
+            newRootNode.setBeliefParticles(beliefParticles);
 
-        //Trash the IPOCMP Tree, and create a new instance.
-        ipomcpTree = new IPOMCPTree();
+            //Trash the IPOCMP Tree, and create a new instance.
+            ipomcpTree = new IPOMCPTree();
 
-        //Set the root to the new root node.
-        this.rootNode = newRootNode;
-        this.ipomcpTree.setNode(rootNode);
+            //Set the root to the new root node.
+            this.rootNode = newRootNode;
+            this.ipomcpTree.setRoot(rootNode);
+        }//end if-else.
+        this.lastBestActionIndex = -1;
         long end = System.currentTimeMillis();
 //        System.out.println("Belief Update in TIME:" + (end-start));
     }
@@ -1567,6 +2324,86 @@ public class IPOMCP extends MDPSolver implements Planner,QProvider {
 
 
 
+    /**
+     * This method is the weighted particle filter step of the belief update. The next particles of all the observations
+     * under the real action are weighted by the probability of the real observation given the state of the root and
+     * their next state, and resampled into particleCount particles with the systematic resampling. If the effective
+     * sample size of the weights is low, a part of the particles is replaced by the particles with random mental models,
+     * so the belief does not collapse when only a few simulations reached the real observation.
+     * @param realObservation is the actual observation received from game engine.
+     * @param realAction is the last action performed.
+     * @return is the particles of the updated belief.
+     */
+    private ParticleStore filterParticles(FireObservation realObservation, Action realAction){
+        //Pool the particles of all the observations.
+        ParticleStore pooledParticles = new ParticleStore();
+        for(ParticleStore particles : this.nextParticles.values()){
+            pooledParticles.addAll(particles);
+        }//end for.
+        WildfireAnonymousState rootState = this.rootNode.getBeliefParticles().getTemplate();
+        if(pooledParticles.size() == 0 || rootState == null){
+            return pooledParticles;
+        }//end if.
+
+        //Weight the particles by the observation probability, which only depends on the next state of the particle.
+        PartialObservationFunction observationFunction = this.wildfireDomain.getPartialObservationFunction();
+        Map<Integer,Double> stateWeights = new HashMap<>();
+        double[] weights = new double[pooledParticles.size()];
+        double totalWeight = 0.0;
+        double squaredWeight = 0.0;
+        for(int particle = 0; particle < pooledParticles.size(); particle++){
+            int stateId = pooledParticles.getStateId(particle);
+            Double weight = stateWeights.get(stateId);
+            if(weight == null){
+                State nextState = pooledParticles.getTemplate().decode(stateId);
+                weight = Math.max(observationFunction.probability(realObservation,rootState,nextState,realAction), 0.0);
+                stateWeights.put(stateId,weight);
+            }//end if.
+            weights[particle] = weight;
+            totalWeight += weight;
+            squaredWeight += weight * weight;
+        }//end for.
+
+        //If none of the particles explains the observation, keep the particles of the real observation.
+        if(totalWeight == 0.0){
+            ParticleStore observedParticles = this.nextParticles.get(realObservation.getFireDifference());
+            return (observedParticles != null) ? observedParticles : new ParticleStore();
+        }//end if.
+
+        //Inject the new particles if the effective sample size is low.
+        double effectiveSampleSize = (totalWeight * totalWeight) / squaredWeight;
+        int injectedCount = 0;
+        if(effectiveSampleSize < MIN_EFFECTIVE_SAMPLE_RATIO * this.particleCount){
+            injectedCount = Math.min((int)Math.round(PARTICLE_INJECTION_RATIO * this.particleCount), this.particleCount - 1);
+        }//end if.
+        int resampledCount = this.particleCount - injectedCount;
+
+        //Systematic resampling: one random offset, and evenly spaced pointers over the cumulative weights.
+        ParticleStore resampledParticles = new ParticleStore(this.particleCount);
+        double step = totalWeight / resampledCount;
+        double pointer = this.generator.nextDouble() * step;
+        double cumulativeWeight = weights[0];
+        int particle = 0;
+        for(int sample = 0; sample < resampledCount; sample++){
+            while(pointer >= cumulativeWeight && particle < weights.length - 1){
+                particle++;
+                cumulativeWeight += weights[particle];
+            }//end while.
+            resampledParticles.add(pooledParticles,particle);
+            pointer += step;
+        }//end for.
+
+        //Injected particles take the state of a resampled particle with random mental models.
+        for(int sample = 0; sample < injectedCount; sample++){
+            resampledParticles.add(resampledParticles.getStateId(sample % resampledCount),sampleRandMentalModel());
+        }//end for.
+
+        SimulatorHelper.addParticleLog("Pooled Particles:" + pooledParticles.size() + " Effective Sample Size:"
+                + effectiveSampleSize + " Injected:" + injectedCount + "\n");
+        return resampledParticles;
+    }//end method.
+
+
     @Override
     public void resetSolver() {
 
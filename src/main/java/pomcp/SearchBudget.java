@@ -0,0 +1,116 @@
+package pomcp;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * This class is the budget of one search of the {@link IPOMCP}, which can be a fixed number of simulations, a wall-clock
+ * deadline, or both, in which case the search stops at whichever comes first. The simulation count makes the searches
+ * independent of the load of the machine, e.g. for benchmarking, and the deadline bounds the time of each decision.
+ * The budget is shared by all the threads of a search, so the simulations are counted over all of them, and it can be
+ * stopped early from another thread with {@link #stop()}.
+ */
+public class SearchBudget {
+
+    /**
+     * Maximum number of simulations, 0 or less for no limit.
+     */
+    private final long maxSimulations;
+
+    /**
+     * Time bound of the search in nanoseconds, 0 or less for no limit.
+     */
+    private final long timeBoundNanos;
+
+    /**
+     * Start of the current search, simulations started in it, and the flag if it has been stopped.
+     */
+    private volatile long startNanos;
+    private final AtomicLong simulationCount = new AtomicLong();
+    private volatile boolean isStopped;
+
+
+    /**
+     * This constructor creates the budget from the limits. At least one of them must be set.
+     * @param maxSimulations is the maximum number of simulations of each search, 0 or less for no limit.
+     * @param timeBound is the maximum time of each search in milliseconds, 0 or less for no limit.
+     */
+    public SearchBudget(long maxSimulations, long timeBound) {
+        if(maxSimulations <= 0 && timeBound <= 0){
+            throw new IllegalArgumentException("Search budget needs a simulation count or a time bound.");
+        }//end if.
+        this.maxSimulations = maxSimulations;
+        this.timeBoundNanos = (timeBound > 0) ? timeBound * 1000000L : 0;
+        start();
+    }
+
+
+    /**
+     * This method starts a new search, resetting the clock and the simulation count.
+     */
+    public void start(){
+        this.simulationCount.set(0);
+        this.isStopped = false;
+        this.startNanos = System.nanoTime();
+    }
+
+
+    /**
+     * This method takes one simulation from the budget.
+     * @return is true if the simulation can be run, and false if the budget is exhausted.
+     */
+    public boolean tryAcquire(){
+        if(this.isStopped || isDeadlinePassed()){
+            return false;
+        }//end if.
+        if(this.maxSimulations <= 0){
+            this.simulationCount.incrementAndGet();
+            return true;
+        }//end if.
+
+        //Only count the simulations within the limit, so the count is exact over all the threads.
+        long count = this.simulationCount.get();
+        while(count < this.maxSimulations){
+            if(this.simulationCount.compareAndSet(count, count + 1)){
+                return true;
+            }//end if.
+            count = this.simulationCount.get();
+        }//end while.
+        return false;
+    }
+
+
+    /**
+     * This method stops the current search, e.g. when a stage coordinator needs the action now.
+     */
+    public void stop(){
+        this.isStopped = true;
+    }
+
+
+    /**
+     * This method checks if the deadline of the current search has passed.
+     * @return is true if the time bound is set and has passed.
+     */
+    private boolean isDeadlinePassed(){
+        return this.timeBoundNanos > 0 && (System.nanoTime() - this.startNanos) >= this.timeBoundNanos;
+    }
+
+
+    //Getter methods.
+    public long getMaxSimulations() {
+        return maxSimulations;
+    }
+
+    public long getTimeBound() {
+        return timeBoundNanos / 1000000L;
+    }
+
+    public long getSimulationCount() {
+        return simulationCount.get();
+    }
+
+    public long getElapsedMillis() {
+        return (System.nanoTime() - startNanos) / 1000000L;
+    }
+}
@@ -13,6 +13,8 @@ import java.util.Objects;
 /**
  * This class represents the intermediate node in the MCTS tree after choosing an action to perform given the sampled
  * configuration. The node has just visitation count and Q-Value to represent the node for further selection.
+ * The visitation count and Q-Value are kept in the {@link ActionStatistics} of the history element the node belongs to,
+ * and in the fields of the node until it is added to a history element.
  * @author Maulik
  */
 public class ActionNode implements Serializable,ObjectInstance {
@@ -22,13 +24,22 @@ public class ActionNode implements Serializable,ObjectInstance {
      */
     Action action;
     /**
-     * Total visit to this node.
+     * Statistics holding the total visit, the Q-value and the virtual loss of this node at the statistics index.
+     * The virtual loss is the number of simulations currently passing through this node, in the tree-parallel search.
+     * Each of them is counted as a loss, so that the other threads are steered towards the other actions until it returns.
      */
-    int nodeVisit;
+    ActionStatistics statistics;
     /**
-     * Q-Value of this node.
+     * Index of this node in the statistics.
      */
-    double nodeQValue;
+    int statisticsIndex;
+    /**
+     * Total visit, Q-value and virtual loss of this node while it is not attached to the statistics of a history
+     * element, so that a detached node does not allocate the arrays of its own statistics.
+     */
+    private int detachedVisit;
+    private double detachedQValue;
+    private int detachedVirtualLoss;
 
     /**
      * Class name and variable keys for the Node state class.
@@ -45,8 +56,7 @@ public class ActionNode implements Serializable,ObjectInstance {
      */
     public ActionNode() {
         this.action = null;
-        this.nodeVisit = 0;
-        this.nodeQValue = 0;
+        this.statistics = null;
     }
 
     /**
@@ -57,8 +67,9 @@ public class ActionNode implements Serializable,ObjectInstance {
      */
     public ActionNode(Action action, int nodeVisit, double nodeQValue) {
         this.action = action;
-        this.nodeVisit = nodeVisit;
-        this.nodeQValue = nodeQValue;
+        this.statistics = null;
+        this.detachedVisit = nodeVisit;
+        this.detachedQValue = nodeQValue;
     }
 
     /**
@@ -66,9 +77,18 @@ public class ActionNode implements Serializable,ObjectInstance {
      * @param actionNode is the object to copy.
      */
     public ActionNode(ActionNode actionNode) {
-        this.action = actionNode.getAction();
-        this.nodeVisit = actionNode.getNodeVisit();
-        this.nodeQValue = actionNode.getNodeQValue();
+        this(actionNode.getAction(),actionNode.getNodeVisit(),actionNode.getNodeQValue());
+    }
+
+
+    /**
+     * This method creates the slot of this node at the end of the given statistics with its current values, and keeps
+     * the values there from now on.
+     * @param statistics is the statistics of the history element this node is added to.
+     */
+    void attach(ActionStatistics statistics){
+        this.statisticsIndex = statistics.add(getNodeVisit(),getNodeQValue(),getVirtualLoss());
+        this.statistics = statistics;
     }
 
 
@@ -82,26 +102,60 @@ public class ActionNode implements Serializable,ObjectInstance {
     }
 
     public int getNodeVisit() {
-        return nodeVisit;
+        return (statistics == null) ? detachedVisit : statistics.getNodeVisit(statisticsIndex);
     }
 
     public void setNodeVisit(int nodeVisit) {
-        this.nodeVisit = nodeVisit;
+        if(this.statistics == null){
+            this.detachedVisit = nodeVisit;
+        }else{
+            this.statistics.setNodeVisit(statisticsIndex,nodeVisit);
+        }//end if-else.
     }
 
     /**
      * This method increases the current visitation count by 1.
      */
     public void incrementVisit() {
-        this.nodeVisit +=  1;
+        setNodeVisit(getNodeVisit() + 1);
+    }
+
+    public int getVirtualLoss() {
+        return (statistics == null) ? detachedVirtualLoss : statistics.getVirtualLoss(statisticsIndex);
+    }
+
+    private void setVirtualLoss(int virtualLoss) {
+        if(this.statistics == null){
+            this.detachedVirtualLoss = virtualLoss;
+        }else{
+            this.statistics.setVirtualLoss(statisticsIndex, virtualLoss);
+        }//end if-else.
+    }
+
+    /**
+     * This method adds a virtual loss for a simulation starting through this node.
+     */
+    public void addVirtualLoss() {
+        setVirtualLoss(getVirtualLoss() + 1);
+    }
+
+    /**
+     * This method removes the virtual loss of a simulation, which has returned through this node.
+     */
+    public void removeVirtualLoss() {
+        setVirtualLoss(getVirtualLoss() - 1);
     }
 
     public double getNodeQValue() {
-        return nodeQValue;
+        return (statistics == null) ? detachedQValue : statistics.getNodeQValue(statisticsIndex);
     }
 
     public void setNodeQValue(double nodeQValue) {
-        this.nodeQValue = nodeQValue;
+        if(this.statistics == null){
+            this.detachedQValue = nodeQValue;
+        }else{
+            this.statistics.setNodeQValue(statisticsIndex,nodeQValue);
+        }//end if-else.
     }
 
     /**
@@ -110,10 +164,12 @@ public class ActionNode implements Serializable,ObjectInstance {
      * @param reward
      */
     public void incrementQValue(double reward) {
-        if(this.nodeVisit == 0){
-            this.nodeQValue = reward;
+        int nodeVisit = getNodeVisit();
+        double nodeQValue = getNodeQValue();
+        if(nodeVisit == 0){
+            setNodeQValue(reward);
         }else{
-            this.nodeQValue += (reward- this.nodeQValue)/this.nodeVisit;
+            setNodeQValue(nodeQValue + (reward- nodeQValue)/nodeVisit);
         }//end if-else.
     }
 
@@ -178,8 +234,8 @@ public class ActionNode implements Serializable,ObjectInstance {
     public String toString() {
         return "ActionNode{" +
                 "action=" + action +
-                ":nodeVisit=" + nodeVisit +
-                ":nodeQValue=" + nodeQValue +
+                ":nodeVisit=" + getNodeVisit() +
+                ":nodeQValue=" + getNodeQValue() +
                 '}';
     }
 }
@@ -0,0 +1,115 @@
+package pomcp.beans;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+
+/**
+ * This class keeps the statistics of all the action nodes of a {@link HistoryElement} in contiguous arrays, where
+ * the index of an action node is the index in the arrays. The {@link ActionNode} objects are views on the arrays, so
+ * that the bean getters and setters still work, while the UCB selection can scan the arrays directly.
+ * @author Maulik
+ */
+public class ActionStatistics implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Total visits to each action node.
+     */
+    private int[] nodeVisits;
+
+    /**
+     * Q-Value of each action node.
+     */
+    private double[] nodeQValues;
+
+    /**
+     * Virtual losses of each action node in the tree-parallel search.
+     */
+    private int[] virtualLosses;
+
+    /**
+     * Number of the action nodes in the arrays.
+     */
+    private int size;
+
+
+    /**
+     * Constructor with the expected number of action nodes.
+     * @param capacity is the initial length of the arrays.
+     */
+    public ActionStatistics(int capacity) {
+        capacity = Math.max(1,capacity);
+        this.nodeVisits = new int[capacity];
+        this.nodeQValues = new double[capacity];
+        this.virtualLosses = new int[capacity];
+        this.size = 0;
+    }
+
+
+    /**
+     * This method adds a new action node to the arrays.
+     * @param nodeVisit is the visit of the action node.
+     * @param nodeQValue is the Q-value of the action node.
+     * @param virtualLoss is the virtual loss of the action node.
+     * @return is the index of the action node in the arrays.
+     */
+    public int add(int nodeVisit, double nodeQValue, int virtualLoss){
+        //Grow the arrays, if they are full.
+        if(this.size == this.nodeVisits.length){
+            int capacity = this.nodeVisits.length * 2;
+            this.nodeVisits = Arrays.copyOf(this.nodeVisits, capacity);
+            this.nodeQValues = Arrays.copyOf(this.nodeQValues, capacity);
+            this.virtualLosses = Arrays.copyOf(this.virtualLosses, capacity);
+        }//end if.
+
+        this.nodeVisits[this.size] = nodeVisit;
+        this.nodeQValues[this.size] = nodeQValue;
+        this.virtualLosses[this.size] = virtualLoss;
+
+        return this.size++;
+    }
+
+
+    //Getter and Setter methods. The arrays can be longer than the number of action nodes.
+    public int size() {
+        return size;
+    }
+
+    public int[] getNodeVisits() {
+        return nodeVisits;
+    }
+
+    public double[] getNodeQValues() {
+        return nodeQValues;
+    }
+
+    public int[] getVirtualLosses() {
+        return virtualLosses;
+    }
+
+    public int getNodeVisit(int index) {
+        return nodeVisits[index];
+    }
+
+    public void setNodeVisit(int index, int nodeVisit) {
+        this.nodeVisits[index] = nodeVisit;
+    }
+
+    public double getNodeQValue(int index) {
+        return nodeQValues[index];
+    }
+
+    public void setNodeQValue(int index, double nodeQValue) {
+        this.nodeQValues[index] = nodeQValue;
+    }
+
+    public int getVirtualLoss(int index) {
+        return virtualLosses[index];
+    }
+
+    public void setVirtualLoss(int index, int virtualLoss) {
+        this.virtualLosses[index] = virtualLoss;
+    }
+}
@@ -25,6 +25,10 @@ public class HistoryElement implements Serializable,ObjectInstance{
      * Action for the MCTS Tree edge.
      */
     private ArrayList<ActionNode> actionNodes;
+    /**
+     * Visits and Q-values of the action nodes in contiguous arrays, in the order of the action nodes.
+     */
+    private ActionStatistics actionStatistics;
     /**
      * Observation for the MCTS Tree edge.
      */
@@ -37,6 +41,7 @@ public class HistoryElement implements Serializable,ObjectInstance{
     public HistoryElement() {
         this.configurationNode = null;
         this.actionNodes = new ArrayList<>();
+        this.actionStatistics = new ActionStatistics(0);
         this.observationNodes = new ArrayList<>();
     }
 
@@ -48,7 +53,7 @@ public class HistoryElement implements Serializable,ObjectInstance{
      */
     public HistoryElement(FACNode configurationNode, ArrayList<ActionNode> actionNodes, ArrayList<ArrayList<ObservationNode>> observationNodes) {
         this.configurationNode = configurationNode;
-        this.actionNodes = actionNodes;
+        this.setActionNodes(actionNodes);
         this.observationNodes = observationNodes;
     }
 
@@ -59,6 +64,7 @@ public class HistoryElement implements Serializable,ObjectInstance{
     public HistoryElement(HistoryElement historyElement) {
         this.configurationNode = historyElement.getConfigurationNode();
         this.actionNodes = historyElement.getActionNodes();
+        this.actionStatistics = historyElement.getActionStatistics();
         this.observationNodes = historyElement.getObservationNodes();
     }
 
@@ -76,8 +82,30 @@ public class HistoryElement implements Serializable,ObjectInstance{
         return actionNodes;
     }
 
+    /**
+     * This method sets the action nodes, and creates their slots in the arrays of this history element.
+     * @param actionNodes is the list of action nodes.
+     */
     public void setActionNodes(ArrayList<ActionNode> actionNodes) {
         this.actionNodes = actionNodes;
+        this.actionStatistics = new ActionStatistics(actionNodes.size());
+        for(ActionNode actionNode : actionNodes){
+            actionNode.attach(this.actionStatistics);
+        }//end for.
+    }
+
+    /**
+     * This method adds an action node at the end, and creates its slot in the arrays of this history element.
+     * The action nodes should be added by this method instead of the list, to keep the arrays in the same order.
+     * @param actionNode is the action node to add.
+     */
+    public void addActionNode(ActionNode actionNode) {
+        actionNode.attach(this.actionStatistics);
+        this.actionNodes.add(actionNode);
+    }
+
+    public ActionStatistics getActionStatistics() {
+        return actionStatistics;
     }
 
     public ArrayList<ArrayList<ObservationNode>> getObservationNodes() {
@@ -165,9 +193,10 @@ public class HistoryElement implements Serializable,ObjectInstance{
         int bestActionIndex = 0;
         double maxValue = -10000;
         //Loop through all the nodes and find the best action node.
-        for(int actionIndex = 0 ; actionIndex < this.getActionNodes().size(); actionIndex++){
-            if(this.getActionNodes().get(actionIndex).getNodeQValue() >= maxValue){
-                maxValue = this.getActionNodes().get(actionIndex).getNodeQValue();
+        double[] nodeQValues = this.actionStatistics.getNodeQValues();
+        for(int actionIndex = 0 ; actionIndex < this.actionStatistics.size(); actionIndex++){
+            if(nodeQValues[actionIndex] >= maxValue){
+                maxValue = nodeQValues[actionIndex];
                 bestActionIndex = actionIndex;
             }//end if.
         }//end for.
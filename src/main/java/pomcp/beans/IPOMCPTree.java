@@ -4,8 +4,8 @@ import burlap.mdp.core.oo.state.ObjectInstance;
 import burlap.mdp.core.state.MutableState;
 import burlap.mdp.core.state.State;
 
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 
 
@@ -17,11 +17,24 @@ import java.util.List;
 public class IPOMCPTree implements MutableState,ObjectInstance{
 
     /**
-     * The current hash-map saves all the node that exist in the tree, with a unique hash code.
-     * The BeleifNode contains information about the parent and children of a node, by referencing to the
-     * hashcode of the hash map.
+     * The arena of all the nodes that exist in the tree, where the index of a node is its node ID.
+     * The TreeNode contains information about the children of a node, by referencing to the node IDs in the
+     * observation nodes. The IDs are allocated in sequence and are never reused until the tree is cleared, so the
+     * lookups are collision free.
+     * The array is replaced with a bigger one when full, which is published through the volatile reference, as the
+     * threads of the tree-parallel search add the nodes to the same tree.
      */
-    HashMap<Integer,TreeNode> beliefTree;
+    volatile TreeNode[] beliefTree;
+
+    /**
+     * Number of the node IDs allocated in the arena.
+     */
+    int nodeCount;
+
+    /**
+     * Initial capacity of the arena.
+     */
+    private static final int INITIAL_CAPACITY = 1024;
 
 
     /**
@@ -34,22 +47,29 @@ public class IPOMCPTree implements MutableState,ObjectInstance{
 
     //Constructors.
     public IPOMCPTree() {
-        this.beliefTree = new HashMap<Integer,TreeNode>();
+        this.beliefTree = new TreeNode[INITIAL_CAPACITY];
+        this.nodeCount = 0;
     }
 
     public IPOMCPTree(IPOMCPTree ipomcpTree) {
         this.beliefTree = ipomcpTree.getBeliefTree();
+        this.nodeCount = ipomcpTree.size();
     }
 
 
     //Getter and Setter Method.
 
-    public HashMap<Integer, TreeNode> getBeliefTree() {
+    public TreeNode[] getBeliefTree() {
         return beliefTree;
     }
 
-    public void setBeliefTree(HashMap<Integer, TreeNode> beliefTree) {
+    public synchronized void setBeliefTree(TreeNode[] beliefTree) {
         this.beliefTree = beliefTree;
+        this.nodeCount = beliefTree.length;
+    }
+
+    public synchronized int size() {
+        return nodeCount;
     }
 
     @Override
@@ -71,7 +91,7 @@ public class IPOMCPTree implements MutableState,ObjectInstance{
     public MutableState set(Object variableKey, Object value) {
         String key = (String) variableKey;
         if(IPOMCPTree.BELIEF_TREE.equals(key)){
-            this.setBeliefTree((HashMap<Integer, TreeNode>) value);
+            this.setBeliefTree((TreeNode[]) value);
         }else{
             //DO nothing.
         }//end if-else.
@@ -101,27 +121,84 @@ public class IPOMCPTree implements MutableState,ObjectInstance{
 
 
     /**
-     * This method adds or updates the current node in the list using the hashcode of that node.
-     * @param node is the node to update.
+     * This method allocates the next node ID in the arena for the node, and sets the ID to the node.
+     * @param node is the node to add.
+     * @return is the node ID of the added node.
+     */
+    public synchronized int addNode(TreeNode node){
+        //Double the arena, if it is full.
+        if(this.nodeCount == this.beliefTree.length){
+            this.beliefTree = Arrays.copyOf(this.beliefTree, this.beliefTree.length * 2);
+        }//end if.
+
+        int nodeId = this.nodeCount++;
+        node.setNodeId(nodeId);
+        this.beliefTree[nodeId] = node;
+
+        return nodeId;
+    }
+
+
+    /**
+     * This method adds the root node to the tree. The root is always considered visited, so that the search starts
+     * exploring from the root instead of rolling out.
+     * @param root is the root node.
      */
-    public void setNode(TreeNode node){
-        this.getBeliefTree().put(node.hashCode(),node);
+    public void setRoot(TreeNode root){
+        root.setVisited(true);
+        addNode(root);
     }
 
 
     /**
-     * This method adds or updates the current node in the list using the hashcode of that node.
-     * @param hashcode is the hash code for the node.
+     * This method returns the node for the given node ID.
+     * @param nodeId is the ID of the node.
+     * @return is the node, or null if the ID is not allocated.
      */
-    public TreeNode getNode(Integer hashcode){
-        return this.beliefTree.get(hashcode);
+    public TreeNode getNode(int nodeId){
+        TreeNode[] nodes = this.beliefTree;
+        if(nodeId < 0 || nodeId >= nodes.length){
+            return null;
+        }//end if.
+        return nodes[nodeId];
     }
 
     /**
-     * Clears the tree to conserve memory.
+     * This method moves the subtree under the given node to a new tree, where the node becomes the root. The nodes
+     * get new node IDs in the new tree, and the observation nodes are updated with them. The current tree should not
+     * be used afterwards.
+     * @param root is the node to become the root of the new tree.
+     * @return is the new tree.
+     */
+    public IPOMCPTree extractSubtree(TreeNode root){
+        IPOMCPTree subtree = new IPOMCPTree();
+        subtree.setRoot(root);
+
+        //Add the nodes level by level, the children are still referenced with the IDs of the current tree.
+        ArrayList<TreeNode> nodesToAdd = new ArrayList<>();
+        nodesToAdd.add(root);
+        for(int nodeIndex = 0; nodeIndex < nodesToAdd.size(); nodeIndex++){
+            for(HistoryElement historyElement : nodesToAdd.get(nodeIndex).getHistoryElement()){
+                for(ArrayList<ObservationNode> observationNodes : historyElement.getObservationNodes()){
+                    for(ObservationNode observationNode : observationNodes){
+                        TreeNode child = this.getNode(observationNode.getChildNodeId());
+                        observationNode.setChildNodeId(subtree.addNode(child));
+                        nodesToAdd.add(child);
+                    }//end for.
+                }//end for.
+            }//end for.
+        }//end for.
+
+        return subtree;
+    }
+
+
+    /**
+     * Clears the tree to conserve memory. The arena keeps its capacity for the next search.
      */
-    public void clear() {
-        this.beliefTree.clear();
+    public synchronized void clear() {
+        Arrays.fill(this.beliefTree, 0, this.nodeCount, null);
+        this.nodeCount = 0;
     }
 
 }
@@ -13,7 +13,7 @@ import java.util.Objects;
 /**
  * This class is for getting the {@link TreeNode} from the intermediate node after sampling FAC and choosing the best action.
  * The current node is received after the simulation of the state particle and the actions, while the observation is sampled in
- * the simulation. The node contains a reference to the hashcode of the node which is created after.
+ * the simulation. The node contains a reference to the node ID of the node which is created after.
  * @author Maulik
  */
 public class ObservationNode implements Serializable,ObjectInstance{
@@ -23,17 +23,17 @@ public class ObservationNode implements Serializable,ObjectInstance{
     State observation;
 
     /**
-     * The hashcode of the child node generated after sampling the observation.
+     * The node ID of the child node generated after sampling the observation.
      */
-    Integer childHashCode;
+    int childNodeId;
 
     /**
      * Class name and variable keys for the Node state class.
      */
     public static final String CLASS_NAME = "OBSERVATION_NODE";
     private static final String OBSERVATION = "OBSERVATION";
-    private static final String CHILD_CODE = "CHILD_CODE";
-    private static final List<Object> VARIABLE_KEYS = Arrays.<Object>asList(OBSERVATION,CHILD_CODE);
+    private static final String CHILD_ID = "CHILD_ID";
+    private static final List<Object> VARIABLE_KEYS = Arrays.<Object>asList(OBSERVATION,CHILD_ID);
 
 
 
@@ -42,17 +42,17 @@ public class ObservationNode implements Serializable,ObjectInstance{
      */
     public ObservationNode() {
         this.observation = null;
-        this.childHashCode = null;
+        this.childNodeId = -1;
     }
 
     /**
      * Copy the values of the other observation node to the current.
      * @param observation is the observation received.
-     * @param childHashCode is the new child created.
+     * @param childNodeId is the new child created.
      */
-    public ObservationNode(State observation, Integer childHashCode) {
+    public ObservationNode(State observation, int childNodeId) {
         this.observation = observation;
-        this.childHashCode = childHashCode;
+        this.childNodeId = childNodeId;
     }
 
     /**
@@ -61,7 +61,7 @@ public class ObservationNode implements Serializable,ObjectInstance{
      */
     public ObservationNode(ObservationNode observationNode) {
         this.observation = observationNode.getObservation();
-        this.childHashCode = observationNode.getChildHashCode();
+        this.childNodeId = observationNode.getChildNodeId();
     }
 
     //Getter and Setter method.
@@ -73,12 +73,12 @@ public class ObservationNode implements Serializable,ObjectInstance{
         this.observation = observation;
     }
 
-    public int getChildHashCode() {
-        return childHashCode;
+    public int getChildNodeId() {
+        return childNodeId;
     }
 
-    public void setChildHashCode(int childHashCode) {
-        this.childHashCode = childHashCode;
+    public void setChildNodeId(int childNodeId) {
+        this.childNodeId = childNodeId;
     }
 
     @Override
@@ -105,8 +105,8 @@ public class ObservationNode implements Serializable,ObjectInstance{
     public Object get(Object variableKey) {
         String key = (String) variableKey;
 
-        if(ObservationNode.CHILD_CODE.equals(key)){
-            return this.getChildHashCode();
+        if(ObservationNode.CHILD_ID.equals(key)){
+            return this.getChildNodeId();
         }else if(ObservationNode.OBSERVATION.equals(key)){
             return this.getObservation();
         }else{
@@ -124,21 +124,21 @@ public class ObservationNode implements Serializable,ObjectInstance{
         if (this == o) return true;
         if (!(o instanceof ObservationNode)) return false;
         ObservationNode that = (ObservationNode) o;
-        return getChildHashCode() == that.getChildHashCode() &&
+        return getChildNodeId() == that.getChildNodeId() &&
                 Objects.equals(getObservation(), that.getObservation());
     }
 
     @Override
     public int hashCode() {
 
-        return Objects.hash(getObservation(), getChildHashCode());
+        return Objects.hash(getObservation(), getChildNodeId());
     }
 
     @Override
     public String toString() {
         return "ObservationNode{" +
                 "observation=" + observation +
-                ":childHashCode=" + childHashCode +
+                ":childNodeId=" + childNodeId +
                 '}';
     }
 }
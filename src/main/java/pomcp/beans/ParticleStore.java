@@ -0,0 +1,274 @@
+package pomcp.beans;
+
+import domains.wildfire.WildfireAnonymousState;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * This class stores the belief particles of a node packed into parallel primitive arrays. Each particle is kept as the
+ * state id given by {@link WildfireAnonymousState#encode()} and one byte for the mental model of each sampled agent,
+ * instead of a full copy of the state, the mental model list and the sampled actions list.
+ * All the particles of a store share the self agent, the groups and the fires of a template state, which is the state
+ * of the first particle added, and only differ by the suppressant level and the fire intensities. The particles are
+ * decoded into new {@link BeliefParticle} objects when they are read, so changing a particle read from the store does
+ * not change the store.
+ */
+public class ParticleStore extends AbstractList<BeliefParticle> {
+
+    /**
+     * Initial number of the particles the arrays can hold.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Template state of the particles, null until the first particle is added.
+     */
+    private WildfireAnonymousState template;
+
+    /**
+     * Number of the mental models of each particle.
+     */
+    private int mentalModelCount;
+
+    /**
+     * State id of each particle, and the mental models of each particle at (particle * mentalModelCount + agent).
+     */
+    private int[] stateIds;
+    private byte[] mentalModels;
+
+    /**
+     * Number of the particles, and the number of the particles offered to the reservoir sample.
+     */
+    private int size;
+    private long offeredCount;
+
+
+    /**
+     * Default Constructor.
+     */
+    public ParticleStore() {
+        this(INITIAL_CAPACITY);
+    }
+
+
+    /**
+     * This constructor creates an empty store with the given initial capacity.
+     * @param capacity is the number of the particles the store can hold before it grows.
+     */
+    public ParticleStore(int capacity) {
+        this.stateIds = new int[Math.max(capacity, 1)];
+        this.mentalModels = new byte[0];
+        this.size = 0;
+    }
+
+
+    /**
+     * This constructor packs the given particles.
+     * @param particles is the list of the particles.
+     */
+    public ParticleStore(List<BeliefParticle> particles) {
+        this(particles.size());
+        if(particles instanceof ParticleStore){
+            addAll((ParticleStore) particles);
+        }else{
+            for(BeliefParticle particle : particles){
+                add(particle);
+            }//end for.
+        }//end if-else.
+    }
+
+
+    /**
+     * This method adds a particle by packing its state and mental models. The sampled actions are not kept.
+     * @param particle is the particle to add.
+     * @return is always true.
+     */
+    @Override
+    public boolean add(BeliefParticle particle) {
+        WildfireAnonymousState state = (WildfireAnonymousState) particle.getStateParticle();
+        ArrayList<Integer> models = particle.getMentalModels();
+        if(this.template == null){
+            initialize(state, models.size());
+        }//end if.
+
+        add(state.encode(), models);
+        return true;
+    }
+
+
+    /**
+     * This method adds a particle with the given state id and mental models. The store must have a template, i.e. at
+     * least one particle must have been added before.
+     * @param stateId is the state id of the particle.
+     * @param models is the mental models of the particle.
+     */
+    public void add(int stateId, List<Integer> models) {
+        int index = reserve();
+        this.stateIds[index] = stateId;
+        for(int agent = 0; agent < this.mentalModelCount; agent++){
+            this.mentalModels[index * this.mentalModelCount + agent] = models.get(agent).byteValue();
+        }//end for.
+    }
+
+
+    /**
+     * This method keeps a uniform reservoir sample of the particles offered to the store, so the store holds at most
+     * the given number of particles however many are offered. The particles added otherwise are not counted.
+     * @param particle is the offered particle.
+     * @param capacity is the maximum number of the particles.
+     * @param randomNumber is a uniform random number in [0,1).
+     */
+    public void offer(BeliefParticle particle, int capacity, double randomNumber) {
+        this.offeredCount++;
+        if(this.size < capacity){
+            add(particle);
+        }else{
+            long replaced = (long)(randomNumber * this.offeredCount);
+            if(replaced < capacity){
+                set((int) replaced, particle);
+            }//end if.
+        }//end if-else.
+    }
+
+
+    /**
+     * This method replaces a particle by packing the given particle.
+     * @param index is the index of the particle.
+     * @param particle is the new particle.
+     * @return is always null, as the replaced particle is not decoded.
+     */
+    @Override
+    public BeliefParticle set(int index, BeliefParticle particle) {
+        checkIndex(index);
+        this.stateIds[index] = ((WildfireAnonymousState) particle.getStateParticle()).encode();
+        ArrayList<Integer> models = particle.getMentalModels();
+        for(int agent = 0; agent < this.mentalModelCount; agent++){
+            this.mentalModels[index * this.mentalModelCount + agent] = models.get(agent).byteValue();
+        }//end for.
+        return null;
+    }
+
+
+    /**
+     * This method adds a particle of another store without decoding it.
+     * @param other is the store with the particle.
+     * @param index is the index of the particle in the other store.
+     */
+    public void add(ParticleStore other, int index) {
+        if(this.template == null){
+            initialize(other.template, other.mentalModelCount);
+        }//end if.
+
+        int newIndex = reserve();
+        this.stateIds[newIndex] = other.stateIds[index];
+        System.arraycopy(other.mentalModels, index * other.mentalModelCount,
+                this.mentalModels, newIndex * this.mentalModelCount, this.mentalModelCount);
+    }
+
+
+    /**
+     * This method adds all the particles of another store without decoding them.
+     * @param other is the store with the particles.
+     */
+    public void addAll(ParticleStore other) {
+        for(int index = 0; index < other.size(); index++){
+            add(other, index);
+        }//end for.
+    }
+
+
+    /**
+     * This method decodes a particle into a new belief particle.
+     * @param index is the index of the particle.
+     * @return is the belief particle.
+     */
+    @Override
+    public BeliefParticle get(int index) {
+        checkIndex(index);
+        return new BeliefParticle(this.template.decode(this.stateIds[index]), getMentalModels(index));
+    }
+
+
+    /**
+     * This method decodes the mental models of a particle without decoding its state.
+     * @param index is the index of the particle.
+     * @return is the mental models.
+     */
+    public ArrayList<Integer> getMentalModels(int index) {
+        checkIndex(index);
+        ArrayList<Integer> models = new ArrayList<>(this.mentalModelCount);
+        for(int agent = 0; agent < this.mentalModelCount; agent++){
+            models.add((int) this.mentalModels[index * this.mentalModelCount + agent]);
+        }//end for.
+        return models;
+    }
+
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+
+    @Override
+    public void clear() {
+        this.size = 0;
+        this.offeredCount = 0;
+    }
+
+
+    //Getter methods.
+    public int getStateId(int index) {
+        checkIndex(index);
+        return this.stateIds[index];
+    }
+
+    public WildfireAnonymousState getTemplate() {
+        return template;
+    }
+
+    public int getMentalModelCount() {
+        return mentalModelCount;
+    }
+
+
+    /**
+     * This method sets the template and the number of the mental models from the first particle.
+     * @param state is the state of the first particle.
+     * @param mentalModelCount is the number of the mental models of the first particle.
+     */
+    private void initialize(WildfireAnonymousState state, int mentalModelCount) {
+        this.template = new WildfireAnonymousState(state);
+        this.mentalModelCount = mentalModelCount;
+        this.mentalModels = new byte[this.stateIds.length * mentalModelCount];
+    }
+
+
+    /**
+     * This method grows the arrays if needed and reserves the index of a new particle.
+     * @return is the index of the new particle.
+     */
+    private int reserve() {
+        if(this.size == this.stateIds.length){
+            int capacity = this.stateIds.length * 2;
+            this.stateIds = Arrays.copyOf(this.stateIds, capacity);
+            this.mentalModels = Arrays.copyOf(this.mentalModels, capacity * this.mentalModelCount);
+        }//end if.
+        return this.size++;
+    }
+
+
+    /**
+     * This method checks if the index is within the particles.
+     * @param index is the index of the particle.
+     */
+    private void checkIndex(int index) {
+        if(index < 0 || index >= this.size){
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+        }//end if.
+    }
+}
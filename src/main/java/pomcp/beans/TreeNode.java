@@ -28,17 +28,21 @@ public class TreeNode implements MutableState,ObjectInstance{
     private double  value;
 
     /**
-     * Belief Particles.
+     * Belief Particles, packed into primitive arrays.
      */
-    private ArrayList<BeliefParticle> beliefParticles;
+    private ParticleStore beliefParticles;
 
     /**
-     * Path from the root, which can be considered as hashcode as well.
-     * The path is made up of the branch index of each configuration, action and observations.
-     * E.g. from root node if the current node can be reached by taking the 2nd configuration branch, 5th Action
-     * branch and 0th observation branch, the path should be 2-5-0.
+     * ID of the node in the {@link IPOMCPTree} arena, which is used as the hashcode as well.
+     * The ID is -1, if the node has not been added to the tree (e.g. the nodes of the roll out).
      */
-    private String path;
+    private int nodeId;
+
+    /**
+     * If the search has already reached the node once. The first visit of a node is rolled out, and the node is
+     * explored from the next visit onwards.
+     */
+    private boolean isVisited;
 
 
     /**
@@ -55,10 +59,10 @@ public class TreeNode implements MutableState,ObjectInstance{
     public static final String NODE_CLASS_NAME = "NODE";
     private static final String VALUE = "VALUE";
     private static final String BELIEF_PARTICLES = "BELIEF_PARTICLES";
-    private static final String PATH = "PATH";
+    private static final String NODE_ID = "NODE_ID";
     private static final String HISTORY_ELEMENT = "HISTORY_ELEMENT";
     private static final String BRANCH_COUNT = "BRANCH_COUNT";
-    private static final List<Object> VARIABLE_KEYS = Arrays.<Object>asList(VALUE, BELIEF_PARTICLES,PATH,HISTORY_ELEMENT,BRANCH_COUNT);
+    private static final List<Object> VARIABLE_KEYS = Arrays.<Object>asList(VALUE, BELIEF_PARTICLES,NODE_ID,HISTORY_ELEMENT,BRANCH_COUNT);
 
 
 
@@ -69,8 +73,9 @@ public class TreeNode implements MutableState,ObjectInstance{
     public TreeNode() {
         this.value = 0.0;
         this.historyElement = new ArrayList<>();
-        this.beliefParticles = new ArrayList<>();
-        this.path = "";
+        this.beliefParticles = new ParticleStore();
+        this.nodeId = -1;
+        this.isVisited = false;
     }
 
 
@@ -79,13 +84,14 @@ public class TreeNode implements MutableState,ObjectInstance{
      * @param value is the value of this node.
      * @param beliefParticles is the list of belief particles.
      * @param historyElement is the list of history elements of the node.
-     * @param path is the path from the root node to the current node.
+     * @param nodeId is the ID of the node in the tree.
      */
-    public TreeNode(double value, ArrayList<BeliefParticle> beliefParticles,ArrayList<HistoryElement> historyElement,String path) {
+    public TreeNode(double value, List<BeliefParticle> beliefParticles,ArrayList<HistoryElement> historyElement,int nodeId) {
         this.value = value;
-        this.beliefParticles = beliefParticles;
+        this.setBeliefParticles(beliefParticles);
         this.historyElement = historyElement;
-        this.path = path;
+        this.nodeId = nodeId;
+        this.isVisited = false;
     }
 
 
@@ -97,7 +103,8 @@ public class TreeNode implements MutableState,ObjectInstance{
     public TreeNode(TreeNode treeNode,boolean includeHistory) {
         this.value = treeNode.getValue();
         this.beliefParticles = treeNode.getBeliefParticles();
-        this.path = treeNode.getPath();
+        this.nodeId = treeNode.getNodeId();
+        this.isVisited = treeNode.isVisited();
         this.historyElement = new ArrayList<>();
         if(includeHistory) {
             for (HistoryElement historyElement: treeNode.getHistoryElement()){
@@ -124,20 +131,36 @@ public class TreeNode implements MutableState,ObjectInstance{
     }
 
 
-    public ArrayList<BeliefParticle> getBeliefParticles() {
+    public ParticleStore getBeliefParticles() {
         return this.beliefParticles;
     }
 
-    public void setBeliefParticles(ArrayList<BeliefParticle> beliefParticles) {
-        this.beliefParticles = beliefParticles;
+    /**
+     * This method sets the belief particles, packing them into a new store unless they are already packed.
+     * @param beliefParticles is the list of belief particles.
+     */
+    public void setBeliefParticles(List<BeliefParticle> beliefParticles) {
+        if(beliefParticles instanceof ParticleStore){
+            this.beliefParticles = (ParticleStore) beliefParticles;
+        }else{
+            this.beliefParticles = new ParticleStore(beliefParticles);
+        }//end if-else.
+    }
+
+    public int getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(int nodeId) {
+        this.nodeId = nodeId;
     }
 
-    public String getPath() {
-        return path;
+    public boolean isVisited() {
+        return isVisited;
     }
 
-    public void setPath(String path) {
-        this.path = path;
+    public void setVisited(boolean visited) {
+        isVisited = visited;
     }
 
     //Over-ridden methods.
@@ -171,6 +194,8 @@ public class TreeNode implements MutableState,ObjectInstance{
             return this.getBeliefParticles();
         }else if(TreeNode.HISTORY_ELEMENT.equals(key)){
             return this.getHistoryElement();
+        }else if(TreeNode.NODE_ID.equals(key)){
+            return this.getNodeId();
         }else{
             return  null;
         }//end if-else.
@@ -187,11 +212,11 @@ public class TreeNode implements MutableState,ObjectInstance{
         if(TreeNode.VALUE.equals(key)){
             this.setValue((Double)value);
         }else if(TreeNode.BELIEF_PARTICLES.equals(key)){
-            this.setBeliefParticles((ArrayList<BeliefParticle>) value);
+            this.setBeliefParticles((List<BeliefParticle>) value);
         }else if(TreeNode.HISTORY_ELEMENT.equals(key)){
             this.setHistoryElement((ArrayList<HistoryElement>)value);
-        }else if(TreeNode.PATH.equals(key)){
-            this.setPath((String)value);
+        }else if(TreeNode.NODE_ID.equals(key)){
+            this.setNodeId((Integer)value);
         }else{
             //DO nothing.
         }//end if-else.
@@ -200,10 +225,12 @@ public class TreeNode implements MutableState,ObjectInstance{
 
     /**
      * Randomly sample a particle from the list of particles available in the tree node.
+     * @param randomNumber is a uniform random number in [0,1) from the random number generator of the caller, so the
+     *                     threads of the search do not share one generator.
      * @return a {@link BeliefParticle} of the node.
      */
-     public BeliefParticle sampleParticle(){
-        return this.beliefParticles.get((int)Math.abs(Math.random() * this.beliefParticles.size()));
+     public BeliefParticle sampleParticle(double randomNumber){
+        return this.beliefParticles.get((int)(randomNumber * this.beliefParticles.size()));
      }//end method.
 
 
@@ -290,18 +317,18 @@ public class TreeNode implements MutableState,ObjectInstance{
         return Double.compare(that.getValue(), getValue()) == 0 &&
                 Objects.equals(getBeliefParticles(), that.getBeliefParticles()) &&
                 Objects.equals(getHistoryElement(), that.getHistoryElement()) &&
-                getPath().equals(that.getPath());
+                getNodeId() == that.getNodeId();
     }
 
 
 
     /**
-     * Calculate the hash code from the path.
+     * The node ID is the hash code of the node.
      * @return is the hash value.
      */
     @Override
     public int hashCode() {
-        return Objects.hashCode(this.path);
+        return this.nodeId;
     }//end method.
 
 
@@ -311,7 +338,7 @@ public class TreeNode implements MutableState,ObjectInstance{
     public String toString() {
         return "BeliefNode{" +
                 ":Hashcode=" + hashCode() +
-                ":path=" + path +
+                ":nodeId=" + nodeId +
                 ":History Elements=" + historyElement.size() +
                 ":belief size=" + beliefParticles.size() +
                 '}';
@@ -0,0 +1,333 @@
+package scalability;
+
+import scalability.beans.ConfigurationBean;
+
+import java.util.*;
+
+
+/**
+ * This class generates the FACs of a configuration in the decreasing order of their multinomial probabilities, and stops
+ * as soon as the probability falls below a threshold, so the cost is proportional to the number of the FACs kept instead
+ * of the whole configuration space.
+ * The agents of each type are distributed independently, so the compositions of each type are generated best-first
+ * from the mode of the type with a priority queue, moving one agent from a type-action pair to another one. The log
+ * probability of a type is a separable concave function of the counts, so every composition above the threshold is
+ * connected to the mode through compositions with higher probabilities, and the search can stop at the first one below
+ * the threshold. The compositions of the types are then combined, skipping the combinations which can not reach the
+ * threshold even with the modes of the rest of the types.
+ */
+public class BestFirstFACGenerator {
+
+    /**
+     * This class keeps a generated composition or FAC with its log probability.
+     */
+    private static class WeightedCounts {
+        int[] counts;
+        double logProb;
+
+        WeightedCounts(int[] counts, double logProb) {
+            this.counts = counts;
+            this.logProb = logProb;
+        }
+    }//end class.
+
+    /**
+     * Comparator of the decreasing log probabilities.
+     */
+    private static final Comparator<WeightedCounts> DECREASING_PROB = new Comparator<WeightedCounts>() {
+        @Override
+        public int compare(WeightedCounts first, WeightedCounts second) {
+            return Double.compare(second.logProb, first.logProb);
+        }
+    };
+
+    /**
+     * Number of the type-action pairs.
+     */
+    private int size;
+
+    /**
+     * Indexes of the type-action pairs of each type, their maximum agents and the total agents of each type.
+     */
+    private int[][] typePairIndexes;
+    private int[][] typeMaxAgents;
+    private int[] typeTotals;
+
+    /**
+     * Place value of each pair of each type in the packed key of a composition, which reads the counts as the digits
+     * of a mixed radix number with the maximum agents of the pairs. The last pair is left out, as it holds the rest
+     * of the agents of the type.
+     */
+    private long[][] typeKeyRadixes;
+
+    /**
+     * Log of the prior probability of each type-action pair.
+     */
+    private double[] logPriors;
+
+    /**
+     * Log of the factorials from 0 to the maximum type total.
+     */
+    private double[] logFactorials;
+
+    /**
+     * Generated FACs in the decreasing order of the probabilities, and the number of the compositions expanded.
+     */
+    private List<int[]> facs = new ArrayList<>();
+    private List<Double> probabilities = new ArrayList<>();
+    private int expandedCount = 0;
+
+
+    /**
+     * This constructor sets up the types of the configuration.
+     * @param fac is the FAC with the maximum configuration and the agent types.
+     * @param priors is the prior probability of each type-action pair.
+     */
+    public BestFirstFACGenerator(FrameActionConfiguration fac, double[] priors) {
+        ConfigurationBean[] maxConfiguration = fac.getMaxConfiguration();
+        int[][] agentTypes = fac.getAgentTypes();
+        this.size = maxConfiguration.length;
+        this.typePairIndexes = new int[agentTypes.length][];
+        this.typeMaxAgents = new int[agentTypes.length][];
+        this.typeTotals = new int[agentTypes.length];
+        this.typeKeyRadixes = new long[agentTypes.length][];
+
+        int maxTotal = 0;
+        for(int type = 0; type < agentTypes.length; type++){
+            List<Integer> pairs = new ArrayList<>();
+            for(int index = 0; index < this.size; index++){
+                if(maxConfiguration[index].getAgentType() == agentTypes[type][0]){
+                    pairs.add(index);
+                }//end if.
+            }//end for.
+
+            this.typePairIndexes[type] = new int[pairs.size()];
+            this.typeMaxAgents[type] = new int[pairs.size()];
+            for(int pair = 0; pair < pairs.size(); pair++){
+                this.typePairIndexes[type][pair] = pairs.get(pair);
+                this.typeMaxAgents[type][pair] = maxConfiguration[pairs.get(pair)].getNumberOfAgents();
+            }//end for.
+            this.typeTotals[type] = agentTypes[type][1];
+            maxTotal = Math.max(maxTotal, this.typeTotals[type]);
+
+            this.typeKeyRadixes[type] = new long[pairs.size()];
+            long radix = 1;
+            for(int pair = 0; pair < pairs.size() - 1; pair++){
+                this.typeKeyRadixes[type][pair] = radix;
+                int digits = this.typeMaxAgents[type][pair] + 1;
+                if(radix > Long.MAX_VALUE / digits){
+                    throw new IllegalArgumentException("The compositions of the type " + agentTypes[type][0]
+                            + " do not fit into the packed keys.");
+                }//end if.
+                radix *= digits;
+            }//end for.
+        }//end for.
+
+        this.logPriors = new double[this.size];
+        for(int index = 0; index < this.size; index++){
+            this.logPriors[index] = Math.log(priors[index]);
+        }//end for.
+
+        this.logFactorials = new double[maxTotal + 1];
+        for(int value = 1; value <= maxTotal; value++){
+            this.logFactorials[value] = this.logFactorials[value - 1] + Math.log(value);
+        }//end for.
+    }
+
+
+    /**
+     * This method generates all the FACs with the log probability at least the given minimum.
+     * @param minLogProb is the minimum log probability of the FACs to keep.
+     */
+    public void generate(double minLogProb){
+        this.facs = new ArrayList<>();
+        this.probabilities = new ArrayList<>();
+        this.expandedCount = 0;
+
+        //Mode of each type, and the sum of the modes from each type to the last one.
+        int numTypes = this.typePairIndexes.length;
+        int[][] modes = new int[numTypes][];
+        double[] suffixModeLogProbs = new double[numTypes + 1];
+        for(int type = 0; type < numTypes; type++){
+            modes[type] = typeMode(type);
+            if(modes[type] == null){
+                //The agents of the type do not fit into its pairs.
+                return;
+            }//end if.
+        }//end for.
+        for(int type = numTypes - 1; type >= 0; type--){
+            suffixModeLogProbs[type] = suffixModeLogProbs[type + 1] + typeLogProb(type, modes[type]);
+        }//end for.
+
+        //Compositions of each type which can reach the threshold with the modes of the other types.
+        List<List<WeightedCounts>> typeCompositions = new ArrayList<>();
+        for(int type = 0; type < numTypes; type++){
+            double otherModesLogProb = suffixModeLogProbs[0] - typeLogProb(type, modes[type]);
+            typeCompositions.add(bestFirstCompositions(type, modes[type], minLogProb - otherModesLogProb));
+        }//end for.
+
+        //Combine the types.
+        List<WeightedCounts> generated = new ArrayList<>();
+        combine(0, 0, new int[this.size], typeCompositions, suffixModeLogProbs, minLogProb, generated);
+        Collections.sort(generated, DECREASING_PROB);
+        for(WeightedCounts fac : generated){
+            this.facs.add(fac.counts);
+            this.probabilities.add(Math.exp(fac.logProb));
+        }//end for.
+    }
+
+
+    /**
+     * This method finds the most probable composition of the agents of a type. Adding an agent to a pair with k agents
+     * changes the log probability by log(prior) - log(k+1), which decreases with k, so adding the agents greedily one by
+     * one to the pair with the largest change is optimal.
+     * @param type is the index of the type.
+     * @return is the number of agents of each pair of the type, null if the agents do not fit into the pairs.
+     */
+    private int[] typeMode(int type){
+        int[] maxAgents = this.typeMaxAgents[type];
+        int[] mode = new int[maxAgents.length];
+        for(int agent = 0; agent < this.typeTotals[type]; agent++){
+            int bestPair = -1;
+            double bestGain = Double.NEGATIVE_INFINITY;
+            for(int pair = 0; pair < mode.length; pair++){
+                if(mode[pair] < maxAgents[pair]){
+                    double gain = this.logPriors[this.typePairIndexes[type][pair]] - Math.log(mode[pair] + 1);
+                    if(bestPair == -1 || gain > bestGain){
+                        bestPair = pair;
+                        bestGain = gain;
+                    }//end if.
+                }//end if.
+            }//end for.
+            if(bestPair == -1){
+                return null;
+            }//end if.
+            mode[bestPair]++;
+        }//end for.
+        return mode;
+    }
+
+
+    /**
+     * This method computes the multinomial log probability of a composition of a type, the same way as the
+     * getFACLogProbs of the {@link nestedMDPSolver.NestedVI}.
+     * @param type is the index of the type.
+     * @param counts is the number of agents of each pair of the type.
+     * @return is the log probability.
+     */
+    private double typeLogProb(int type, int[] counts){
+        double logProb = this.logFactorials[this.typeTotals[type]];
+        for(int pair = 0; pair < counts.length; pair++){
+            if(counts[pair] != 0){
+                logProb += counts[pair] * this.logPriors[this.typePairIndexes[type][pair]] - this.logFactorials[counts[pair]];
+            }//end if.
+        }//end for.
+        return logProb;
+    }
+
+
+    /**
+     * This method generates the compositions of a type best-first from its mode, until the next composition falls below
+     * the minimum log probability.
+     * @param type is the index of the type.
+     * @param mode is the mode of the type.
+     * @param minLogProb is the minimum log probability of the compositions of the type.
+     * @return is the list of the compositions in the decreasing order of the probabilities.
+     */
+    private List<WeightedCounts> bestFirstCompositions(int type, int[] mode, double minLogProb){
+        List<WeightedCounts> compositions = new ArrayList<>();
+        int[] maxAgents = this.typeMaxAgents[type];
+        PriorityQueue<WeightedCounts> frontier = new PriorityQueue<>(11, DECREASING_PROB);
+        Set<Long> visited = new HashSet<>();
+        frontier.add(new WeightedCounts(mode, typeLogProb(type, mode)));
+        visited.add(compositionKey(type, mode));
+
+        while(!frontier.isEmpty() && frontier.peek().logProb >= minLogProb){
+            WeightedCounts composition = frontier.poll();
+            compositions.add(composition);
+            this.expandedCount++;
+
+            //Move one agent from a pair to another one.
+            for(int from = 0; from < maxAgents.length; from++){
+                if(composition.counts[from] == 0){
+                    continue;
+                }//end if.
+                for(int to = 0; to < maxAgents.length; to++){
+                    if(to == from || composition.counts[to] >= maxAgents[to]){
+                        continue;
+                    }//end if.
+                    int[] neighbour = composition.counts.clone();
+                    neighbour[from]--;
+                    neighbour[to]++;
+                    if(visited.add(compositionKey(type, neighbour))){
+                        frontier.add(new WeightedCounts(neighbour, typeLogProb(type, neighbour)));
+                    }//end if.
+                }//end for.
+            }//end for.
+        }//end while.
+
+        return compositions;
+    }
+
+
+    /**
+     * This method packs a composition of a type into one number, which is unique among the compositions of the type.
+     * @param type is the index of the type.
+     * @param counts is the number of agents of each pair of the type.
+     * @return is the packed key.
+     */
+    private long compositionKey(int type, int[] counts){
+        long[] radixes = this.typeKeyRadixes[type];
+        long key = 0;
+        for(int pair = 0; pair < counts.length - 1; pair++){
+            key += counts[pair] * radixes[pair];
+        }//end for.
+        return key;
+    }
+
+
+    /**
+     * This method combines the compositions of the types from the given type to the last one into the FACs. The
+     * compositions of each type are in the decreasing order, so the rest of them are skipped as soon as one can not
+     * reach the threshold with the modes of the types after it.
+     * @param type is the index of the type to combine.
+     * @param logProb is the log probability of the compositions of the previous types.
+     * @param counts is the counts of the FAC being combined.
+     * @param typeCompositions is the list of the compositions of each type.
+     * @param suffixModeLogProbs is the sum of the log probabilities of the modes from each type to the last one.
+     * @param minLogProb is the minimum log probability of the FACs.
+     * @param generated is the list of the FACs to add to.
+     */
+    private void combine(int type, double logProb, int[] counts, List<List<WeightedCounts>> typeCompositions,
+                         double[] suffixModeLogProbs, double minLogProb, List<WeightedCounts> generated){
+        if(type == typeCompositions.size()){
+            generated.add(new WeightedCounts(counts.clone(), logProb));
+            return;
+        }//end if.
+
+        for(WeightedCounts composition : typeCompositions.get(type)){
+            double combinedLogProb = logProb + composition.logProb;
+            if(combinedLogProb + suffixModeLogProbs[type + 1] < minLogProb){
+                break;
+            }//end if.
+            for(int pair = 0; pair < composition.counts.length; pair++){
+                counts[this.typePairIndexes[type][pair]] = composition.counts[pair];
+            }//end for.
+            combine(type + 1, combinedLogProb, counts, typeCompositions, suffixModeLogProbs, minLogProb, generated);
+        }//end for.
+    }
+
+
+    //Getter methods for the generated FACs.
+    public List<int[]> getFACs() {
+        return facs;
+    }
+
+    public List<Double> getProbabilities() {
+        return probabilities;
+    }
+
+    public int getExpandedCount() {
+        return expandedCount;
+    }
+}
@@ -60,9 +60,14 @@ public class FrameActionConfiguration  implements Action, Iterable<Action>{
     }
 
     /**
-     * Flag for stopping the recursive call.
+     * Iteration of the FACs by {@link #hasNext()}: the indexes of the type-action pairs of each type, the sums of the
+     * maximum agents of the pairs from each pair to the last one of the type, the counts of the current FAC and the flag
+     * if the first FAC is already given.
      */
-    boolean stopRecursive = false;
+    private int[][] typePairIndexes;
+    private int[][] typeSuffixMaxes;
+    private int[] currentCounts;
+    private boolean isIterationStarted = false;
 
     /**
      * This constructor just instantiates the configuration object.
@@ -574,108 +579,142 @@ public class FrameActionConfiguration  implements Action, Iterable<Action>{
     /**
      * This method generates a new FAC given the currentConfiguration and agent-type array and copies into the currentConfiguration
      * values, if exist.
-     * Algorithm: Iterate in the reverse order of the types from the current configuration. It first checks if there exist a scope of
-     * updating the value of type-action pair with updating the number of agents. The iteration is done from the max value
-     * to the minimum value for the number of agents in the respective order of type-action pairs. The sums of each agent
-     * in type-action pair must sum up to the type-totals for their respective type.
-     * E.g. for the Configuration with max agents [5 12 7] and total-agents 12, if the current value is [0 5 7], the next
-     * values can be [1 11 0], [1 10 1],.....[1 5 7] , etc.
-     * (Aggregating types, the first type-action would be the NO-OP and would be initialized with the maximum value.
-     * The next numOfAgents values would also be initialized with maximum possible values and would be updated accordingly.)
+     * Algorithm: The FACs are enumerated like an odometer over the types, the last type changing first. The agents of
+     * each type are a bounded composition of the type-total into its type-action pairs, which is iterated in the
+     * lexicographic order without any recursion or allocation:
+     * the next composition increases the rightmost pair which is below its maximum and has any agent after it, and then
+     * refills the pairs after it with the remaining agents, pushing them to the last pairs first.
+     * E.g. for the Configuration with max agents [5 12 7] and total-agents 12, the values are [0 5 7], [0 6 6],.....
+     * [0 12 0], [1 4 7], [1 5 6], etc.
+     * When a type runs out of compositions, it restarts from its first composition and the previous type moves instead.
+     * The counts are also kept in an int array, which is updated in place and can be read by {@link #getCurrentCounts()}.
      *
      * NOTE: Contradicting to other methods hasNext actually change the underlying under consideration value.
      * @return true if there exist any new configuration and false otherwise.
      */
     public boolean hasNext(){
-        boolean nextFACExist= false; //If any next element exist or not.
-        boolean resetValueFlag = false;//Reset the values after change in the upper type config.
-        //Iterate through each type and agents.
-        for(int type = this.agentTypes.length-1 ; type >= 0 ;type--){
-            ArrayList<Integer> config = new ArrayList<Integer>();
-            ArrayList<Integer> maxAgents = new ArrayList<Integer>();
-            int startIndex = -1, size = 0;
-            // For each configuration in the list.
-            for(int index = 0 ; index < this.currentConfiguration.length; index++){
-                if(this.currentConfiguration[index].getAgentType() == this.agentTypes[type][0]){
-                    //Update the start index.
-                    if(startIndex == -1)
-                        startIndex = index;
-                    //Add the number of agents to the list.
-                    config.add(this.currentConfiguration[index].getNumberOfAgents());
-                    maxAgents.add(this.maxConfiguration[index].getNumberOfAgents());
-                    size++; //Increase the size of number of agents.
+        if(this.typePairIndexes == null){
+            initializeCompositions();
+        }//end if.
+
+        //The first FAC is the first composition of each type.
+        if(!this.isIterationStarted){
+            for(int type = 0 ; type < this.typePairIndexes.length; type++){
+                if(!firstComposition(type, 0, this.agentTypes[type][1])){
+                    return false;
                 }//end if.
             }//end for.
+            this.isIterationStarted = true;
+            return true;
+        }//end if.
 
-            //If after going through the previous type, there is no change in the FAC, then reset the values to count again.
-            boolean resetValue = false;
-            if(resetValueFlag){
-                resetValue = true;
+        //Move the last type which has a next composition, and restart all the types after it.
+        for(int type = this.typePairIndexes.length-1 ; type >= 0 ;type--){
+            if(nextComposition(type)){
+                for(int restartType = type + 1; restartType < this.typePairIndexes.length; restartType++){
+                    firstComposition(restartType, 0, this.agentTypes[restartType][1]);
+                }//end for.
+                return true;
+            }//end if.
+        }//end for.
 
-                if(this.agentTypes.length-1 == type){
-                    //Put Reset value flag to false, so that it can be updated later if needed.
-                    resetValueFlag = false;
-                }
-            }
+        //All the FACs are done.
+        this.isIterationStarted = false;
+        return  false;
+    }//end method.
 
-            //Convert the Array list into integer arrays.
-            int configRefArray[] = new int[config.size()]; //To compare the results with the previous FAC.
-            int configArray[] = new int[config.size()];
-            int maxArray[] = new int[config.size()];
-            boolean reset[] = new boolean[config.size()]; //Reset array for resetting the type-action counts.
-            for(int index=0; index< config.size();index++){
-                if(!resetValue){
-                    configRefArray[index] = config.get(index);
-                    configArray[index] = config.get(index);
-                }else{
-                    configRefArray[index] = 0;
-                    configArray[index] = 0;
-                }
-                maxArray[index] = maxAgents.get(index);
-                reset[index] = resetValue;
-            }//end for.
 
+    /**
+     * This method finds the type-action pairs of each type and the suffix sums of their maximum agents, once for the
+     * iteration of the FACs.
+     */
+    private void initializeCompositions(){
+        this.typePairIndexes = new int[this.agentTypes.length][];
+        this.typeSuffixMaxes = new int[this.agentTypes.length][];
+        this.currentCounts = new int[this.currentConfiguration.length];
+        for(int type = 0 ; type < this.agentTypes.length; type++){
+            //Count the pairs first.
+            int size = 0;
+            for(int index = 0 ; index < this.currentConfiguration.length; index++){
+                if(this.currentConfiguration[index].getAgentType() == this.agentTypes[type][0]){
+                    size++;
+                }//end if.
+            }//end for.
 
-            //Get the next FAC and reset the flag.
-            getNextFAC(configArray,reset,configRefArray,0,maxArray[0], this.agentTypes[type][1], maxArray, startIndex);
-            this.stopRecursive = false;
-            //Check if it is the same, then go to next type or break.
-            for(int index = 0 ; index < size ; index++){
-                if(this.currentConfiguration[index+startIndex].getNumberOfAgents() != configRefArray[index]){
-
-                    //Find total number of agents in current configuration.
-                    int currentAgentSum = 0;
-                    for(int sumIndex=0 ; sumIndex < this.currentConfiguration.length; sumIndex++){
-                        currentAgentSum += this.currentConfiguration[sumIndex].getNumberOfAgents();
-                    }//end for.
-
-                    //If the current type is the last one and the sum equals to the total agents
-                    //complete search.
-                    if(type ==  this.agentTypes.length-1){
-                        if(this.totalAgents == currentAgentSum){
-                            nextFACExist = true;
-                        }
-                    }else if(this.totalAgents == currentAgentSum){
-                        type = type + 2; // The type would be reduced by one in each iteration, which would make this statement as type+1.
-                        resetValueFlag = true;//Reset the values for the next run.
-                    }else{
-                        //Let it continue.
-                    }//end if-else.
-                    break;
+            this.typePairIndexes[type] = new int[size];
+            this.typeSuffixMaxes[type] = new int[size + 1];
+            for(int index = 0, pair = 0 ; index < this.currentConfiguration.length; index++){
+                if(this.currentConfiguration[index].getAgentType() == this.agentTypes[type][0]){
+                    this.typePairIndexes[type][pair++] = index;
                 }//end if.
             }//end for.
 
-            //Break again if next FAC exist.
-            if(nextFACExist)
-                break;
+            //Maximum agents of the pairs from each pair to the last one.
+            for(int pair = size - 1; pair >= 0; pair--){
+                this.typeSuffixMaxes[type][pair] = this.typeSuffixMaxes[type][pair + 1]
+                        + this.maxConfiguration[this.typePairIndexes[type][pair]].getNumberOfAgents();
+            }//end for.
+        }//end for.
+    }//end method.
 
+
+    /**
+     * This method sets the pairs of the type from the given pair to the last one to the lexicographically first
+     * composition of the agents, i.e. each pair gets the least number of agents which still lets the pairs after it
+     * take the rest of the agents.
+     * @param type is the index of the type.
+     * @param fromPair is the first pair to set.
+     * @param agents is the number of the agents to divide into the pairs.
+     * @return true if the agents fit into the pairs and false otherwise.
+     */
+    private boolean firstComposition(int type, int fromPair, int agents){
+        int[] pairIndexes = this.typePairIndexes[type];
+        int[] suffixMaxes = this.typeSuffixMaxes[type];
+        if(agents > suffixMaxes[fromPair]){
+            return false;
+        }//end if.
+
+        for(int pair = fromPair; pair < pairIndexes.length; pair++){
+            int count = Math.max(0, agents - suffixMaxes[pair + 1]);
+            setCount(pairIndexes[pair], count);
+            agents -= count;
         }//end for.
+        return true;
+    }//end method.
 
 
-        return  nextFACExist;
+    /**
+     * This method moves the type to its next composition in the lexicographic order.
+     * @param type is the index of the type.
+     * @return true if there exist a next composition and false otherwise, where the type is left unchanged.
+     */
+    private boolean nextComposition(int type){
+        int[] pairIndexes = this.typePairIndexes[type];
+        int agentsAfter = 0; //Number of the agents in the pairs after the current pair.
+        for(int pair = pairIndexes.length - 1; pair >= 0; pair--){
+            int count = this.currentCounts[pairIndexes[pair]];
+            if(agentsAfter > 0 && count < this.maxConfiguration[pairIndexes[pair]].getNumberOfAgents()){
+                setCount(pairIndexes[pair], count + 1);
+                firstComposition(type, pair + 1, agentsAfter - 1);
+                return true;
+            }//end if.
+            agentsAfter += count;
+        }//end for.
+        return false;
     }//end method.
 
 
+    /**
+     * This method sets the number of agents of a type-action pair in both the current configuration and the counts.
+     * @param index is the index of the type-action pair.
+     * @param count is the number of the agents.
+     */
+    private void setCount(int index, int count){
+        this.currentCounts[index] = count;
+        this.currentConfiguration[index].setNumberOfAgents(count);
+    }
+
+
     /**
      * This method returns the current configuration.
      * @return current configuration.
@@ -685,10 +724,21 @@ public class FrameActionConfiguration  implements Action, Iterable<Action>{
     }
 
 
+    /**
+     * This method returns the number of agents of each type-action pair of the current FAC of the iteration. The array is
+     * updated in place by {@link #hasNext()}, so it should be copied to keep the FAC.
+     * @return is the array of the counts, null if the iteration has not started.
+     */
+    public int[] getCurrentCounts(){
+        return this.currentCounts;
+    }
+
+
     /**
      * This method initializes the current FAC with maximum values from the type it starts.
      * The idea is to start the beginning type-action pairs with maximum values and then set the rest of the values with
      * the remaining agents.
+     * It also restarts the iteration of the FACs from the first one.
      */
     public void initializeCurrentFAC(){
         //For each type set the values so that it matches the total number of agents for that type.
@@ -698,62 +748,8 @@ public class FrameActionConfiguration  implements Action, Iterable<Action>{
                     new ConfigurationBean(this.maxConfiguration[overallCounter].getAgentType(),
                             this.maxConfiguration[overallCounter].getAction(), 0);
         }//end for.s
-    }//end method.
-
-    /**
-     * This method finds all possible combination of the configuration for the current agent type. The method is recursive in
-     * nature, which iterates through all the action of a type given that agent type values. e.g. current configInit is [5,2,-1] and the third
-     * location has maximum 7 possible values available , it would check [5,2,0]....[5,2,7] and try to apply the constraints of total sums.
-     * @param configInit is the initial array with all -1s for the first time and then current configuration.
-     * @param configRef is to compare the generated array with the previous one.
-     * @param curConfig is initiated with a 0 and it would be increased in the step by step.
-     * @param curMax is the maximum-agent-counts for the type-action pair.
-     * @param totalAgents is the total number of agents in the premise.
-     * @param configMax is the  maximum agent available for type-action pair from the premise configuration.
-     */
-    public void getNextFAC(int[] configInit,boolean reset[],int[] configRef,int curConfig,int curMax, int totalAgents, int[] configMax, int currentConfigStartIndex){
-        if(!stopRecursive){
-            //If the last element in the type.
-            if(curConfig == configInit.length - 1){
-                //If the resetting the current value is true, then reset the values and set the flag to false.
-                if(reset[curConfig] == true){
-                    this.currentConfiguration[currentConfigStartIndex+curConfig].setNumberOfAgents(0);
-                    reset[curConfig] = false;
-                }
-                //Try to get all the possible combinations and if it sums up to the total number
-                //then add to the list.
-                for(int count=this.currentConfiguration[currentConfigStartIndex+curConfig].getNumberOfAgents(); count <= curMax && count <= configMax[curConfig]; count++) {
-                    configInit[curConfig] = count;
-                    //If the configuration qualifies as correct then add it to the list.
-                    if(intArraySum(configInit) == totalAgents && !Arrays.equals(configInit,configRef)) {
-                        for(int currentCounter = currentConfigStartIndex, configCounter = 0 ; configCounter < configInit.length
-                                ; currentCounter++, configCounter++){
-                            this.currentConfiguration[currentCounter].setNumberOfAgents(configInit[configCounter]);
-                        }
-                        this.stopRecursive = true;
-                        break;
-                    }//end if.
-                }//end for.
-                reset[curConfig] = true;
-            }else{
-
-                //If the resetting the current value is true, then reset the values and set the flag to false.
-                if(reset[curConfig] == true){
-                    this.currentConfiguration[currentConfigStartIndex+curConfig].setNumberOfAgents(0);
-                    reset[curConfig] = false;
-                }
-
-                //Otherwise recursively call the method for finding all possible combination for the next type given the current type.
-                for(int count = this.currentConfiguration[currentConfigStartIndex+curConfig].getNumberOfAgents();count <= curMax && count <= configMax[curConfig];count++ ){
-                    //Breaking through Recursion.
-                    if(stopRecursive)
-                        break;
-                    configInit[curConfig] = count;
-                    getNextFAC(configInit,reset,configRef,curConfig + 1,totalAgents-count,totalAgents,configMax,currentConfigStartIndex);
-                }//end for.
-                reset[curConfig] = true;
-            }//end else.
-        }//end if stop recursive.
+        this.isIterationStarted = false;
+        this.typePairIndexes = null;
     }//end method.
 
 
@@ -13,6 +13,7 @@ import burlap.statehashing.simple.SimpleHashableStateFactory;
 import common.*;
 import domains.wildfire.*;
 import pomcp.IPOMCP;
+import pomcp.SearchBudget;
 import posg.POOOSGDomain;
 import posg.model.FACRewardFunction;
 import posg.model.FullJointIPOMCPModel;
@@ -38,6 +39,16 @@ public class IPOMCPSimulator {
      *             9: Confidence Interval for the Agent sampling.
      *             10: Number of Samples multiple to number of states.
      *             11: Bandit Constant.
+     *             18: (Optional) Number of threads for the root-parallel search of each agent's tree.
+     *             19: (Optional) True for the tree-parallel search, where all threads share one tree with virtual loss.
+     *             20: (Optional) Number of threads to plan the agents of each stage at the same time.
+     *             21: (Optional) True to keep the subtree under the real action and observation for the next stage.
+     *             22: (Optional) True to read the policies of the other agents as stochastic policies.
+     *             23: (Optional) Maximum particles kept in the nodes deeper than the children of the root, -1 for all.
+     *             24: (Optional) Number of simulations of each search, 0 for the time bound only. The search stops at
+     *                 whichever comes first, if both are set, and the time bound 0 leaves only the simulation count.
+     *             25: (Optional) Scale of the confidence bounds to stop the search once the best root action is
+     *                 decided, 0 to search until the budget runs out.
      */
     public static void main(String args[]){
 
@@ -50,6 +61,14 @@ public class IPOMCPSimulator {
         boolean isSuppOpen = true;
         boolean isSingleConfigNode = true;
         int trialSeries;
+        int threadCount = 1;
+        boolean isTreeParallel = false;
+        int agentThreadCount = 1;
+        boolean isTreeReuse = false;
+        boolean isStochasticPolicy = false;
+        int particleReservoirSize = -1;
+        long maxSimulations = 0;
+        double earlyStopConfidence = 0;
 
 
         try{
@@ -98,7 +117,7 @@ public class IPOMCPSimulator {
                     System.out.println("Problem in the arguments." + ne.getMessage());
                     System.exit(0);
                 }//end try-catch.
-            }if(args != null && args.length == 18){
+            }if(args != null && (args.length >= 18 && args.length <= 26)){
                 try{
                     configuration = Integer.parseInt(args[0]);
                     gamma = Double.parseDouble(args[1]);
@@ -118,6 +137,38 @@ public class IPOMCPSimulator {
                     isAvgQActionNode = Boolean.parseBoolean(args[15]);
                     isSuppOpen = Boolean.parseBoolean(args[16]);
                     isSingleConfigNode = Boolean.parseBoolean(args[17]);
+                    //Thread count is optional.
+                    if(args.length >= 19){
+                        threadCount = Integer.parseInt(args[18]);
+                    }//end if.
+                    //Tree-parallel search is optional.
+                    if(args.length >= 20){
+                        isTreeParallel = Boolean.parseBoolean(args[19]);
+                    }//end if.
+                    //Agent thread count is optional.
+                    if(args.length >= 21){
+                        agentThreadCount = Integer.parseInt(args[20]);
+                    }//end if.
+                    //Tree reuse is optional.
+                    if(args.length >= 22){
+                        isTreeReuse = Boolean.parseBoolean(args[21]);
+                    }//end if.
+                    //Stochastic policies of the other agents are optional.
+                    if(args.length >= 23){
+                        isStochasticPolicy = Boolean.parseBoolean(args[22]);
+                    }//end if.
+                    //Bounded particles of the deeper nodes are optional.
+                    if(args.length >= 24){
+                        particleReservoirSize = Integer.parseInt(args[23]);
+                    }//end if.
+                    //Simulation count budget is optional.
+                    if(args.length >= 25){
+                        maxSimulations = Long.parseLong(args[24]);
+                    }//end if.
+                    //Early stopping is optional.
+                    if(args.length == 26){
+                        earlyStopConfidence = Double.parseDouble(args[25]);
+                    }//end if.
                 }catch (NumberFormatException ne){
                     System.out.println("Problem in the arguments." + ne.getMessage());
                     System.exit(0);
@@ -126,6 +177,12 @@ public class IPOMCPSimulator {
                //Take the defaults.
             }//end if args.
 
+            //The search needs at least one budget.
+            if(timeBound <= 0 && maxSimulations <= 0){
+                System.out.println("Problem in the arguments. Either the time bound or the number of simulations must be positive.");
+                System.exit(0);
+            }//end if.
+
             //File Names of the Policy files.
             String policyFileHead = "output/Simulations/Config_" + configuration + "/Experiment_" + experimentNumber  + "/";
 
@@ -160,6 +217,17 @@ public class IPOMCPSimulator {
             HashMap<String, FrameActionConfiguration> maxConfigurations  = new HashMap<>();
             //Load Nested VI policies for all the Agent Groups, and create a hashmap for that.
             for(String agentGroup: wildfireDomain.agentGroups){
+                //Reuse the artefacts of the group if they have already been built in this process.
+                String groupKey = AgentGroupCache.groupKey(configuration, experimentNumber, agentGroup, maxHorizons,
+                                                           isStochasticPolicy);
+                AgentGroupCache.GroupArtefacts cachedArtefacts = AgentGroupCache.getGroupArtefacts(groupKey);
+                if(cachedArtefacts != null){
+                    senumGroupMap.put(agentGroup,cachedArtefacts.getSenum());
+                    maxConfigurations.put(agentGroup,cachedArtefacts.getMaxConfiguration());
+                    agentGroupPolicyMap.put(agentGroup,cachedArtefacts.getPolicy());
+                    continue;
+                }//end if.
+
                 int currentAgentNumber = wildfireDomain.sampleAgentPerGroup.get(agentGroup).getAgentNumber();
                 int currentAgentType = wildfireDomain.sampleAgentPerGroup.get(agentGroup).getPowerType();
 
@@ -252,14 +320,18 @@ public class IPOMCPSimulator {
 
                 //Get the policy of the agent group.
                 Policy nestedVIPolicy = new OtherAgentsNMDPPolicy(wildfireDomain,
-                        agentGroup,OtherAgentsNMDPPolicy.PolicyType.Deterministic);
+                        agentGroup,isStochasticPolicy ? OtherAgentsNMDPPolicy.PolicyType.Stochastic
+                                                      : OtherAgentsNMDPPolicy.PolicyType.Deterministic);
 
                 String policyFileName = wildfireDomain.agentsList.size() +"-WF_config" + configuration + "_firestates" +  WildfireParameters.MAX_FIRE_STATES
                                             +"_nmdp_policy_level0_agent" + currentAgentNumber
                                             + "_neighbor" + agentGroup + "-" + currentAgentType + "_iter10.txt";
 
-                ((OtherAgentsNMDPPolicy)nestedVIPolicy).readPolicy(policyFileHead + policyFileName, senum.numStatesEnumerated());
+                ((OtherAgentsNMDPPolicy)nestedVIPolicy).loadPolicy(policyFileHead + policyFileName, senum.numStatesEnumerated());
                 agentGroupPolicyMap.put(agentGroup,nestedVIPolicy);
+
+                //Cache the artefacts of the group for the rest of the process.
+                AgentGroupCache.putGroupArtefacts(groupKey,senum,possibleConfiguration,nestedVIPolicy);
             }//end for.
 
 
@@ -311,6 +383,9 @@ public class IPOMCPSimulator {
                         ((JointRewardFunction)rewardFunction),
                         terminalFunction, wildfireDomain.getPartialObservationFunction(),
                         allAgentDefinitions,new WildfireState((WildfireState) ms), rewardFunction);
+                world.setAgentThreadCount(agentThreadCount);
+                //Planners of the trial, to shut them down after the game.
+                ArrayList<IPOMCP> planners = new ArrayList<>();
 
                 //Add all the agents to the domain with their policy and their type.
                 for( int agentIndex = 0;agentIndex < wildfireDomain.agentsList.size(); agentIndex++){
@@ -331,7 +406,13 @@ public class IPOMCPSimulator {
                             agentIndex,wildfireDomain.actionsPerGroup.get(agentGroup),
                             wildfire,wildfireDomain,rewardFunction,
                             jointIPOMCPModel,terminalFunction,senumGroupMap.get(agentGroup),
-                            initialAnmState,ms,false, trial,trialSeries,isAvgQActionNode,isSuppOpen,isSingleConfigNode); //Last argument is for IPOMCP.
+                            initialAnmState,ms,false, trial,trialSeries,isAvgQActionNode,isSuppOpen,isSingleConfigNode,threadCount,isTreeParallel,isTreeReuse,particleReservoirSize);
+                    //Use the simulation count budget, if set.
+                    if(maxSimulations > 0){
+                        ipomcp.setSearchBudget(new SearchBudget(maxSimulations,timeBound));
+                    }//end if.
+                    ipomcp.setEarlyStopConfidence(earlyStopConfidence);
+                    planners.add(ipomcp);
 
 
                     //Create a new policy based agent.
@@ -349,6 +430,9 @@ public class IPOMCPSimulator {
 
 
                 GameEpisode episode = world.runGame(numberOfRounds,ms,WildfireParameters.IPOMCP_EXPERIMENT);
+                for(IPOMCP planner : planners){
+                    planner.shutdown();
+                }//end for.
                 String suppressantTrial = SimulatorHelper.saveSuppressantResultsToFile(episode,trial);
                 suppressantContent += suppressantTrial;
                 //Dump rewards results to file
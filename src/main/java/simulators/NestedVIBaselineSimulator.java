@@ -193,7 +193,7 @@ public class NestedVIBaselineSimulator {
                         +"_nmdp_policy_level0_agent" + currentAgentNumber
                         + "_neighbor" + agentGroup + "-" + currentAgentType + "_iter10.txt";
 
-                ((OtherAgentsNMDPPolicy)nestedVIPolicy).readPolicy(policyFileHead + policyFileName,senum.numStatesEnumerated());
+                ((OtherAgentsNMDPPolicy)nestedVIPolicy).loadPolicy(policyFileHead + policyFileName,senum.numStatesEnumerated());
                 agentGroupPolicyMap.put(agentGroup,nestedVIPolicy);
             }//end for.
 
@@ -552,7 +552,7 @@ public class SimulatorHelper {
      * This method is used for logging the IPOMCP prediction logs.
      * @param log is the log for each stage and action.
      */
-    public static void addPrediction(String log){
+    public static synchronized void addPrediction(String log){
         SimulatorHelper.predictionLog += log;
     }
 
@@ -560,7 +560,7 @@ public class SimulatorHelper {
      * This method is used for logging the IPOMCP configuration logs.
      * @param log is the log of IPOMCP layer-0 configurations and actual state.
      */
-    public static void addConfigInfo(String log){
+    public static synchronized void addConfigInfo(String log){
         SimulatorHelper.configLog += log;
     }
 
@@ -568,7 +568,7 @@ public class SimulatorHelper {
      * This method is used for logging the IPOMCP belief particles.
      * @param log is the log of IPOMCP belief particles.  
      */
-    public static void addBeliefInfo(String log){
+    public static synchronized void addBeliefInfo(String log){
         SimulatorHelper.beliefLog += log;
     }
 
@@ -577,7 +577,7 @@ public class SimulatorHelper {
      * This method is used for logging the IPOMCP Tree.
      * @param log is the log of IPOMCP tree.
      */
-    public static void addTreeInfo(String log){
+    public static synchronized void addTreeInfo(String log){
         SimulatorHelper.ipomcpTreeLog.append(log);
     }
 
@@ -585,7 +585,7 @@ public class SimulatorHelper {
      * This method is used for logging the IPOMCP particles.
      * @param log is the log of IPOMCP tree particles at the beginning of the stage.
      */
-    public static void addParticleLog(String log){
+    public static synchronized void addParticleLog(String log){
         SimulatorHelper.particleLog.append(log);
     }
 }